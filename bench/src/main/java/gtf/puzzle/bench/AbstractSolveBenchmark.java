@@ -0,0 +1,107 @@
+package gtf.puzzle.bench;
+
+import gtf.math.graph.ColourableGraph;
+import gtf.puzzle.engine.AbstractSolver;
+import gtf.puzzle.engine.BackjumpingSolver;
+import gtf.puzzle.engine.IterativeSolver;
+import gtf.puzzle.engine.Solver;
+import gtf.puzzle.sudoku.bitset.BitsetSolver;
+import gtf.puzzle.sudoku.dlx.DancingLinksSolver;
+import gtf.puzzle.sudoku.graph.SudokuCellAddress;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Times finding every solution of a board with each engine. The
+ * boards are given by the subclasses, one for each set of the
+ * corpus.
+ *
+ * Engines:
+ * <ul>
+ * <li>copy: Solver, copying the board for every value tried</li>
+ * <li>inplace: Solver, in-place with a trail</li>
+ * <li>iterative: IterativeSolver</li>
+ * <li>backjumping: BackjumpingSolver, learning nogoods</li>
+ * <li>dlx: DancingLinksSolver</li>
+ * <li>bits: BitsetSolver</li>
+ * </ul>
+ *
+ * @author gtf
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class AbstractSolveBenchmark {
+
+  /**
+   * The capacity of the nogood store of the backjumping engine.
+   */
+  private static final int NOGOOD_CAPACITY = 1000;
+
+  @Param({"copy", "inplace", "iterative", "backjumping", "dlx", "bits"})
+  public String engine;
+
+  private AbstractSolver<SudokuCellAddress, Integer> solver;
+
+  private ColourableGraph<SudokuCellAddress, Integer> puzzle;
+
+  /**
+   * @return the name of the board file to solve
+   */
+  protected abstract String getBoard();
+
+  @Setup
+  public void setUp() throws Exception {
+    puzzle = Boards.read(getBoard()).getGraph();
+    solver = createSolver(engine);
+  }
+
+  static AbstractSolver<SudokuCellAddress, Integer> createSolver(String engine) {
+    if (engine.equals("copy")) {
+      return new Solver<SudokuCellAddress, Integer>();
+    }
+    if (engine.equals("inplace")) {
+      Solver<SudokuCellAddress, Integer> solver = new Solver<SudokuCellAddress, Integer>();
+      solver.setInPlace(true);
+      return solver;
+    }
+    if (engine.equals("iterative")) {
+      return new IterativeSolver<SudokuCellAddress, Integer>();
+    }
+    if (engine.equals("backjumping")) {
+      BackjumpingSolver<SudokuCellAddress, Integer> solver =
+          new BackjumpingSolver<SudokuCellAddress, Integer>();
+      solver.setNogoodCapacity(NOGOOD_CAPACITY);
+      return solver;
+    }
+    if (engine.equals("dlx")) {
+      return new DancingLinksSolver();
+    }
+    if (engine.equals("bits")) {
+      return new BitsetSolver();
+    }
+    throw new IllegalArgumentException("unknown engine " + engine);
+  }
+
+  @Benchmark
+  public Set<ColourableGraph<SudokuCellAddress, Integer>> solve() {
+    return solver.solve(puzzle);
+  }
+}
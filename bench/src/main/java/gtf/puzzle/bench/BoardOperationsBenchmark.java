@@ -0,0 +1,87 @@
+package gtf.puzzle.bench;
+
+import gtf.math.graph.ColourableGraph;
+import gtf.puzzle.sudoku.graph.SudokuBoard;
+import gtf.puzzle.sudoku.graph.SudokuCellAddress;
+import gtf.puzzle.sudoku.io.GameBoardReader;
+import gtf.puzzle.sudoku.io.SudokuFormatter;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Times the operations on a single board that the solver and the
+ * runner depend on, each in isolation.
+ *
+ * @author gtf
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardOperationsBenchmark {
+
+  @Param({"20050310.gb", "20050314fiendish.gb", "full.gb"})
+  public String board;
+
+  private byte[] bytes;
+
+  private SudokuFormatter formatter;
+
+  private ColourableGraph<SudokuCellAddress, Integer> bitmaskGraph;
+
+  private ColourableGraph<SudokuCellAddress, Integer> graphImpl;
+
+  @Setup
+  public void setUp() throws Exception {
+    bytes = Boards.readBytes(board);
+    SudokuBoard bitmaskBoard = Boards.read(board);
+    formatter = new SudokuFormatter(bitmaskBoard.getTopology());
+    bitmaskGraph = bitmaskBoard.getGraph();
+    int hsize = bitmaskBoard.getTopology().getZoneHeight();
+    int wsize = bitmaskBoard.getTopology().getZoneWidth();
+    int width = bitmaskBoard.getTopology().getWidth();
+    SudokuBoard implBoard = new SudokuBoard(hsize, wsize, false);
+    for (int row = 0; row < width; row++) {
+      for (int col = 0; col < width; col++) {
+        implBoard.setCell(row, col, bitmaskBoard.getValue(row, col));
+      }
+    }
+    graphImpl = implBoard.getGraph();
+  }
+
+  @Benchmark
+  public SudokuBoard read() throws Exception {
+    return new GameBoardReader().read(new ByteArrayInputStream(bytes));
+  }
+
+  @Benchmark
+  public String asString() {
+    return formatter.asString(bitmaskGraph);
+  }
+
+  @Benchmark
+  public ColourableGraph<SudokuCellAddress, Integer> copyOfColourableGraphImpl() {
+    return graphImpl.copyOf();
+  }
+
+  @Benchmark
+  public ColourableGraph<SudokuCellAddress, Integer> copyOfBitmaskGraph() {
+    return bitmaskGraph.copyOf();
+  }
+}
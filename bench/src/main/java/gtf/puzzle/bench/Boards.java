@@ -0,0 +1,51 @@
+package gtf.puzzle.bench;
+
+import gtf.puzzle.sudoku.graph.SudokuBoard;
+import gtf.puzzle.sudoku.io.GameBoardReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Access to the board files of the corpus. The directory is taken
+ * from the system property boards.dir, by default the boards
+ * directory of the working directory.
+ *
+ * @author gtf
+ */
+final class Boards {
+
+  private Boards() {
+  }
+
+  static File getFile(String name) {
+    return new File(System.getProperty("boards.dir", "boards"), name);
+  }
+
+  static byte[] readBytes(String name) throws IOException {
+    File file = getFile(name);
+    byte[] bytes = new byte[(int) file.length()];
+    InputStream in = new FileInputStream(file);
+    try {
+      int length = 0;
+      while (length < bytes.length) {
+        int count = in.read(bytes, length, bytes.length - length);
+        if (count < 0) {
+          throw new IOException("file shrank: " + file);
+        }
+        length += count;
+      }
+    } finally {
+      in.close();
+    }
+    return bytes;
+  }
+
+  static SudokuBoard read(String name) throws Exception {
+    return new GameBoardReader().read(new ByteArrayInputStream(readBytes(name)));
+  }
+}
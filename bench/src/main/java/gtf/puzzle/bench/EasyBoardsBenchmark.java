@@ -0,0 +1,31 @@
+package gtf.puzzle.bench;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * The boards of the corpus with a unique solution that are not
+ * marked as fiendish.
+ *
+ * @author gtf
+ */
+@State(Scope.Benchmark)
+public class EasyBoardsBenchmark extends AbstractSolveBenchmark {
+
+  @Param({
+      "20050310.gb", "20050311.gb", "20050314.gb", "20050315.gb",
+      "20050316.gb", "20050317.gb", "20050318.gb", "20050321.gb",
+      "20050324.gb", "20050411.gb", "20050610guardian.gb",
+      "20051024globeandmail.gb", "20051025globeandmail.gb",
+      "20051104globeandmail.gb", "20060309.gb", "20060901.gb",
+      "300px-Jan1.gb", "csmon.gb", "full.gb", "full2.gb", "guardian113.gb",
+      "guardian20050527.gb", "missing1.gb", "s296.gb", "s49.gb", "s50.gb",
+      "s66.gb", "s71.gb"})
+  public String board;
+
+  protected String getBoard() {
+    return board;
+  }
+}
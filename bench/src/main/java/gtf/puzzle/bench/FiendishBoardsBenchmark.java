@@ -0,0 +1,24 @@
+package gtf.puzzle.bench;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * The boards of the corpus marked as fiendish.
+ *
+ * @author gtf
+ */
+@State(Scope.Benchmark)
+public class FiendishBoardsBenchmark extends AbstractSolveBenchmark {
+
+  @Param({
+      "20050314fiendish.gb", "20050315fiendish.gb",
+      "20050610guardianfiendish.gb"})
+  public String board;
+
+  protected String getBoard() {
+    return board;
+  }
+}
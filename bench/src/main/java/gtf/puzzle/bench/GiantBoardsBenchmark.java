@@ -0,0 +1,140 @@
+package gtf.puzzle.bench;
+
+import gtf.math.graph.ColourableGraph;
+import gtf.puzzle.engine.AbstractSolver;
+import gtf.puzzle.sudoku.graph.SudokuBoard;
+import gtf.puzzle.sudoku.graph.SudokuCellAddress;
+import gtf.puzzle.sudoku.graph.SudokuTopology;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Times finding a solution of boards with square zones of 5 to 10
+ * (25x25 to 100x100), in a heap of 256MB.
+ *
+ * The puzzles are made rather than read: a full board of the usual
+ * pattern, disguised by relabelling its digits and permuting its
+ * bands, stacks, and the rows and columns within them, with a given
+ * fraction of its cells kept. The same seed always gives the same
+ * puzzle. Such puzzles have many solutions, so only the first one
+ * is looked for.
+ *
+ * Each puzzle is given as the zone size and the percentage of cells
+ * kept. With 65% or more kept, singles do nearly all the work, so
+ * these measure propagation more than search. The 25x25 puzzle with
+ * 50% kept takes about 1500 guesses and 800 dead ends with the bits
+ * engine, so it measures the search as well. Sparser puzzles, or
+ * puzzles as sparse on larger boards, are not included: chronological
+ * backtracking, with either engine, gets lost in them for minutes.
+ *
+ * @author gtf
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx256m")
+public class GiantBoardsBenchmark {
+
+  private static final long SEED = 7;
+
+  /**
+   * The zone size and the percentage of cells kept.
+   */
+  @Param({"5-65", "6-65", "8-65", "10-70", "5-50"})
+  public String puzzle;
+
+  @Param({"bits", "dlx"})
+  public String engine;
+
+  private AbstractSolver<SudokuCellAddress, Integer> solver;
+
+  private ColourableGraph<SudokuCellAddress, Integer> board;
+
+  @Setup
+  public void setUp() {
+    int dash = puzzle.indexOf('-');
+    int size = Integer.parseInt(puzzle.substring(0, dash));
+    double clues = Integer.parseInt(puzzle.substring(dash + 1)) / 100.0;
+    board = makePuzzle(size, clues, new Random(SEED));
+    solver = AbstractSolveBenchmark.createSolver(engine);
+  }
+
+  /**
+   * @param size the size of a zone
+   * @param clues the fraction of the cells to keep
+   * @param random the source of the disguise and the cells kept
+   * @return the puzzle
+   */
+  static ColourableGraph<SudokuCellAddress, Integer> makePuzzle(int size, double clues,
+      Random random) {
+    int width = size * size;
+    int[] digits = shuffle(width, random);
+    int[] rows = shuffleLines(size, random);
+    int[] cols = shuffleLines(size, random);
+    ColourableGraph<SudokuCellAddress, Integer> result = new SudokuBoard(size).getGraph();
+    SudokuTopology topology = (SudokuTopology) result.getTopology();
+    for (int row = 0; row < width; row++) {
+      for (int col = 0; col < width; col++) {
+        if (random.nextDouble() < clues) {
+          int r = rows[row];
+          int c = cols[col];
+          int digit = digits[(size * (r % size) + r / size + c) % width];
+          result.setColour(topology.cellAt(row, col), Integer.valueOf(digit + 1));
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the lines of a board in an order that keeps the bands
+   * (or stacks) together
+   */
+  private static int[] shuffleLines(int size, Random random) {
+    int[] result = new int[size * size];
+    int[] bands = shuffle(size, random);
+    for (int band = 0; band < size; band++) {
+      int[] lines = shuffle(size, random);
+      for (int i = 0; i < size; i++) {
+        result[band * size + i] = bands[band] * size + lines[i];
+      }
+    }
+    return result;
+  }
+
+  private static int[] shuffle(int n, Random random) {
+    int[] result = new int[n];
+    for (int i = 0; i < n; i++) {
+      result[i] = i;
+    }
+    for (int i = n - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int t = result[i];
+      result[i] = result[j];
+      result[j] = t;
+    }
+    return result;
+  }
+
+  @Benchmark
+  public Set<ColourableGraph<SudokuCellAddress, Integer>> solve() {
+    return solver.solve(board, 1);
+  }
+}
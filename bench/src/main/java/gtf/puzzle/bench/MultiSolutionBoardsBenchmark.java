@@ -0,0 +1,23 @@
+package gtf.puzzle.bench;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * The boards of the corpus with more than one solution, named
+ * after their number of solutions.
+ *
+ * @author gtf
+ */
+@State(Scope.Benchmark)
+public class MultiSolutionBoardsBenchmark extends AbstractSolveBenchmark {
+
+  @Param({"multi3.gb", "multi50.gb", "multi110.gb", "multi394.gb"})
+  public String board;
+
+  protected String getBoard() {
+    return board;
+  }
+}
@@ -27,6 +27,8 @@ public interface ColourableGraph<T, V> extends Copyable<ColourableGraph<T, V>> {
    * constraint to be checked here; however, if not, it is up to the caller
    * to ensure that the graph is kept in a consistent state.
    * 
+   * Setting a null colour makes the node uncoloured again.
+   * 
    * @param nodeAddress
    * @param colour
    * @throws ColourConstraintViolation if the constraint is checked and the
@@ -72,4 +74,44 @@ public interface ColourableGraph<T, V> extends Copyable<ColourableGraph<T, V>> {
    * assigned a colour.
    */
   Collection<V> getPossibleColoursForNode(T node);
+  
+  /**
+   * Gets the number of possible colours that could be assigned
+   * to this node address, according to the constraint. This is the
+   * size of getPossibleColoursForNode(), but implementations should
+   * compute it without building the collection.
+   * 
+   * @param node
+   */
+  default int countPossibleColoursForNode(T node) {
+    return getPossibleColoursForNode(node).size();
+  }
+
+  /**
+   * Excludes a colour from the possible colours of a node, on top
+   * of those ruled out by the constraint. This records a deduction
+   * made about the node; it does not affect any other node, nor
+   * the colour that may already be assigned to the node.
+   * 
+   * A graph that keeps no exclusions may leave this as it is: it
+   * records nothing and returns false, as if the colour had been
+   * excluded already. Propagation then makes no deduction that
+   * only removes a colour, but stays correct.
+   * 
+   * @param node
+   * @param colour
+   * @return true if the colour was not already excluded
+   */
+  default boolean excludeColour(T node, V colour) {
+    return false;
+  }
+
+  /**
+   * Reverses excludeColour(). By default there is nothing to reverse.
+   * 
+   * @param node
+   * @param colour
+   */
+  default void includeColour(T node, V colour) {
+  }
 }
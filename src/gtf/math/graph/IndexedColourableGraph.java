@@ -0,0 +1,81 @@
+package gtf.math.graph;
+
+import java.util.List;
+
+
+/**
+ * A colourable graph that can also be read and coloured by number.
+ *
+ * The nodes are numbered as by NodeIndex.of(getTopology()), and the
+ * colours by their position in getColours(). The methods taking
+ * numbers are equivalent to those taking addresses and colours, but
+ * need no hashing or boxing, and are meant for the inner loops of
+ * solvers.
+ *
+ * @author gtf
+ *
+ * @param <T> The type used for the node addresses
+ * @param <V> The type used for the node values
+ */
+public interface IndexedColourableGraph<T, V> extends ColourableGraph<T, V> {
+
+  /**
+   * @return every colour of the colour space, in the order they
+   * are numbered
+   */
+  List<V> getColours();
+
+  /**
+   * @return the numbering of the nodes, that of
+   * NodeIndex.of(getTopology())
+   */
+  NodeIndex<T> getNodeIndex();
+
+  /**
+   * @param colour a colour
+   * @return the number of the colour, or -1 if it is not one of
+   * getColours()
+   */
+  int indexOfColour(V colour);
+
+  /**
+   * @param node the number of a node
+   * @return the number of the colour of the node, or -1 if it is
+   * uncoloured
+   */
+  int getColourIndex(int node);
+
+  /**
+   * Sets the colour of a node, as setColour() does.
+   *
+   * @param node the number of a node
+   * @param colour the number of the colour, or -1 to make the
+   * node uncoloured
+   * @throws ColourConstraintViolation if the constraint is checked and the
+   * colour is inconsistent with the constraint.
+   */
+  void setColourIndex(int node, int colour);
+
+  /**
+   * @param node the number of a node
+   * @return the number of possible colours of the node, as
+   * countPossibleColoursForNode()
+   */
+  int countPossibleColours(int node);
+
+  /**
+   * @param node the number of a node
+   * @param colour the number of a colour
+   * @return true if the colour is among the possible colours of
+   * the node
+   */
+  boolean isPossibleColour(int node, int colour);
+
+  /**
+   * @param node the number of a node
+   * @param colour the number of a colour
+   * @return true if the colour is among the neighbour colours of
+   * the node
+   */
+  boolean hasNeighbourColour(int node, int colour);
+}
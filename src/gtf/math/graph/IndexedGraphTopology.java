@@ -0,0 +1,47 @@
+package gtf.math.graph;
+
+
+/**
+ * A graph topology whose nodes are numbered 0..n-1, in the order
+ * they are returned by getAllNodes(), and whose neighbours can be
+ * read by number.
+ *
+ * Graphs over such a topology can keep the state of their nodes in
+ * arrays instead of maps, and walk the neighbours of a node without
+ * hashing or making collections. NodeIndex uses the numbering of the
+ * topology as it is.
+ *
+ * @author gtf
+ *
+ * @param <T> the type used for the node addresses.
+ */
+public interface IndexedGraphTopology<T> extends GraphTopology<T> {
+
+  /**
+   * @param node the node address
+   * @return the number of the node
+   * @throws IllegalArgumentException if the node is not in the topology
+   */
+  int nodeIndex(T node);
+
+  /**
+   * @param index the number of a node, from 0 to getNodeCount() - 1
+   * @return the address of the node
+   */
+  T node(int index);
+
+  /**
+   * @param index the number of a node
+   * @return the number of neighbours of the node, the size of
+   * getNeighbours()
+   */
+  int neighbourCount(int index);
+
+  /**
+   * @param index the number of a node
+   * @param i the position of a neighbour, from 0 to
+   * neighbourCount(index) - 1
+   * @return the number of the neighbour, in the order of getNeighbours()
+   */
+  int neighbour(int index, int i);
+}
@@ -0,0 +1,118 @@
+package gtf.math.graph;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+
+/**
+ * Numbers the nodes of a graph topology 0..n-1, in the order
+ * they are returned by getAllNodes().
+ * 
+ * The index only depends on the topology, so a single instance
+ * is shared by every graph using the same topology. Use of()
+ * to obtain it.
+ * 
+ * An IndexedGraphTopology already numbers its nodes that way. Its
+ * index reads the numbers from the topology instead of keeping a
+ * map of its own, and costs nothing to make, so it is not shared;
+ * nor could it be kept in the weak map, as it refers to its key.
+ * 
+ * @author gtf
+ *
+ * @param <T> the type used for the node addresses
+ */
+public final class NodeIndex<T> {
+
+  private static final Map<GraphTopology<?>, NodeIndex<?>> indices =
+      new WeakHashMap<GraphTopology<?>, NodeIndex<?>>();
+
+  /**
+   * The topology, if it numbers its own nodes; otherwise null.
+   */
+  private final IndexedGraphTopology<T> indexed;
+
+  private final int size;
+
+  private final Object[] nodes;
+
+  private final Map<T, Integer> positions;
+
+  private NodeIndex(GraphTopology<T> topology) {
+    if (topology instanceof IndexedGraphTopology) {
+      indexed = (IndexedGraphTopology<T>) topology;
+      size = topology.getNodeCount();
+      nodes = null;
+      positions = null;
+      return;
+    }
+    indexed = null;
+    Collection<T> allNodes = topology.getAllNodes();
+    nodes = allNodes.toArray();
+    size = nodes.length;
+    positions = new HashMap<T, Integer>(nodes.length);
+    int i = 0;
+    for (T node : allNodes) {
+      positions.put(node, Integer.valueOf(i++));
+    }
+  }
+
+  /**
+   * Gets the index of a topology, computing it on first use.
+   * 
+   * @param topology the topology
+   * @return the shared index
+   */
+  public static <T> NodeIndex<T> of(GraphTopology<T> topology) {
+    if (topology instanceof IndexedGraphTopology) {
+      return new NodeIndex<T>(topology);
+    }
+    return shared(topology);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static synchronized <T> NodeIndex<T> shared(GraphTopology<T> topology) {
+    NodeIndex<T> result = (NodeIndex<T>) indices.get(topology);
+    if (result == null) {
+      result = new NodeIndex<T>(topology);
+      indices.put(topology, result);
+    }
+    return result;
+  }
+
+  /**
+   * @return the number of nodes
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @param i the index, in the range 0..size()-1
+   * @return the node with that index
+   */
+  @SuppressWarnings("unchecked")
+  public T getNode(int i) {
+    if (indexed != null) {
+      return indexed.node(i);
+    }
+    return (T) nodes[i];
+  }
+
+  /**
+   * @param node the node address
+   * @return the index of the node
+   * @throws IllegalArgumentException if the node is not in the topology
+   */
+  public int indexOf(T node) {
+    if (indexed != null) {
+      return indexed.nodeIndex(node);
+    }
+    Integer position = positions.get(node);
+    if (position == null) {
+      throw new IllegalArgumentException("unknown node " + node);
+    }
+    return position.intValue();
+  }
+}
@@ -12,6 +12,8 @@ import java.util.Collection;
  * underlying graph. The backtracker makes intensive
  * use of the constraint check in an inner loop, and an
  * inefficient implementation will impair performance.
+ * If the graph is an IndexedColourableGraph, the colour is
+ * looked up among the neighbour colours by number instead.
  * 
  * @author gtf
  *
@@ -29,6 +31,12 @@ public final class UnalikeNeighboursColourConstraint<T, V>
     if (colour == null) {
       return true;
     }
+    if (graph instanceof IndexedColourableGraph) {
+      IndexedColourableGraph<T, V> indexedGraph = (IndexedColourableGraph<T, V>) graph;
+      int colourIndex = indexedGraph.indexOfColour(colour);
+      return colourIndex < 0
+          || !indexedGraph.hasNeighbourColour(indexedGraph.getNodeIndex().indexOf(node), colourIndex);
+    }
     Collection<V> neighbourColours = graph.getNeighbourColours(node);
     for (V neighbourColour : neighbourColours) {
       if (colour.equals(neighbourColour)) {
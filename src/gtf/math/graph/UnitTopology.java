@@ -0,0 +1,22 @@
+package gtf.math.graph;
+
+import java.util.Collection;
+
+
+/**
+ * A graph topology whose nodes are grouped into units.
+ * 
+ * A unit is a set of nodes that are all neighbours of each other,
+ * and that has as many nodes as there are colours. In a complete
+ * colouring that satisfies the unalike neighbours constraint, each
+ * colour therefore appears exactly once in every unit. The rows,
+ * columns and zones of a Sudoku board are its units.
+ * 
+ * @author gtf
+ *
+ * @param <T> the type used for the node addresses.
+ */
+public interface UnitTopology<T> extends GraphTopology<T> {
+
+  Collection<? extends Collection<T>> getUnits();
+}
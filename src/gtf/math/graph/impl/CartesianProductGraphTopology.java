@@ -1,73 +1,160 @@
 package gtf.math.graph.impl;
 
 import gtf.math.graph.GraphTopology;
+import gtf.math.graph.IndexedGraphTopology;
+import gtf.math.graph.NodeIndex;
 import gtf.math.types.Pair;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.RandomAccess;
 
 
 /**
  * A graph topology that is the cartesian product of two existing graph topologies.
- * 
+ *
+ * The node (t, u) is numbered i * m + j, where i and j are the numbers
+ * of t and u in their own topologies, and m is the number of nodes of
+ * the second topology. The neighbours of every node are held by number
+ * in a flat int array: those of node k are at neighbourCells[neighbourStart[k]]
+ * to neighbourCells[neighbourStart[k + 1] - 1].
+ *
  * @author gtf
  *
  * @param <T> The type used for the node addresses of graph 1
  * @param <U> The type used for the node addresses of graph 2
  */
-public class CartesianProductGraphTopology<T, U> implements GraphTopology<Pair<T, U>> {
+public class CartesianProductGraphTopology<T, U> implements IndexedGraphTopology<Pair<T, U>> {
+
+  private final NodeIndex<T> xIndex;
+
+  private final NodeIndex<U> yIndex;
 
-  private final GraphTopology<T> x;
-  
-  private final GraphTopology<U> y;
-  
   private final int nodeCount;
-  
-  private final Map<Pair<T, U>, Collection<Pair<T, U>>> neighbours;
-  
+
+  private final List<Pair<T, U>> nodes;
+
+  private final int[] neighbourStart;
+
+  private final int[] neighbourCells;
+
+  private final List<Collection<Pair<T, U>>> neighbours;
+
   public CartesianProductGraphTopology(GraphTopology<T> x, GraphTopology<U> y) {
-    this.x = x;
-    this.y = y;
+    this.xIndex = NodeIndex.of(x);
+    this.yIndex = NodeIndex.of(y);
     this.nodeCount = x.getNodeCount() * y.getNodeCount();
-    neighbours = new HashMap<Pair<T, U>, Collection<Pair<T, U>>>(nodeCount);
-    _populateNeighbours();
+    nodes = new ArrayList<Pair<T, U>>(nodeCount);
+    neighbourStart = new int[nodeCount + 1];
+    neighbours = new ArrayList<Collection<Pair<T, U>>>(nodeCount);
+    neighbourCells = _populateNeighbours(x, y);
   }
-  
+
   /**
-   * Populate the neighbours map. Called from constructor.
+   * Populate the nodes and their neighbours. Called from constructor.
+   *
+   * @return the numbers of the neighbours of every node
    */
-  private void _populateNeighbours() {
+  private int[] _populateNeighbours(GraphTopology<T> x, GraphTopology<U> y) {
+    int m = yIndex.size();
+    int total = 0;
     for (T t : x.getAllNodes()) {
+      total += x.getNeighbours(t).size() * m;
+    }
+    for (U u : y.getAllNodes()) {
+      total += y.getNeighbours(u).size() * xIndex.size();
+    }
+    int[] result = new int[total];
+    int k = 0;
+    for (int i = 0; i < xIndex.size(); i++) {
+      T t = xIndex.getNode(i);
       Collection<T> tNeighbours = x.getNeighbours(t);
-      for (U u : y.getAllNodes()) {
-        Collection<U> uNeighbours = y.getNeighbours(u);
-        Collection<Pair<T, U>> thisNodeNeighbours = new ArrayList<Pair<T, U>>(
-            tNeighbours.size() + uNeighbours.size());
+      for (int j = 0; j < m; j++) {
+        U u = yIndex.getNode(j);
+        neighbourStart[i * m + j] = k;
         for (T tn: tNeighbours) {
-          thisNodeNeighbours.add(new Pair<T, U>(tn, u));
+          result[k++] = xIndex.indexOf(tn) * m + j;
         }
-        for (U un: uNeighbours) {
-          thisNodeNeighbours.add(new Pair<T, U>(t, un));
+        for (U un: y.getNeighbours(u)) {
+          result[k++] = i * m + yIndex.indexOf(un);
         }
-        Pair<T, U> thisNode = new Pair<T, U>(t, u);
-        neighbours.put(thisNode, thisNodeNeighbours);
+        nodes.add(new Pair<T, U>(t, u));
       }
     }
-    
+    neighbourStart[nodeCount] = k;
+    for (int i = 0; i < nodeCount; i++) {
+      neighbours.add(new NodeList(result, neighbourStart[i], neighbourStart[i + 1] - neighbourStart[i]));
+    }
+    return result;
+  }
+
+  /**
+   * A fixed list of the nodes at a range of an int array.
+   */
+  private class NodeList extends AbstractList<Pair<T, U>> implements RandomAccess {
+    private final int[] indices;
+    private final int start;
+    private final int size;
+    private NodeList(int[] indices, int start, int size) {
+      this.indices = indices;
+      this.start = start;
+      this.size = size;
+    }
+    public Pair<T, U> get(int i) {
+      if (i < 0 || i >= size) {
+        throw new IndexOutOfBoundsException(Integer.toString(i));
+      }
+      return nodes.get(indices[start + i]);
+    }
+    public int size() {
+      return size;
+    }
   }
 
   public Collection<Pair<T, U>> getAllNodes() {
-    return neighbours.keySet();
+    return Collections.unmodifiableList(nodes);
   }
 
   public Collection<Pair<T, U>> getNeighbours(Pair<T, U> nodeAddr) {
-    return Collections.unmodifiableCollection(neighbours.get(nodeAddr));
+    return neighbours.get(nodeIndex(nodeAddr));
   }
 
   public int getNodeCount() {
     return nodeCount;
   }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedGraphTopology#nodeIndex(java.lang.Object)
+   */
+  public int nodeIndex(Pair<T, U> node) {
+    return xIndex.indexOf(node.getX()) * yIndex.size() + yIndex.indexOf(node.getY());
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedGraphTopology#node(int)
+   */
+  public Pair<T, U> node(int index) {
+    return nodes.get(index);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedGraphTopology#neighbourCount(int)
+   */
+  public int neighbourCount(int index) {
+    return neighbourStart[index + 1] - neighbourStart[index];
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedGraphTopology#neighbour(int, int)
+   */
+  public int neighbour(int index, int i) {
+    return neighbourCells[neighbourStart[index] + i];
+  }
 }
@@ -1,18 +1,26 @@
 package gtf.math.graph.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
 import gtf.math.graph.ColourConstraint;
 import gtf.math.graph.ColourConstraintViolation;
 import gtf.math.graph.ColourableGraph;
 import gtf.math.graph.GraphTopology;
+import gtf.math.graph.IndexedColourableGraph;
+import gtf.math.graph.IndexedGraphTopology;
+import gtf.math.graph.NodeIndex;
+import gtf.math.graph.UnalikeNeighboursColourConstraint;
 import gtf.math.graph.VacuousColourConstraint;
+import gtf.math.types.ColourBits;
 import gtf.math.types.ColourSpace;
 import gtf.math.types.Copyable;
+import gtf.math.types.IndexedColourSpace;
 
 
 /**
@@ -20,27 +28,103 @@ import gtf.math.types.Copyable;
  * from a colour space. They may also be constrained by a
  * specified constraint.
  * 
+ * For every node, the number of its neighbours having each colour
+ * is kept up to date by setColour(), which only touches the
+ * neighbours of the node being coloured. The colours whose count is
+ * not zero are also kept as a set of bits per node, from which the
+ * neighbour colours of a node, and its possible colours under the
+ * unalike neighbours constraint, are read a word at a time. The
+ * topology is assumed to be undirected.
+ * 
+ * Colours excluded from a node by excludeColour() are kept as a
+ * further set of bits per node.
+ * 
+ * If the colour space is an IndexedColourSpace, such as PaintByNumber,
+ * colours are converted to their numbers by the colour space rather
+ * than looked up in a map.
+ * 
+ * The state of the nodes is held in arrays, by the numbers of
+ * NodeIndex.of(topology). If the topology is an IndexedGraphTopology,
+ * the neighbours of a node are also walked by number, so colouring
+ * a node needs no hashing at all.
+ * 
  * @author gtf
  *
  * @param <T> The type used for the node addresses
  * @param <V> The type used for the node values
  */
 public class ColourableGraphImpl<T, V>
-    implements ColourableGraph<T, V>, Copyable<ColourableGraph<T, V>> {
+    implements IndexedColourableGraph<T, V>, Copyable<ColourableGraph<T, V>> {
   
   private final GraphTopology<T> topology;
   
-  private final Map<T, V> colours;
+  private final NodeIndex<T> nodeIndex;
+  
+  /**
+   * The topology, if it numbers its own neighbours; otherwise null.
+   */
+  private final IndexedGraphTopology<T> indexedTopology;
+  
+  /**
+   * The colour of each node, indexed as nodeIndex; -1 if uncoloured.
+   */
+  private final int[] colours;
+  
+  private int colouredCount;
   
   private final ColourSpace<V> colourSpace;
   
-  private final Collection<V> allColours;
+  private final List<V> allColours;
+  
+  /**
+   * The colour space, if it numbers its own colours; otherwise null.
+   */
+  private final IndexedColourSpace<V> indexedColourSpace;
+  
+  /**
+   * The position of each colour in allColours, if the colour space
+   * does not number its colours; otherwise null.
+   */
+  private final Map<V, Integer> colourIndices;
+  
+  /**
+   * The number of words of each set of colours.
+   */
+  private final int words;
   
   private final ColourConstraint<T, V> constraint;
   
-  private final Map<T, Collection<V>> possibleColoursCache;
+  /**
+   * True if the constraint is the unalike neighbours constraint,
+   * whose possible colours can be read from the counters.
+   */
+  private final boolean unalikeNeighbours;
+  
+  /**
+   * For each node, the number of its neighbours having each
+   * colour, indexed as allColours. Allocated the first time a
+   * neighbour of the node is coloured.
+   */
+  private final int[][] neighbourColourCounts;
   
-  private final Map<T, Collection<V>> neighbourColoursCache;
+  /**
+   * For each node, the set of colours whose neighbour count is not
+   * zero. The set of node i starts at word i * words.
+   */
+  private final long[] presentColours;
+  
+  /**
+   * For each node, the set of colours excluded by excludeColour(),
+   * held as presentColours.
+   */
+  private final long[] excludedColours;
+  
+  /**
+   * Possible colours under any other constraint. This cache is
+   * cleared on every call to setColour(), as the constraint may
+   * depend on nodes other than the neighbours.
+   */
+  private final Map<T, Collection<V>> possibleColoursCache;
   
   private final boolean checkConstraintOnSetColour;
   
@@ -79,10 +163,59 @@ public class ColourableGraphImpl<T, V>
     this.colourSpace = colourSpace;
     this.constraint = constraint;
     this.checkConstraintOnSetColour = checkConstraintOnSetColour;
-    colours = new HashMap<T, V>(topology.getNodeCount());
-    allColours = colourSpace.getColours();
-    possibleColoursCache = new HashMap<T, Collection<V>>(topology.getNodeCount());
-    neighbourColoursCache = new HashMap<T, Collection<V>>(topology.getNodeCount());
+    unalikeNeighbours = (constraint instanceof UnalikeNeighboursColourConstraint);
+    nodeIndex = NodeIndex.of(topology);
+    indexedTopology = (topology instanceof IndexedGraphTopology)
+        ? (IndexedGraphTopology<T>) topology : null;
+    colours = new int[nodeIndex.size()];
+    Arrays.fill(colours, -1);
+    colouredCount = 0;
+    allColours = new ArrayList<V>(colourSpace.getColours());
+    if (colourSpace instanceof IndexedColourSpace) {
+      indexedColourSpace = (IndexedColourSpace<V>) colourSpace;
+      colourIndices = null;
+    } else {
+      indexedColourSpace = null;
+      colourIndices = new HashMap<V, Integer>(allColours.size());
+      for (int i = 0; i < allColours.size(); i++) {
+        colourIndices.put(allColours.get(i), Integer.valueOf(i));
+      }
+    }
+    words = ColourBits.words(allColours.size());
+    neighbourColourCounts = new int[colours.length][];
+    presentColours = new long[colours.length * words];
+    excludedColours = new long[colours.length * words];
+    possibleColoursCache = new HashMap<T, Collection<V>>();
+  }
+  
+  /**
+   * Copy constructor. Everything but the colouring is shared.
+   * 
+   * @param other the graph to copy
+   */
+  private ColourableGraphImpl(ColourableGraphImpl<T, V> other) {
+    topology = other.topology;
+    colourSpace = other.colourSpace;
+    constraint = other.constraint;
+    checkConstraintOnSetColour = other.checkConstraintOnSetColour;
+    unalikeNeighbours = other.unalikeNeighbours;
+    allColours = other.allColours;
+    indexedColourSpace = other.indexedColourSpace;
+    colourIndices = other.colourIndices;
+    words = other.words;
+    nodeIndex = other.nodeIndex;
+    indexedTopology = other.indexedTopology;
+    colours = other.colours.clone();
+    colouredCount = other.colouredCount;
+    neighbourColourCounts = new int[colours.length][];
+    for (int i = 0; i < colours.length; i++) {
+      if (other.neighbourColourCounts[i] != null) {
+        neighbourColourCounts[i] = other.neighbourColourCounts[i].clone();
+      }
+    }
+    presentColours = other.presentColours.clone();
+    excludedColours = other.excludedColours.clone();
+    possibleColoursCache = new HashMap<T, Collection<V>>();
   }
   
   /**
@@ -94,21 +227,162 @@ public class ColourableGraphImpl<T, V>
    * of this node. Otherwise the instance state may be inconsistent
    * with its constraint.
    * 
+   * A null colour removes the colour from the node.
+   * 
    * @param nodeAddress
    * @param colour
+   * @throws IllegalArgumentException if the colour is not in the colour space
    * @throws ColourConstraintViolation
    */
   public void setColour(T nodeAddress, V colour) {
+    int colourIndex = (colour == null) ? -1 : indexOf(colour);
     boolean ok = !checkConstraintOnSetColour || constraint.check(this, nodeAddress, colour);
     if (ok) {
-      colours.put(nodeAddress, colour);
-      possibleColoursCache.clear();
-      neighbourColoursCache.clear();
+      colourNode(nodeIndex.indexOf(nodeAddress), nodeAddress, colourIndex);
     } else {
       throw new ColourConstraintViolation(this, nodeAddress, colour);
     }
   }
   
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedColourableGraph#setColourIndex(int, int)
+   */
+  public void setColourIndex(int node, int colour) {
+    if (colour < -1 || colour >= allColours.size()) {
+      throw new IllegalArgumentException("bad colour " + colour);
+    }
+    if (checkConstraintOnSetColour) {
+      setColour(nodeIndex.getNode(node), (colour < 0) ? null : allColours.get(colour));
+    } else {
+      colourNode(node, null, colour);
+    }
+  }
+  
+  /**
+   * Colours a node and updates the counts of its neighbours.
+   * 
+   * @param node the number of the node
+   * @param nodeAddress the address of the node, or null if it has
+   * to be looked up
+   * @param colourIndex the number of the colour, or -1
+   */
+  private void colourNode(int node, T nodeAddress, int colourIndex) {
+    int previous = colours[node];
+    colours[node] = colourIndex;
+    if (previous >= 0) {
+      colouredCount--;
+      updateNeighbourCounts(node, nodeAddress, previous, -1);
+    }
+    if (colourIndex >= 0) {
+      colouredCount++;
+      updateNeighbourCounts(node, nodeAddress, colourIndex, 1);
+    }
+    if (!unalikeNeighbours) {
+      possibleColoursCache.clear();
+    }
+  }
+  
+  private int indexOf(V colour) {
+    int index = indexOfColour(colour);
+    if (index < 0) {
+      throw new IllegalArgumentException("bad colour " + colour);
+    }
+    return index;
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedColourableGraph#indexOfColour(java.lang.Object)
+   */
+  public int indexOfColour(V colour) {
+    if (indexedColourSpace != null) {
+      return indexedColourSpace.indexOf(colour);
+    }
+    Integer index = colourIndices.get(colour);
+    return (index == null) ? -1 : index.intValue();
+  }
+  
+  /**
+   * Adds delta to the count of the given colour at each neighbour
+   * of a node.
+   */
+  private void updateNeighbourCounts(int node, T nodeAddress, int colourIndex, int delta) {
+    if (indexedTopology != null) {
+      int neighbourCount = indexedTopology.neighbourCount(node);
+      for (int i = 0; i < neighbourCount; i++) {
+        updateCount(indexedTopology.neighbour(node, i), colourIndex, delta);
+      }
+    } else {
+      if (nodeAddress == null) {
+        nodeAddress = nodeIndex.getNode(node);
+      }
+      for (T neighbour : topology.getNeighbours(nodeAddress)) {
+        updateCount(nodeIndex.indexOf(neighbour), colourIndex, delta);
+      }
+    }
+  }
+  
+  /**
+   * Adds delta to the count of a colour at a node, and updates
+   * the set of colours present.
+   */
+  private void updateCount(int node, int colourIndex, int delta) {
+    int[] counts = neighbourColourCounts[node];
+    if (counts == null) {
+      counts = new int[allColours.size()];
+      neighbourColourCounts[node] = counts;
+    }
+    counts[colourIndex] += delta;
+    if (counts[colourIndex] == 0) {
+      ColourBits.clear(presentColours, node * words, colourIndex);
+    } else {
+      ColourBits.set(presentColours, node * words, colourIndex);
+    }
+  }
+  
+  /**
+   * Gets the colours whose neighbour count is non-zero.
+   */
+  private Collection<V> presentColours(T nodeAddress) {
+    int offset = nodeIndex.indexOf(nodeAddress) * words;
+    int count = ColourBits.count(presentColours, offset, words);
+    if (count == 0) {
+      return Collections.<V>emptyList();
+    }
+    Collection<V> result = new ArrayList<V>(count);
+    int colour = ColourBits.next(presentColours, offset, words, 0);
+    while (colour >= 0) {
+      result.add(allColours.get(colour));
+      colour = ColourBits.next(presentColours, offset, words, colour + 1);
+    }
+    return result;
+  }
+  
+  /**
+   * Gets the colours whose neighbour count is zero, and which
+   * have not been excluded.
+   */
+  private Collection<V> absentColours(T nodeAddress) {
+    int offset = nodeIndex.indexOf(nodeAddress) * words;
+    int ruledOut = ColourBits.countUnion(presentColours, excludedColours, offset, words);
+    if (ruledOut == 0) {
+      return Collections.unmodifiableList(allColours);
+    }
+    Collection<V> result = new ArrayList<V>(allColours.size() - ruledOut);
+    for (int i = 0; i < words; i++) {
+      long absent = ~(presentColours[offset + i] | excludedColours[offset + i]);
+      if (i == words - 1 && (allColours.size() & 63) != 0) {
+        absent &= (1L << allColours.size()) - 1;
+      }
+      while (absent != 0) {
+        result.add(allColours.get((i << 6) + Long.numberOfTrailingZeros(absent)));
+        absent &= absent - 1;
+      }
+    }
+    return result;
+  }
+  
   /**
    * Returns the set of distinct colours of the neighbours of this
    * node. Null (uncoloured) is not included as a value.
@@ -117,18 +391,7 @@ public class ColourableGraphImpl<T, V>
    * @return
    */
   public Collection<V> getNeighbourColours(T nodeAddress) {
-    Collection<V> result = neighbourColoursCache.get(nodeAddress);
-    if (result == null) {
-      result = new HashSet<V>(colourSpace.getNumberOfColours());
-      for (T neighbour : topology.getNeighbours(nodeAddress)) {
-        V colour = getColour(neighbour);
-        if (colour != null) {
-          result.add(colour);
-        }
-      }
-      neighbourColoursCache.put(nodeAddress, result);
-    }
-    return result;
+    return presentColours(nodeAddress);
   }
 
   /*
@@ -136,7 +399,32 @@ public class ColourableGraphImpl<T, V>
    * @see gtf.math.graph.ColourableGraph#getColour(java.lang.Object)
    */
   public V getColour(T nodeAddress) {
-    return colours.get(nodeAddress);
+    int colour = colours[nodeIndex.indexOf(nodeAddress)];
+    return (colour < 0) ? null : allColours.get(colour);
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedColourableGraph#getColourIndex(int)
+   */
+  public int getColourIndex(int node) {
+    return colours[node];
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedColourableGraph#getColours()
+   */
+  public List<V> getColours() {
+    return Collections.unmodifiableList(allColours);
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedColourableGraph#getNodeIndex()
+   */
+  public NodeIndex<T> getNodeIndex() {
+    return nodeIndex;
   }
   
   /*
@@ -144,7 +432,7 @@ public class ColourableGraphImpl<T, V>
    * @see gtf.math.graph.ColourableGraph#isComplete()
    */
   public boolean isComplete() {
-    return colours.size() == topology.getNodeCount();
+    return colouredCount == colours.length;
   }
   
   /*
@@ -152,11 +440,16 @@ public class ColourableGraphImpl<T, V>
    * @see gtf.math.graph.ColourableGraph#getPossibleColoursForNode(java.lang.Object)
    */
   public Collection<V> getPossibleColoursForNode(T node) {
+    if (unalikeNeighbours) {
+      return absentColours(node);
+    }
     Collection<V> result = possibleColoursCache.get(node);
     if (result == null) {
-      result = new ArrayList<V>(colours.size());
-      for (V colour : allColours) {
-        if (constraint.check(this, node, colour)) {
+      int offset = nodeIndex.indexOf(node) * words;
+      result = new ArrayList<V>(allColours.size());
+      for (int i = 0; i < allColours.size(); i++) {
+        V colour = allColours.get(i);
+        if (!ColourBits.get(excludedColours, offset, i) && constraint.check(this, node, colour)) {
           result.add(colour);
         }
       }
@@ -164,20 +457,92 @@ public class ColourableGraphImpl<T, V>
     }
     return result;
   }
+  
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.ColourableGraph#countPossibleColoursForNode(java.lang.Object)
+   */
+  public int countPossibleColoursForNode(T node) {
+    if (!unalikeNeighbours) {
+      return getPossibleColoursForNode(node).size();
+    }
+    return countPossibleColours(nodeIndex.indexOf(node));
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedColourableGraph#countPossibleColours(int)
+   */
+  public int countPossibleColours(int node) {
+    if (!unalikeNeighbours) {
+      return getPossibleColoursForNode(nodeIndex.getNode(node)).size();
+    }
+    return allColours.size()
+        - ColourBits.countUnion(presentColours, excludedColours, node * words, words);
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedColourableGraph#isPossibleColour(int, int)
+   */
+  public boolean isPossibleColour(int node, int colour) {
+    if (!unalikeNeighbours) {
+      return getPossibleColoursForNode(nodeIndex.getNode(node)).contains(allColours.get(colour));
+    }
+    return !ColourBits.get(presentColours, node * words, colour)
+        && !ColourBits.get(excludedColours, node * words, colour);
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedColourableGraph#hasNeighbourColour(int, int)
+   */
+  public boolean hasNeighbourColour(int node, int colour) {
+    return ColourBits.get(presentColours, node * words, colour);
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.ColourableGraph#excludeColour(java.lang.Object, java.lang.Object)
+   */
+  public boolean excludeColour(T node, V colour) {
+    int colourIndex = indexOf(colour);
+    int offset = nodeIndex.indexOf(node) * words;
+    if (ColourBits.get(excludedColours, offset, colourIndex)) {
+      return false;
+    }
+    ColourBits.set(excludedColours, offset, colourIndex);
+    possibleColoursCache.remove(node);
+    return true;
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.ColourableGraph#includeColour(java.lang.Object, java.lang.Object)
+   */
+  public void includeColour(T node, V colour) {
+    int colourIndex = indexOf(colour);
+    int offset = nodeIndex.indexOf(node) * words;
+    if (ColourBits.get(excludedColours, offset, colourIndex)) {
+      ColourBits.clear(excludedColours, offset, colourIndex);
+      possibleColoursCache.remove(node);
+    }
+  }
+  
+  /**
+   * Includes again every colour excluded from any node.
+   */
+  public void clearExcludedColours() {
+    Arrays.fill(excludedColours, 0);
+    possibleColoursCache.clear();
+  }
+  
   /*
    * (non-Javadoc)
    * @see gtf.math.types.Copyable#copyOf()
    */
   public ColourableGraph<T, V> copyOf() {
-    ColourableGraphImpl<T, V> copy =
-          new ColourableGraphImpl<T, V>(topology, colourSpace, constraint, checkConstraintOnSetColour);
-    for (T node : topology.getAllNodes()) {
-      V colour = getColour(node);
-      if (colour != null) {
-        copy.colours.put(node, colour);
-      }
-    }
-    return copy;
+    return new ColourableGraphImpl<T, V>(this);
   }
   
   /*
@@ -1,7 +1,7 @@
 package gtf.math.graph.impl;
 
 import gtf.math.algebra.ModularArithmetic;
-import gtf.math.graph.GraphTopology;
+import gtf.math.graph.IndexedGraphTopology;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -12,9 +12,11 @@ import java.util.List;
 /**
  * Sample graph topology representing an n-sided polygon.
  * 
+ * The vertices are the integers 0..n-1, numbered as themselves.
+ * 
  * @author gtf
  */
-public class Polygon implements GraphTopology<Integer> {
+public class Polygon implements IndexedGraphTopology<Integer> {
 
   private final int size;
   
@@ -32,7 +34,7 @@ public class Polygon implements GraphTopology<Integer> {
     this.size = size;
     nodes = new ArrayList<Integer>(size);
     for (int i = 0; i < size; i++) {
-      nodes.set(i, new Integer(i));
+      nodes.add(Integer.valueOf(i));
     }
   }
   
@@ -48,14 +50,51 @@ public class Polygon implements GraphTopology<Integer> {
    * Get neighbours of a node. All calculations done mod n.
    */
   public Collection<Integer> getNeighbours(Integer nodeAddr) {
-    int i = ModularArithmetic.remainder(nodeAddr.intValue() - 1, size);
-    int j = ModularArithmetic.remainder(nodeAddr.intValue() + 1, size);
+    int index = nodeIndex(nodeAddr);
     Collection<Integer> result = new ArrayList<Integer>(2);
-    result.add(new Integer(i));
-    result.add(new Integer(j));
+    result.add(nodes.get(neighbour(index, 0)));
+    result.add(nodes.get(neighbour(index, 1)));
     return result;
   }
 
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedGraphTopology#nodeIndex(java.lang.Object)
+   */
+  public int nodeIndex(Integer node) {
+    int index = node.intValue();
+    if (index < 0 || index >= size) {
+      throw new IllegalArgumentException("not a vertex " + node);
+    }
+    return index;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedGraphTopology#node(int)
+   */
+  public Integer node(int index) {
+    return nodes.get(index);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedGraphTopology#neighbourCount(int)
+   */
+  public int neighbourCount(int index) {
+    return 2;
+  }
+
+  /**
+   * Get a neighbour of a node: the previous vertex, then the next.
+   */
+  public int neighbour(int index, int i) {
+    if (i < 0 || i > 1) {
+      throw new IndexOutOfBoundsException(Integer.toString(i));
+    }
+    return ModularArithmetic.remainder(index + 2 * i - 1, size);
+  }
+
   /*
    * (non-Javadoc)
    * @see gtf.math.graph.GraphTopology#getNodeCount()
@@ -0,0 +1,85 @@
+package gtf.math.types;
+
+
+/**
+ * Utility class for sets of colour numbers held as bits in arrays
+ * of longs. Colour i is bit i % 64 of word i / 64 of the set.
+ *
+ * Several sets of the same width may share one array, the set of
+ * node n starting at word n * words(k). The sets are passed as the
+ * array and the offset of their first word.
+ *
+ * @author gtf
+ */
+public final class ColourBits {
+
+  private ColourBits() {
+  }
+
+  /**
+   * @param colours the number of colours
+   * @return the number of words needed for a set of that many colours
+   */
+  public static int words(int colours) {
+    return (colours + 63) >>> 6;
+  }
+
+  public static boolean get(long[] bits, int offset, int colour) {
+    return (bits[offset + (colour >>> 6)] & (1L << colour)) != 0;
+  }
+
+  public static void set(long[] bits, int offset, int colour) {
+    bits[offset + (colour >>> 6)] |= 1L << colour;
+  }
+
+  public static void clear(long[] bits, int offset, int colour) {
+    bits[offset + (colour >>> 6)] &= ~(1L << colour);
+  }
+
+  /**
+   * @return the number of colours in the set
+   */
+  public static int count(long[] bits, int offset, int words) {
+    int result = 0;
+    for (int i = 0; i < words; i++) {
+      result += Long.bitCount(bits[offset + i]);
+    }
+    return result;
+  }
+
+  /**
+   * @return the number of colours in either of two sets
+   */
+  public static int countUnion(long[] a, long[] b, int offset, int words) {
+    int result = 0;
+    for (int i = 0; i < words; i++) {
+      result += Long.bitCount(a[offset + i] | b[offset + i]);
+    }
+    return result;
+  }
+
+  /**
+   * Finds the lowest colour of a set, from a given colour on.
+   *
+   * @param bits the sets
+   * @param offset the first word of the set
+   * @param words the number of words of the set
+   * @param from the first colour to look at
+   * @return the lowest colour of the set not below from, or -1 if
+   * there is none
+   */
+  public static int next(long[] bits, int offset, int words, int from) {
+    int word = from >>> 6;
+    if (word >= words) {
+      return -1;
+    }
+    long w = bits[offset + word] & (-1L << from);
+    while (w == 0) {
+      if (++word == words) {
+        return -1;
+      }
+      w = bits[offset + word];
+    }
+    return (word << 6) + Long.numberOfTrailingZeros(w);
+  }
+}
@@ -0,0 +1,26 @@
+package gtf.math.types;
+
+
+/**
+ * A colour space whose colours are numbered 0..k-1, in the order
+ * returned by getColours(), and which can convert between colours
+ * and their numbers without looking them up.
+ *
+ * @author gtf
+ *
+ * @param <V> the type used for the node values
+ */
+public interface IndexedColourSpace<V> extends ColourSpace<V> {
+
+  /**
+   * @param colour a colour
+   * @return the number of the colour, or -1 if it is not in the space
+   */
+  int indexOf(V colour);
+
+  /**
+   * @param index the number of a colour, from 0 to getNumberOfColours() - 1
+   * @return the colour
+   */
+  V getColour(int index);
+}
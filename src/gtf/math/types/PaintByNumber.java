@@ -10,9 +10,12 @@ import java.util.List;
 /**
  * A colour space populated by the integers 1..range.
  * 
+ * Colour i is numbered i - 1, so graphs can keep their colours as
+ * plain ints and sets of them as bits.
+ * 
  * @author gtf
  */
-public final class PaintByNumber implements ColourSpace<Integer> {
+public final class PaintByNumber implements IndexedColourSpace<Integer> {
   
   private final int range;
   
@@ -25,7 +28,7 @@ public final class PaintByNumber implements ColourSpace<Integer> {
     this.range = range;
     values = new ArrayList<Integer>(range);
     for (int i = 1; i <= range; i++) {
-      values.add(new Integer(i));
+      values.add(Integer.valueOf(i));
     }
   }
   
@@ -45,4 +48,20 @@ public final class PaintByNumber implements ColourSpace<Integer> {
     return Collections.unmodifiableList(values);
   }
   
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.types.IndexedColourSpace#indexOf(java.lang.Object)
+   */
+  public int indexOf(Integer colour) {
+    int value = colour.intValue();
+    return (value < 1 || value > range) ? -1 : value - 1;
+  }
+  
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.types.IndexedColourSpace#getColour(int)
+   */
+  public Integer getColour(int index) {
+    return values.get(index);
+  }
 }
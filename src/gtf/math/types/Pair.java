@@ -2,7 +2,8 @@ package gtf.math.types;
 
 
 /**
- * An ordered pair.
+ * An ordered pair. Two pairs are equal if their components are
+ * equal, either or both of which may be null.
  */
 public class Pair<T, U> {
 
@@ -23,14 +24,22 @@ public class Pair<T, U> {
   }
   
   public int hashCode() {
-    return x.hashCode() ^ y.hashCode();
+    return hashCode(x) * 31 + hashCode(y);
   }
   
   public boolean equals(Object o) {
     if (o == null || !(o instanceof Pair)) {
       return false;
     }
-    Pair p = (Pair) o;
-    return (x == p.x && y == p.y);
+    Pair<?, ?> p = (Pair<?, ?>) o;
+    return (equals(x, p.x) && equals(y, p.y));
+  }
+  
+  private static int hashCode(Object o) {
+    return (o == null) ? 0 : o.hashCode();
+  }
+  
+  private static boolean equals(Object a, Object b) {
+    return (a == null) ? (b == null) : a.equals(b);
   }
 }
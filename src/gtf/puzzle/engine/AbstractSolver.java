@@ -0,0 +1,246 @@
+package gtf.puzzle.engine;
+
+import gtf.math.graph.ColourableGraph;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Base class of the solver engines. Holds the listeners and the
+ * step count, and derives the collecting and uniqueness forms of
+ * solve() from the streaming one, so that every engine offers
+ * the same listener and result APIs.
+ *
+ * @author gtf
+ *
+ * @param <T> The type used for the node addresses
+ * @param <V> The type used for the node values
+ */
+public abstract class AbstractSolver<T, V> {
+
+  /**
+   * Solution limit meaning that every solution is wanted.
+   */
+  public static final int UNLIMITED = Integer.MAX_VALUE;
+
+  private final AtomicInteger steps = new AtomicInteger();
+
+  private final SolverEventHub<T, V> eventHub;
+
+  private final SolverMetrics metrics = new SolverMetrics();
+
+  protected AbstractSolver() {
+    eventHub = new SolverEventHub<T, V>(this);
+  }
+
+  public void addListener(SolverListener<T, V> listener) {
+    eventHub.addListener(listener);
+  }
+
+  public void removeListener(SolverListener<T, V> listener) {
+    eventHub.removeListener(listener);
+  }
+
+  /**
+   * Solve a colourable graph. The puzzle itself is not modified.
+   *
+   * @param puzzle the puzzle to solve
+   * @return set of solutions
+   */
+  public Set<ColourableGraph<T, V>> solve(final ColourableGraph<T, V> puzzle) {
+    return solve(puzzle, UNLIMITED);
+  }
+
+  /**
+   * Solve a colourable graph, stopping as soon as a given number
+   * of solutions have been found. The puzzle itself is not modified.
+   *
+   * @param puzzle the puzzle to solve
+   * @param maxSolutions the most solutions to find
+   * @return set of at most maxSolutions solutions
+   */
+  public Set<ColourableGraph<T, V>> solve(final ColourableGraph<T, V> puzzle,
+      final int maxSolutions) {
+    final Set<ColourableGraph<T, V>> result = new HashSet<ColourableGraph<T, V>>();
+    solve(puzzle, maxSolutions, new SolutionHandler<T, V>() {
+      public boolean handleSolution(ColourableGraph<T, V> solution) {
+        result.add(solution);
+        return true;
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Solve a colourable graph, passing each solution to a handler
+   * as soon as it is found. Nothing is accumulated by the solver.
+   * The puzzle itself is not modified.
+   *
+   * @param puzzle the puzzle to solve
+   * @param maxSolutions the most solutions to find
+   * @param handler the handler to receive the solutions. The search
+   * stops if it returns false.
+   * @return the number of solutions passed to the handler
+   */
+  public abstract int solve(ColourableGraph<T, V> puzzle, int maxSolutions,
+      SolutionHandler<T, V> handler);
+
+  /**
+   * Counts the solutions of a colourable graph, stopping as soon as
+   * the limit is reached. The solutions are not kept.
+   *
+   * @param puzzle the puzzle to solve
+   * @param limit the most solutions to count
+   * @return the number of solutions, or limit if there are at least
+   * that many.
+   */
+  public abstract int countSolutions(ColourableGraph<T, V> puzzle, int limit);
+
+  /**
+   * Solve a colourable graph in the background, iterating over the
+   * solutions as they are found. At most bufferSize solutions are
+   * held waiting for the consumer.
+   *
+   * @param puzzle the puzzle to solve
+   * @param maxSolutions the most solutions to find
+   * @param bufferSize the capacity of the buffer between the solver
+   * and the iterator
+   * @return an iterator over the solutions
+   */
+  public SolutionIterator<T, V> iterator(final ColourableGraph<T, V> puzzle,
+      final int maxSolutions, final int bufferSize) {
+    return new SolutionIterator<T, V>(this, puzzle, maxSolutions, bufferSize);
+  }
+
+  /**
+   * Checks whether a colourable graph has exactly one solution. The
+   * search stops at the second solution.
+   *
+   * @param puzzle the puzzle to check
+   * @return true if the puzzle has a unique solution
+   */
+  public boolean isUnique(final ColourableGraph<T, V> puzzle) {
+    return countSolutions(puzzle, 2) == 1;
+  }
+
+  /**
+   * @return the total number of steps taken to solve the puzzle.
+   */
+  public int getSteps() {
+    return steps.get();
+  }
+
+  /**
+   * Counts a step of the search.
+   */
+  protected void incrementSteps() {
+    steps.incrementAndGet();
+  }
+
+  /**
+   * @return the metrics of every search made by this solver
+   */
+  public SolverMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Counts a call to solve, with the time it took.
+   *
+   * @param wallNanos the elapsed time
+   * @param cpuNanos the CPU time used by all the threads of the search
+   */
+  protected void countSearch(long wallNanos, long cpuNanos) {
+    metrics.countSearch(wallNanos, cpuNanos);
+  }
+
+  /**
+   * Counts a node of the search tree entered.
+   */
+  protected void countNode(int recursionDepth) {
+    metrics.countNode(recursionDepth);
+  }
+
+  /**
+   * Counts a node of the search tree with values to try.
+   *
+   * @param values the number of values to try
+   */
+  protected void countBranch(int recursionDepth, int values) {
+    metrics.countBranch(recursionDepth, values);
+  }
+
+  /**
+   * Counts a node of the search tree found to have no solution
+   * without trying any value.
+   */
+  protected void countDeadEnd(int recursionDepth) {
+    metrics.countDeadEnd(recursionDepth);
+  }
+
+  /**
+   * Counts a value tried.
+   */
+  protected void countGuess() {
+    metrics.countGuess();
+  }
+
+  /**
+   * Counts a value tried that led to no solution.
+   */
+  protected void countBacktrack() {
+    metrics.countBacktrack();
+  }
+
+  /**
+   * Counts values deduced without guessing.
+   *
+   * @param count the number of values
+   */
+  protected void countPropagations(int count) {
+    metrics.countPropagations(count);
+  }
+
+  /**
+   * Counts a solution passed on.
+   */
+  protected void countSolution() {
+    metrics.countSolution();
+  }
+
+  /**
+   * @return true if any listener is registered. An engine that
+   * has to do extra work to produce its events may skip it if not;
+   * the fire methods themselves cost next to nothing without one.
+   */
+  protected boolean hasListeners() {
+    return eventHub.hasListeners();
+  }
+
+  protected void fireInvoked(ColourableGraph<T, V> puzzle, int recursionDepth) {
+    if (eventHub.hasListeners()) {
+      eventHub.fireInvoked(puzzle, recursionDepth, steps.get());
+    }
+  }
+
+  protected void fireFoundSolution(ColourableGraph<T, V> puzzle, int recursionDepth) {
+    if (eventHub.hasListeners()) {
+      eventHub.fireFoundSolution(puzzle, recursionDepth, steps.get());
+    }
+  }
+
+  protected void fireNoSolution(ColourableGraph<T, V> puzzle, int recursionDepth) {
+    if (eventHub.hasListeners()) {
+      eventHub.fireNoSolution(puzzle, recursionDepth, steps.get());
+    }
+  }
+
+  protected void fireTriedCell(ColourableGraph<T, V> puzzle, int recursionDepth,
+      T node, V value) {
+    if (eventHub.hasListeners()) {
+      eventHub.fireTriedCell(puzzle, recursionDepth, steps.get(), node, value);
+    }
+  }
+}
@@ -0,0 +1,284 @@
+package gtf.puzzle.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Passes the events of a solver to another listener on a thread of
+ * its own, so that a slow listener does not hold up the search.
+ *
+ * Events are published into a bounded ring buffer, and drained in
+ * order by the dispatcher thread. Since the solvers may change the
+ * board of an event once the callback returns, the board is copied
+ * when the event is published.
+ *
+ * The cost to the search can be cut down further:
+ * <ul>
+ * <li>by sampling: only every Nth event is published, and the
+ * others are skipped without copying anything;</li>
+ * <li>by dropping events when the buffer is full, instead of
+ * waiting for the listener to catch up.</li>
+ * </ul>
+ * Solutions are never sampled out or dropped.
+ *
+ * The listener must be closed once the search is over, to deliver
+ * the events still in the buffer and stop the thread.
+ *
+ * @author gtf
+ *
+ * @param <T> The type used for the node addresses
+ * @param <V> The type used for the node values
+ */
+public class AsyncSolverListener<T, V> implements SolverListener<T, V> {
+
+  private static final int INVOKED = 0;
+
+  private static final int TRIED_CELL = 1;
+
+  private static final int FOUND_SOLUTION = 2;
+
+  private static final int NO_SOLUTION = 3;
+
+  /**
+   * Marks the end of the events in the buffer.
+   */
+  private static final Entry<?, ?> END = new Entry<Object, Object>(-1, null);
+
+  /**
+   * How long a publisher waits for room in the buffer before looking
+   * again whether the listener has been closed.
+   */
+  private static final long PUT_RETRY_MILLIS = 100;
+
+  private final SolverListener<T, V> delegate;
+
+  private final BlockingQueue<Entry<?, ?>> buffer;
+
+  private final int sampleInterval;
+
+  private final boolean dropWhenFull;
+
+  /**
+   * The number of events fired, other than solutions.
+   */
+  private final AtomicLong fired = new AtomicLong();
+
+  private final AtomicLong dropped = new AtomicLong();
+
+  private final Thread dispatcher;
+
+  private final AtomicBoolean closed = new AtomicBoolean();
+
+  /**
+   * The first exception thrown by the listener, if any.
+   */
+  private volatile RuntimeException failure = null;
+
+  /**
+   * An event waiting in the buffer.
+   */
+  private static class Entry<T, V> {
+    private final int kind;
+    private final SolverEvent<T, V> event;
+    private Entry(int kind, SolverEvent<T, V> event) {
+      this.kind = kind;
+      this.event = event;
+    }
+  }
+
+  /**
+   * Creates a listener that passes on every event, waiting for room
+   * in the buffer when it is full.
+   *
+   * @param delegate the listener to call from the dispatcher thread
+   * @param capacity the number of events the buffer holds
+   */
+  public AsyncSolverListener(SolverListener<T, V> delegate, int capacity) {
+    this(delegate, capacity, 1, false);
+  }
+
+  /**
+   * @param delegate the listener to call from the dispatcher thread
+   * @param capacity the number of events the buffer holds
+   * @param sampleInterval N to pass on only every Nth event; 1 for
+   * every event
+   * @param dropWhenFull true to drop events when the buffer is full;
+   * false to wait for room
+   */
+  public AsyncSolverListener(SolverListener<T, V> delegate, int capacity,
+      int sampleInterval, boolean dropWhenFull) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("bad capacity " + capacity);
+    }
+    if (sampleInterval < 1) {
+      throw new IllegalArgumentException("bad sample interval " + sampleInterval);
+    }
+    this.delegate = delegate;
+    this.buffer = new ArrayBlockingQueue<Entry<?, ?>>(capacity);
+    this.sampleInterval = sampleInterval;
+    this.dropWhenFull = dropWhenFull;
+    dispatcher = new Thread("AsyncSolverListener-dispatcher") {
+      public void run() {
+        dispatch();
+      }
+    };
+    dispatcher.setDaemon(true);
+    dispatcher.start();
+  }
+
+  /**
+   * @return the number of events dropped because the buffer was full
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  /**
+   * @return the number of events skipped by sampling
+   */
+  public long getSkipped() {
+    long count = fired.get();
+    return count - (count + sampleInterval - 1) / sampleInterval;
+  }
+
+  /**
+   * Waits for the events in the buffer to be delivered, and stops the
+   * dispatcher thread. Events fired afterwards are ignored, and
+   * those still waiting for room in the buffer are dropped. It may
+   * be called from several threads.
+   *
+   * @throws RuntimeException the first exception thrown by the listener,
+   * if any
+   */
+  public void close() throws InterruptedException {
+    if (closed.compareAndSet(false, true)) {
+      buffer.put(END);
+    }
+    dispatcher.join();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.SolverListener#solverInvoked(gtf.puzzle.engine.SolverEvent)
+   */
+  public void solverInvoked(SolverEvent<T, V> event) {
+    publish(INVOKED, event);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.SolverListener#solverTriedCell(gtf.puzzle.engine.SolverEvent)
+   */
+  public void solverTriedCell(SolverEvent<T, V> event) {
+    publish(TRIED_CELL, event);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.SolverListener#solverFoundSolution(gtf.puzzle.engine.SolverEvent)
+   */
+  public void solverFoundSolution(SolverEvent<T, V> event) {
+    publish(FOUND_SOLUTION, event);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.SolverListener#solverNoSolution(gtf.puzzle.engine.SolverEvent)
+   */
+  public void solverNoSolution(SolverEvent<T, V> event) {
+    publish(NO_SOLUTION, event);
+  }
+
+  private void publish(int kind, SolverEvent<T, V> event) {
+    if (closed.get()) {
+      return;
+    }
+    boolean mayDrop = dropWhenFull && kind != FOUND_SOLUTION;
+    if (kind != FOUND_SOLUTION && fired.getAndIncrement() % sampleInterval != 0) {
+      return; // sampled out
+    }
+    if (mayDrop && buffer.remainingCapacity() == 0) {
+      dropped.incrementAndGet(); // before going to the trouble of a copy
+      return;
+    }
+    Entry<T, V> entry = new Entry<T, V>(kind, snapshot(event));
+    if (mayDrop) {
+      if (!buffer.offer(entry)) {
+        dropped.incrementAndGet();
+      }
+    } else {
+      // the dispatcher stops taking events once closed, so an event
+      // published just as the listener is closed must not wait for
+      // room for ever
+      try {
+        while (!buffer.offer(entry, PUT_RETRY_MILLIS, TimeUnit.MILLISECONDS)) {
+          if (closed.get()) {
+            dropped.incrementAndGet();
+            return;
+          }
+        }
+      } catch (InterruptedException e) {
+        dropped.incrementAndGet();
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static <T, V> SolverEvent<T, V> snapshot(SolverEvent<T, V> event) {
+    return new SolverEvent<T, V>(event.getSource(),
+        (event.getPuzzle() == null) ? null : event.getPuzzle().copyOf(),
+        event.getRecursionDepth(), event.getSteps(), event.getNode(), event.getValue());
+  }
+
+  @SuppressWarnings("unchecked")
+  private void dispatch() {
+    List<Entry<?, ?>> batch = new ArrayList<Entry<?, ?>>();
+    try {
+      while (true) {
+        batch.add(buffer.take());
+        buffer.drainTo(batch);
+        for (Entry<?, ?> entry : batch) {
+          if (entry == END) {
+            return;
+          }
+          try {
+            deliver((Entry<T, V>) entry);
+          } catch (RuntimeException e) {
+            if (failure == null) {
+              failure = e;
+            }
+          }
+        }
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      // stopped
+    }
+  }
+
+  private void deliver(Entry<T, V> entry) {
+    switch (entry.kind) {
+    case INVOKED:
+      delegate.solverInvoked(entry.event);
+      break;
+    case TRIED_CELL:
+      delegate.solverTriedCell(entry.event);
+      break;
+    case FOUND_SOLUTION:
+      delegate.solverFoundSolution(entry.event);
+      break;
+    default:
+      delegate.solverNoSolution(entry.event);
+      break;
+    }
+  }
+}
@@ -0,0 +1,315 @@
+package gtf.puzzle.engine;
+
+import gtf.math.graph.ColourableGraph;
+import gtf.math.graph.NodeIndex;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ * A backtracking solver for graph-colouring problems that jumps
+ * back over the guesses that did not cause a failure, instead of
+ * retrying them one by one.
+ *
+ * Each guess is made at a new level of the search. When a node
+ * has no possible colour left, its conflict set is the levels at
+ * which its neighbours were coloured: those are the guesses that
+ * emptied its domain. When every colour of a node has failed, the
+ * conflict set of the node is the union of the conflict sets of
+ * its colours, less its own level. The search then returns
+ * straight to the deepest level in the conflict set, skipping the
+ * colours left to try at the levels in between, since they cannot
+ * change the outcome (conflict-directed backjumping).
+ *
+ * Once a solution has been found below a level, the search backs
+ * up from it chronologically, so that no other solution is missed.
+ *
+ * Optionally, the assignments in the conflict set of each failed
+ * node are learned as a nogood, and any later assignment that
+ * completes a nogood fails at once. The nogoods are held in a
+ * store of bounded capacity, evicting the least recently used.
+ *
+ * The possible colours of a node are assumed to depend only on
+ * the colours of its neighbours and on the colours excluded from
+ * it, as is the case for the constraints of this package. The
+ * nodes are chosen as by Solver, fewest possible colours first.
+ *
+ * The puzzle passed to listeners is only valid for the duration
+ * of the callback, except for solutions.
+ *
+ * @author gtf
+ *
+ * @param <T> The type used for the node addresses
+ * @param <V> The type used for the node values
+ */
+public class BackjumpingSolver<T, V> extends AbstractSolver<T, V> {
+
+  private int nogoodCapacity = 0;
+
+  /**
+   * Sets the number of learned nogoods to keep.
+   *
+   * @param nogoodCapacity the most nogoods to keep; 0 (the default)
+   * to learn none.
+   */
+  public void setNogoodCapacity(int nogoodCapacity) {
+    if (nogoodCapacity < 0) {
+      throw new IllegalArgumentException("bad nogood capacity " + nogoodCapacity);
+    }
+    this.nogoodCapacity = nogoodCapacity;
+  }
+
+  public int getNogoodCapacity() {
+    return nogoodCapacity;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.AbstractSolver#solve(gtf.math.graph.ColourableGraph, int, gtf.puzzle.engine.SolutionHandler)
+   */
+  public int solve(ColourableGraph<T, V> puzzle, int maxSolutions,
+      SolutionHandler<T, V> handler) {
+    return new Search(puzzle, maxSolutions, handler).run();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.AbstractSolver#countSolutions(gtf.math.graph.ColourableGraph, int)
+   */
+  public int countSolutions(ColourableGraph<T, V> puzzle, int limit) {
+    return new Search(puzzle, limit, null).run();
+  }
+
+  /**
+   * The state of a single call to solve().
+   */
+  private class Search {
+
+    private final NodeIndex<T> nodeIndex;
+
+    private final int limit;
+
+    /**
+     * The handler for the solutions found, or null to only
+     * count them.
+     */
+    private final SolutionHandler<T, V> handler;
+
+    /**
+     * The working copy of the puzzle.
+     */
+    private final ColourableGraph<T, V> board;
+
+    /**
+     * The level at which each node was coloured, by node index.
+     * 0 if the node is not coloured or was coloured in the puzzle.
+     */
+    private final int[] levels;
+
+    /**
+     * The node coloured at each level, by node index.
+     */
+    private final int[] levelNodes;
+
+    /**
+     * The colour given at each level.
+     */
+    private final List<V> levelValues;
+
+    /**
+     * The learned nogoods, or null if none are learned.
+     */
+    private final NogoodStore<V> nogoods;
+
+    private int found;
+
+    private boolean stopped;
+
+    private Search(ColourableGraph<T, V> puzzle, int limit, SolutionHandler<T, V> handler) {
+      if (limit < 1) {
+        throw new IllegalArgumentException("bad solution limit " + limit);
+      }
+      this.nodeIndex = NodeIndex.of(puzzle.getTopology());
+      this.limit = limit;
+      this.handler = handler;
+      board = puzzle.copyOf();
+      levels = new int[nodeIndex.size()];
+      levelNodes = new int[nodeIndex.size() + 1];
+      levelValues = new ArrayList<V>(nodeIndex.size() + 1);
+      for (int i = 0; i <= nodeIndex.size(); i++) {
+        levelValues.add(null);
+      }
+      nogoods = (nogoodCapacity > 0)
+          ? new NogoodStore<V>(nogoodCapacity, nodeIndex.size()) : null;
+      found = 0;
+      stopped = false;
+    }
+
+    /**
+     * @return true once the search is to unwind, because it is done
+     * or because the handler has cancelled it
+     */
+    private boolean isStopped() {
+      if (!stopped && handler != null && handler.isCancelled()) {
+        stopped = true;
+      }
+      return stopped;
+    }
+
+    /**
+     * @return the number of solutions found
+     */
+    private int run() {
+      long wall = System.nanoTime();
+      long cpu = SolverMetrics.currentThreadCpuTime();
+      solve(1);
+      countSearch(System.nanoTime() - wall, SolverMetrics.currentThreadCpuTime() - cpu);
+      return found;
+    }
+
+    private void foundSolution(int level) {
+      found++;
+      countSolution();
+      if (found == limit) {
+        stopped = true;
+      }
+      ColourableGraph<T, V> solution = (handler == null) ? board : board.copyOf();
+      fireFoundSolution(solution, level - 1);
+      if (handler != null && !handler.handleSolution(solution)) {
+        stopped = true;
+      }
+    }
+
+    /**
+     * @param level the level of the next guess
+     * @return the conflict set of the failure below this level, or
+     * null if a solution was found below it or the search was stopped,
+     * in which case the caller must back up chronologically.
+     */
+    private BitSet solve(final int level) {
+      if (isStopped()) {
+        return null;
+      }
+      countNode(level - 1);
+      fireInvoked(board, level - 1);
+      if (board.isComplete()) {
+        foundSolution(level);
+        return null;
+      }
+      Backtrackable<T, V> backtrackable = new BacktrackableImpl<T, V>(board, nodeIndex);
+      T node = backtrackable.getMostConstrainedNode();
+      int index = nodeIndex.indexOf(node);
+      BitSet conflicts = neighbourLevels(node);
+      Collection<V> allowedValues = board.getPossibleColoursForNode(node);
+      if (allowedValues.isEmpty()) {
+        countDeadEnd(level - 1);
+        fireNoSolution(board, level - 1);
+        return conflicts; // no solution
+      }
+      countBranch(level - 1, allowedValues.size());
+      boolean chronological = false;
+      for (V value : allowedValues) {
+        if (stopped) {
+          break;
+        }
+        board.setColour(node, value);
+        levels[index] = level;
+        levelNodes[level] = index;
+        levelValues.set(level, value);
+        countGuess();
+        fireTriedCell(board, level - 1, node, value);
+        int foundBefore = found;
+        BitSet cause = violatedNogood(index, value);
+        if (cause != null) {
+          countDeadEnd(level - 1);
+          fireNoSolution(board, level - 1);
+        } else {
+          cause = solve(level + 1);
+        }
+        board.setColour(node, null);
+        levels[index] = 0;
+        if (found == foundBefore) {
+          countBacktrack();
+        }
+        if (cause == null) {
+          chronological = true;
+        } else if (!cause.get(level) && !chronological) {
+          // this guess played no part in the failure
+          incrementSteps();
+          return cause;
+        } else {
+          cause.clear(level);
+          conflicts.or(cause);
+        }
+      }
+      incrementSteps();
+      if (chronological || stopped) {
+        return null;
+      }
+      learn(conflicts);
+      return conflicts;
+    }
+
+    /**
+     * @return the levels at which the neighbours of a node were coloured
+     */
+    private BitSet neighbourLevels(T node) {
+      BitSet result = new BitSet();
+      for (T neighbour : board.getTopology().getNeighbours(node)) {
+        int level = levels[nodeIndex.indexOf(neighbour)];
+        if (level > 0) {
+          result.set(level);
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Checks the assignment just made against the learned nogoods.
+     *
+     * @return the levels of the assignments of the nogood completed
+     * by the assignment, or null if none is.
+     */
+    private BitSet violatedNogood(int index, V value) {
+      if (nogoods == null) {
+        return null;
+      }
+      for (NogoodStore.Nogood<V> nogood : nogoods.getWatches(index)) {
+        BitSet result = new BitSet();
+        for (int i = 0; i < nogood.size() && result != null; i++) {
+          int level = levels[nogood.getNode(i)];
+          if (level > 0 && levelValues.get(level).equals(nogood.getValue(i))) {
+            result.set(level);
+          } else {
+            result = null;
+          }
+        }
+        if (result != null) {
+          nogoods.touch(nogood);
+          return result;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Learns the assignments at the levels of a conflict set as a nogood.
+     */
+    private void learn(BitSet conflicts) {
+      if (nogoods == null || conflicts.isEmpty()) {
+        return;
+      }
+      int[] nodes = new int[conflicts.cardinality()];
+      List<V> values = new ArrayList<V>(nodes.length);
+      int i = 0;
+      for (int level = conflicts.nextSetBit(0); level >= 0; level = conflicts.nextSetBit(level + 1)) {
+        nodes[i++] = levelNodes[level];
+        values.add(levelValues.get(level));
+      }
+      nogoods.add(nodes, values);
+    }
+  }
+}
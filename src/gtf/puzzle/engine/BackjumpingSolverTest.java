@@ -0,0 +1,128 @@
+package gtf.puzzle.engine;
+
+import gtf.math.graph.ColourableGraph;
+import gtf.math.graph.GraphTopology;
+import gtf.math.graph.UnalikeNeighboursColourConstraint;
+import gtf.math.graph.impl.CartesianProductGraphTopology;
+import gtf.math.graph.impl.ColourableGraphImpl;
+import gtf.math.graph.impl.Polygon;
+import gtf.math.types.PaintByNumber;
+import gtf.math.types.Pair;
+import gtf.puzzle.sudoku.graph.SudokuCellAddress;
+import gtf.puzzle.sudoku.io.GameBoardReader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Checks the backjumping solver against the chronological one, and
+ * against colourings whose number is known.
+ *
+ * The boards are read from the boards directory, so the tests must
+ * be run from the top of the project.
+ *
+ * @author gtf
+ */
+public class BackjumpingSolverTest extends TestCase {
+
+  /**
+   * More than the number of solutions of any of the boards.
+   */
+  private static final int LIMIT = 1000;
+
+  public BackjumpingSolverTest(String name) {
+    super(name);
+  }
+
+  public void testBoardsAgreeWithSolver() throws Exception {
+    File[] files = new File("boards").listFiles();
+    assertNotNull("no boards directory", files);
+    Arrays.sort(files);
+    int boards = 0;
+    for (File file : files) {
+      if (!file.getName().endsWith(".gb")) {
+        continue;
+      }
+      ColourableGraph<SudokuCellAddress, Integer> puzzle = read(file);
+      Set<String> expected = digits(new Solver<SudokuCellAddress, Integer>().solve(puzzle, LIMIT));
+      for (int capacity : new int[] {0, 2, 1000}) {
+        BackjumpingSolver<SudokuCellAddress, Integer> solver =
+            new BackjumpingSolver<SudokuCellAddress, Integer>();
+        solver.setNogoodCapacity(capacity);
+        assertEquals(file.getName() + ", nogood capacity " + capacity,
+            expected, digits(solver.solve(puzzle, LIMIT)));
+      }
+      boards++;
+    }
+    assertTrue("no boards read", boards > 0);
+  }
+
+  /**
+   * A polygon of n sides has (k-1)^n + (-1)^n (k-1) colourings
+   * with k colours.
+   */
+  public void testPolygons() {
+    for (int sides = 3; sides <= 9; sides++) {
+      for (int colours = 2; colours <= 4; colours++) {
+        int expected = (int) Math.pow(colours - 1, sides)
+            + ((sides % 2 == 0) ? 1 : -1) * (colours - 1);
+        BackjumpingSolver<Integer, Integer> solver = new BackjumpingSolver<Integer, Integer>();
+        solver.setNogoodCapacity(4);
+        assertEquals(sides + " sides, " + colours + " colours",
+            expected, solver.countSolutions(colour(new Polygon(sides), colours), LIMIT * LIMIT));
+      }
+    }
+  }
+
+  /**
+   * The 5x5 torus, the product of two pentagons, has 7560
+   * colourings with 3 colours, as counted by Solver. Its search
+   * fails at hundreds of nodes, each of which learns a nogood, so
+   * a store of two nogoods has to evict most of them.
+   */
+  public void testTorusWithSmallNogoodStore() {
+    ColourableGraph<Pair<Integer, Integer>, Integer> torus = colour(
+        new CartesianProductGraphTopology<Integer, Integer>(new Polygon(5), new Polygon(5)), 3);
+    BackjumpingSolver<Pair<Integer, Integer>, Integer> solver =
+        new BackjumpingSolver<Pair<Integer, Integer>, Integer>();
+    solver.setNogoodCapacity(2);
+    assertEquals(7560, solver.countSolutions(torus, LIMIT * LIMIT));
+    assertTrue("too few nogoods learned to evict any", solver.getMetrics().getDeadEnds() > 2);
+  }
+
+  private static <T> ColourableGraph<T, Integer> colour(GraphTopology<T> topology, int colours) {
+    return new ColourableGraphImpl<T, Integer>(topology, new PaintByNumber(colours),
+        new UnalikeNeighboursColourConstraint<T, Integer>());
+  }
+
+  private static ColourableGraph<SudokuCellAddress, Integer> read(File file) throws Exception {
+    InputStream in = new FileInputStream(file);
+    try {
+      return new GameBoardReader().read(in).getGraph();
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * @return the solutions, each written as its digits
+   */
+  private static Set<String> digits(Set<ColourableGraph<SudokuCellAddress, Integer>> solutions) {
+    Set<String> result = new HashSet<String>();
+    for (ColourableGraph<SudokuCellAddress, Integer> solution : solutions) {
+      StringBuilder digits = new StringBuilder();
+      for (SudokuCellAddress cell : solution.getTopology().getAllNodes()) {
+        digits.append(solution.getColour(cell)).append(' ');
+      }
+      result.add(digits.toString());
+    }
+    return result;
+  }
+}
@@ -1,11 +1,11 @@
 package gtf.puzzle.engine;
 
 import gtf.math.graph.ColourableGraph;
+import gtf.math.graph.IndexedColourableGraph;
+import gtf.math.graph.NodeIndex;
 
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
@@ -15,10 +15,12 @@ import java.util.TreeMap;
  * to be used in a backtracking algorithm.
  * 
  * For performance reasons, it is advised to implement
- * caching in the getPossibleColoursForNode() method
- * of the underlying graph. The backtracker makes intensive
+ * countPossibleColoursForNode() in the underlying graph
+ * without allocation. The backtracker makes intensive
  * use of that method in an inner loop, and an inefficient
- * implementation will impair performance.
+ * implementation will impair performance. If the graph is an
+ * IndexedColourableGraph, the nodes are scanned by number, without
+ * looking up any node address.
  * 
  * @author gtf
  *
@@ -30,31 +32,23 @@ class BacktrackableImpl<T, V> implements Backtrackable<T, V> {
   protected final ColourableGraph<T, V> graph;
   
   /**
-   * An arbitrary ordering imposed on the nodes. It is
-   * needed to maintain the consistency of the TreeMap.
+   * An arbitrary ordering imposed on the nodes, shared by all
+   * graphs with the same topology. It is needed to maintain the
+   * consistency of the TreeMap, and to break ties between nodes.
    */
-  private final Map<T, Integer> fakeOrdering;
+  private final NodeIndex<T> nodeIndex;
   
   public BacktrackableImpl(ColourableGraph<T, V> graph) {
-    this.graph = graph;
-    int nodeCount = graph.getTopology().getNodeCount();
-    fakeOrdering = new HashMap<T, Integer>(nodeCount);
-    _computeFakeOrdering();
+    this(graph, NodeIndex.of(graph.getTopology()));
   }
 
   /**
-   * Compute the fake ordering. Called from constructor.
-   * 
-   * TODO find a way to avoid recomputing the fake
-   * ordering for every new instance. It only depends on
-   * the collection of underlying nodes, which doesn't
-   * change.
+   * @param graph the graph
+   * @param nodeIndex the index of the graph's topology
    */
-  private void _computeFakeOrdering() {
-    int i = 0;
-    for (T node : graph.getTopology().getAllNodes()) {
-      fakeOrdering.put(node, i++);
-    }
+  public BacktrackableImpl(ColourableGraph<T, V> graph, NodeIndex<T> nodeIndex) {
+    this.graph = graph;
+    this.nodeIndex = nodeIndex;
   }
 
   /*
@@ -69,12 +63,12 @@ class BacktrackableImpl<T, V> implements Backtrackable<T, V> {
             // have the same number, we can't return 0 because the
             // TreeMap will consider them equal. Otherwise we
             // use the fake ordering.
-            int xPossibilities = graph.getPossibleColoursForNode(x).size();
-            int yPossibilities = graph.getPossibleColoursForNode(y).size();
+            int xPossibilities = graph.countPossibleColoursForNode(x);
+            int yPossibilities = graph.countPossibleColoursForNode(y);
             if (xPossibilities != yPossibilities) {
               return xPossibilities - yPossibilities;
             }
-            return fakeOrdering.get(x) - fakeOrdering.get(y);
+            return nodeIndex.indexOf(x) - nodeIndex.indexOf(y);
           }
         }
     );
@@ -88,4 +82,54 @@ class BacktrackableImpl<T, V> implements Backtrackable<T, V> {
     }
     return result;
   }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.Backtrackable#getMostConstrainedNode()
+   */
+  public T getMostConstrainedNode() {
+    if (graph instanceof IndexedColourableGraph) {
+      int best = getMostConstrainedIndex((IndexedColourableGraph<T, V>) graph);
+      return (best < 0) ? null : nodeIndex.getNode(best);
+    }
+    T result = null;
+    int fewest = Integer.MAX_VALUE;
+    for (int i = 0; i < nodeIndex.size(); i++) {
+      T node = nodeIndex.getNode(i);
+      if (null == graph.getColour(node)) {
+        int possibilities = graph.countPossibleColoursForNode(node);
+        if (possibilities < fewest) {
+          result = node;
+          fewest = possibilities;
+          if (possibilities == 0) {
+            break;
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * The same as getMostConstrainedNode(), by node number.
+   * 
+   * @return the number of the node, or -1 if every node is coloured
+   */
+  private int getMostConstrainedIndex(IndexedColourableGraph<T, V> indexedGraph) {
+    int result = -1;
+    int fewest = Integer.MAX_VALUE;
+    for (int i = 0; i < nodeIndex.size(); i++) {
+      if (indexedGraph.getColourIndex(i) < 0) {
+        int possibilities = indexedGraph.countPossibleColours(i);
+        if (possibilities < fewest) {
+          result = i;
+          fewest = possibilities;
+          if (possibilities == 0) {
+            break;
+          }
+        }
+      }
+    }
+    return result;
+  }
 }
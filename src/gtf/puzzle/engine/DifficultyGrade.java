@@ -0,0 +1,121 @@
+package gtf.puzzle.engine;
+
+
+/**
+ * The difficulty of a puzzle, as measured by a DifficultyGrader.
+ *
+ * @author gtf
+ */
+public class DifficultyGrade {
+
+  private final String hardestTechnique;
+
+  private final int level;
+
+  private final int steps;
+
+  private final int deductions;
+
+  private final long guesses;
+
+  private final long backtrackDepth;
+
+  private final int score;
+
+  private final int solutions;
+
+  DifficultyGrade(String hardestTechnique, int level, int steps, int deductions,
+      long guesses, long backtrackDepth, int score, int solutions) {
+    this.hardestTechnique = hardestTechnique;
+    this.level = level;
+    this.steps = steps;
+    this.deductions = deductions;
+    this.guesses = guesses;
+    this.backtrackDepth = backtrackDepth;
+    this.score = score;
+    this.solutions = solutions;
+  }
+
+  /**
+   * @return the name of the hardest technique needed, or
+   * DifficultyGrader.BACKTRACKING if logic alone was not enough,
+   * or null if the puzzle was already complete
+   */
+  public String getHardestTechnique() {
+    return hardestTechnique;
+  }
+
+  /**
+   * @return the rank of the hardest technique needed, from 1 for
+   * the easiest; one more than the number of techniques if logic
+   * alone was not enough; 0 if the puzzle was already complete
+   */
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   * @return the number of passes of a technique that made progress
+   */
+  public int getSteps() {
+    return steps;
+  }
+
+  /**
+   * @return the number of colours placed or excluded by the techniques
+   */
+  public int getDeductions() {
+    return deductions;
+  }
+
+  /**
+   * @return the number of values tried once logic alone stalled;
+   * 0 if it was enough
+   */
+  public long getGuesses() {
+    return guesses;
+  }
+
+  /**
+   * @return the greatest number of guesses in force at once once
+   * logic alone stalled; 0 if it was enough
+   */
+  public long getBacktrackDepth() {
+    return backtrackDepth;
+  }
+
+  /**
+   * @return the score: the sum of the weights of the steps taken,
+   * and of the guesses made
+   */
+  public int getScore() {
+    return score;
+  }
+
+  /**
+   * @return the number of solutions of the puzzle, up to 2
+   */
+  public int getSolutions() {
+    return solutions;
+  }
+
+  /**
+   * @return true if the puzzle was solved by the techniques alone
+   */
+  public boolean isSolvedByLogic() {
+    return solutions == 1 && guesses == 0;
+  }
+
+  public String toString() {
+    StringBuffer buf = new StringBuffer();
+    buf.append("score ").append(score);
+    buf.append(": ").append(hardestTechnique == null ? "complete" : hardestTechnique);
+    buf.append(" (level ").append(level).append("), ");
+    buf.append(steps).append(" steps, ");
+    buf.append(guesses).append(" guesses to depth ").append(backtrackDepth);
+    if (solutions != 1) {
+      buf.append(solutions == 0 ? ", no solution" : ", several solutions");
+    }
+    return buf.toString();
+  }
+}
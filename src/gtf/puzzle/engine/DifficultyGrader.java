@@ -0,0 +1,154 @@
+package gtf.puzzle.engine;
+
+import gtf.math.graph.ColourableGraph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Grades the difficulty of a puzzle by solving it the way a person
+ * would: with logical techniques only, always using the easiest one
+ * that makes progress.
+ *
+ * The techniques are tried in order of difficulty. Whenever one
+ * makes progress, grading starts again from the easiest, as in the
+ * Propagator. Each pass that makes progress is a step, and adds the
+ * weight of its technique to the score. The grade is the hardest
+ * technique needed.
+ *
+ * If the techniques stall before the puzzle is complete, the rest
+ * is solved by backtracking, with every technique propagated between
+ * guesses. Each guess adds GUESS_WEIGHT to the score, and the depth
+ * of the backtracking is reported.
+ *
+ * A grader holds no state between puzzles, so one may grade several
+ * puzzles at once on different threads.
+ *
+ * @author gtf
+ *
+ * @param <T> The type used for the node addresses
+ * @param <V> The type used for the node values
+ */
+public class DifficultyGrader<T, V> {
+
+  /**
+   * The name given to the grade of a puzzle that logic alone
+   * does not solve.
+   */
+  public static final String BACKTRACKING = "backtracking";
+
+  /**
+   * The score of each guess made once the techniques stall.
+   */
+  public static final int GUESS_WEIGHT = 50;
+
+  private final List<Technique<T, V>> techniques;
+
+  private final Propagator<T, V> propagator;
+
+  /**
+   * A deduction rule with the name and weight it is graded by.
+   */
+  public static class Technique<T, V> {
+    private final String name;
+    private final PropagationRule<T, V> rule;
+    private final int weight;
+    public Technique(String name, PropagationRule<T, V> rule, int weight) {
+      this.name = name;
+      this.rule = rule;
+      this.weight = weight;
+    }
+    public String getName() {
+      return name;
+    }
+    public PropagationRule<T, V> getRule() {
+      return rule;
+    }
+    public int getWeight() {
+      return weight;
+    }
+  }
+
+  /**
+   * @param techniques the techniques, from the easiest to the hardest
+   */
+  public DifficultyGrader(List<? extends Technique<T, V>> techniques) {
+    this.techniques = Collections.unmodifiableList(new ArrayList<Technique<T, V>>(techniques));
+    List<PropagationRule<T, V>> rules = new ArrayList<PropagationRule<T, V>>();
+    for (Technique<T, V> technique : techniques) {
+      rules.add(technique.getRule());
+    }
+    propagator = new Propagator<T, V>(rules);
+  }
+
+  /**
+   * @return a grader for the techniques of Propagator.advanced(),
+   * ranked from hidden singles up to X-wings
+   */
+  public static <T, V> DifficultyGrader<T, V> standard() {
+    List<Technique<T, V>> techniques = new ArrayList<Technique<T, V>>();
+    techniques.add(new Technique<T, V>("hidden-single", new HiddenSingleRule<T, V>(), 1));
+    techniques.add(new Technique<T, V>("naked-single", new NakedSingleRule<T, V>(), 2));
+    techniques.add(new Technique<T, V>("locked-candidates", new LockedCandidatesRule<T, V>(), 4));
+    techniques.add(new Technique<T, V>("naked-pair", new NakedSubsetRule<T, V>(2), 6));
+    techniques.add(new Technique<T, V>("hidden-pair", new HiddenSubsetRule<T, V>(2), 8));
+    techniques.add(new Technique<T, V>("naked-triple", new NakedSubsetRule<T, V>(3), 10));
+    techniques.add(new Technique<T, V>("hidden-triple", new HiddenSubsetRule<T, V>(3), 12));
+    techniques.add(new Technique<T, V>("x-wing", new XWingRule<T, V>(), 16));
+    return new DifficultyGrader<T, V>(techniques);
+  }
+
+  public List<Technique<T, V>> getTechniques() {
+    return techniques;
+  }
+
+  /**
+   * Grades a puzzle. The puzzle itself is not modified.
+   *
+   * @param puzzle the puzzle
+   * @return its grade
+   */
+  public DifficultyGrade grade(ColourableGraph<T, V> puzzle) {
+    ColourableGraph<T, V> board = puzzle.copyOf();
+    PropagationContext<T, V> context = new PropagationContext<T, V>(board, null);
+    int hardest = -1;
+    int steps = 0;
+    int score = 0;
+    int i = 0;
+    while (i < techniques.size() && !board.isComplete()) {
+      Technique<T, V> technique = techniques.get(i);
+      int changes = context.getChanges();
+      if (!technique.getRule().apply(context)) {
+        // no solution: graded by the technique that showed it
+        hardest = Math.max(hardest, i);
+        return new DifficultyGrade(techniques.get(hardest).getName(), hardest + 1, steps + 1,
+            context.getChanges(), 0, 0, score + technique.getWeight(), 0);
+      }
+      if (context.getChanges() == changes) {
+        i++;
+      } else {
+        hardest = Math.max(hardest, i);
+        steps++;
+        score += technique.getWeight();
+        i = 0;
+      }
+    }
+    if (board.isComplete()) {
+      return new DifficultyGrade((hardest < 0) ? null : techniques.get(hardest).getName(),
+          hardest + 1, steps, context.getChanges(), 0, 0, score, 1);
+    }
+
+    // logic alone has stalled
+    Solver<T, V> solver = new Solver<T, V>();
+    solver.setInPlace(true);
+    solver.setPropagator(propagator);
+    int solutions = solver.countSolutions(board, 2);
+    SolverMetrics metrics = solver.getMetrics();
+    return new DifficultyGrade(BACKTRACKING, techniques.size() + 1, steps,
+        context.getChanges(), metrics.getGuesses(), metrics.getMaxDepth(),
+        (int) Math.min(score + GUESS_WEIGHT * metrics.getGuesses(), Integer.MAX_VALUE),
+        solutions);
+  }
+}
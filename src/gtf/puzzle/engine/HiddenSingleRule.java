@@ -0,0 +1,50 @@
+package gtf.puzzle.engine;
+
+import gtf.math.graph.ColourableGraph;
+
+import java.util.List;
+
+
+/**
+ * Colours a node if it is the only place left in one of its
+ * units for some colour. Detects units in which some colour
+ * can no longer be placed.
+ * 
+ * Has no effect unless the topology is a UnitTopology.
+ * 
+ * @author gtf
+ *
+ * @param <T> The type used for the node addresses
+ * @param <V> The type used for the node values
+ */
+public class HiddenSingleRule<T, V> implements PropagationRule<T, V> {
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.PropagationRule#apply(gtf.puzzle.engine.PropagationContext)
+   */
+  public boolean apply(PropagationContext<T, V> context) {
+    ColourableGraph<T, V> graph = context.getGraph();
+    UnitPlaces<T, V> places = context.getPlaces();
+    for (List<T> unit : context.getUnits()) {
+      places.fill(graph, unit);
+      if (places.countAvailable() < unit.size()) {
+        return false;
+      }
+      for (int i = 0; i < places.size(); i++) {
+        if (places.countPlaces(i) == 1 && !places.isPlaced(i)) {
+          T node = places.getPlace(i, 0);
+          V colour = places.getColour(i);
+          V current = graph.getColour(node);
+          if (current == null) {
+            context.assign(node, colour);
+          } else if (!current.equals(colour)) {
+            // two colours can only go in the same node
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,123 @@
+package gtf.puzzle.engine;
+
+import gtf.math.graph.ColourableGraph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Hidden pairs, triples, etc. If n colours can only go in the
+ * same n nodes of a unit, those nodes must take those colours,
+ * and every other colour is excluded from them.
+ * 
+ * Has no effect unless the topology is a UnitTopology.
+ * 
+ * @author gtf
+ *
+ * @param <T> The type used for the node addresses
+ * @param <V> The type used for the node values
+ */
+public class HiddenSubsetRule<T, V> implements PropagationRule<T, V> {
+
+  private final int size;
+
+  /**
+   * @param size the number of colours in the subset (2 for pairs,
+   * 3 for triples)
+   */
+  public HiddenSubsetRule(int size) {
+    if (size < 2) {
+      throw new IllegalArgumentException("bad subset size " + size);
+    }
+    this.size = size;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.PropagationRule#apply(gtf.puzzle.engine.PropagationContext)
+   */
+  public boolean apply(PropagationContext<T, V> context) {
+    ColourableGraph<T, V> graph = context.getGraph();
+    UnitPlaces<T, V> places = context.getPlaces();
+    int[] open = new int[0];
+    List<V> chosen = new ArrayList<V>(size);
+    List<T> union = new ArrayList<T>(size);
+    for (List<T> unit : context.getUnits()) {
+      places.fill(graph, unit);
+      if (places.getUncoloured() <= size) {
+        continue;
+      }
+      if (open.length < places.size()) {
+        open = new int[places.size()];
+      }
+      int openCount = 0;
+      for (int i = 0; i < places.size(); i++) {
+        int count = places.countPlaces(i);
+        if (!places.isPlaced(i) && count >= 2 && count <= size) {
+          open[openCount++] = i;
+        }
+      }
+      if (!search(context, places, open, openCount, 0, chosen, union)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Looks for subsets extending the chosen colours with colours
+   * from open[start..openCount-1].
+   * 
+   * @param union the places of the chosen colours
+   * @return false if a contradiction was found
+   */
+  private boolean search(PropagationContext<T, V> context, UnitPlaces<T, V> places, int[] open,
+      int openCount, int start, List<V> chosen, List<T> union) {
+    if (chosen.size() == size) {
+      if (union.size() < size) {
+        return false;
+      }
+      ColourableGraph<T, V> graph = context.getGraph();
+      for (T node : union) {
+        if (graph.getColour(node) == null) {
+          for (V colour : graph.getPossibleColoursForNode(node)) {
+            if (!chosen.contains(colour)) {
+              context.exclude(node, colour);
+            }
+          }
+        }
+      }
+      return true;
+    }
+    for (int i = start; i < openCount; i++) {
+      int before = union.size();
+      for (int k = 0; k < places.countPlaces(open[i]); k++) {
+        if (union.size() > size) {
+          break;
+        }
+        T node = places.getPlace(open[i], k);
+        if (!union.contains(node)) {
+          union.add(node);
+        }
+      }
+      boolean ok = true;
+      if (union.size() <= size) {
+        chosen.add(places.getColour(open[i]));
+        ok = search(context, places, open, openCount, i + 1, chosen, union);
+        chosen.remove(chosen.size() - 1);
+      }
+      while (union.size() > before) {
+        union.remove(union.size() - 1);
+      }
+      if (!ok) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,180 @@
+package gtf.puzzle.engine;
+
+import gtf.math.graph.ColourableGraph;
+import gtf.math.graph.NodeIndex;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+
+/**
+ * A backtracking solver that keeps its own stack of decisions
+ * instead of recursing once per guess.
+ *
+ * The search is the same as that of Solver in the in-place mode,
+ * and takes the same steps: the most constrained node is chosen,
+ * each of its possible colours is tried in turn on a single working
+ * copy of the board, and the guess is undone from a trail. But the
+ * node and the colours left to try at each depth are held in arrays
+ * indexed by depth, allocated once for the whole search, so the
+ * depth of the search is not limited by the thread stack. This
+ * matters on large boards, where every blank cell is a level of
+ * the search.
+ *
+ * A Propagator may be set, as for Solver.
+ *
+ * The puzzle passed to listeners is only valid for the duration
+ * of the callback, except for solutions.
+ *
+ * @author gtf
+ *
+ * @param <T> The type used for the node addresses
+ * @param <V> The type used for the node values
+ */
+public class IterativeSolver<T, V> extends AbstractSolver<T, V> {
+
+  private Propagator<T, V> propagator = null;
+
+  /**
+   * Sets the deductions to make before each branching decision.
+   *
+   * @param propagator the propagator, or null (the default) to make
+   * no deductions.
+   */
+  public void setPropagator(Propagator<T, V> propagator) {
+    this.propagator = propagator;
+  }
+
+  public Propagator<T, V> getPropagator() {
+    return propagator;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.AbstractSolver#solve(gtf.math.graph.ColourableGraph, int, gtf.puzzle.engine.SolutionHandler)
+   */
+  public int solve(ColourableGraph<T, V> puzzle, int maxSolutions,
+      SolutionHandler<T, V> handler) {
+    long wall = System.nanoTime();
+    long cpu = SolverMetrics.currentThreadCpuTime();
+    try {
+      return search(puzzle, maxSolutions, handler);
+    } finally {
+      countSearch(System.nanoTime() - wall, SolverMetrics.currentThreadCpuTime() - cpu);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.AbstractSolver#countSolutions(gtf.math.graph.ColourableGraph, int)
+   */
+  public int countSolutions(ColourableGraph<T, V> puzzle, int limit) {
+    long wall = System.nanoTime();
+    long cpu = SolverMetrics.currentThreadCpuTime();
+    try {
+      return search(puzzle, limit, null);
+    } finally {
+      countSearch(System.nanoTime() - wall, SolverMetrics.currentThreadCpuTime() - cpu);
+    }
+  }
+
+  /**
+   * @param puzzle the puzzle to solve
+   * @param limit the most solutions to find
+   * @param handler the handler for the solutions, or null to only
+   * count them
+   * @return the number of solutions found
+   */
+  @SuppressWarnings("unchecked")
+  private int search(ColourableGraph<T, V> puzzle, int limit, SolutionHandler<T, V> handler) {
+    if (limit < 1) {
+      throw new IllegalArgumentException("bad solution limit " + limit);
+    }
+    NodeIndex<T> nodeIndex = NodeIndex.of(puzzle.getTopology());
+    UnitIndex<T> unitIndex = UnitIndex.of(puzzle.getTopology());
+    ColourableGraph<T, V> board = puzzle.copyOf();
+    Trail<T, V> trail = new Trail<T, V>(nodeIndex.size());
+
+    // the decision at each depth: the node, the colours left to
+    // try, the trail mark to roll back to before each colour, and
+    // the solutions found before the colour being tried, or -1
+    int maxDepth = nodeIndex.size() + 1;
+    Object[] nodes = new Object[maxDepth];
+    Object[] values = new Object[maxDepth];
+    int[] marks = new int[maxDepth];
+    int[] foundBefore = new int[maxDepth];
+
+    int found = 0;
+    boolean stopped = false;
+    int top = -1;
+    int depth = 0;
+    boolean descend = true;
+    while (descend) {
+      // visit the board at the current depth
+      if (!stopped && handler != null && handler.isCancelled()) {
+        stopped = true;
+      }
+      if (!stopped) {
+        countNode(depth);
+        fireInvoked(board, depth);
+        if (propagator != null && !propagator.propagate(board, trail, nodeIndex, unitIndex,
+            getMetrics())) {
+          countDeadEnd(depth);
+          fireNoSolution(board, depth);
+        } else if (board.isComplete()) {
+          found++;
+          countSolution();
+          if (found == limit) {
+            stopped = true;
+          }
+          ColourableGraph<T, V> solution = (handler == null) ? board : board.copyOf();
+          fireFoundSolution(solution, depth);
+          if (handler != null && !handler.handleSolution(solution)) {
+            stopped = true;
+          }
+        } else {
+          Backtrackable<T, V> backtrackable = new BacktrackableImpl<T, V>(board, nodeIndex);
+          T bestSquare = backtrackable.getMostConstrainedNode();
+          Collection<V> allowedValues = board.getPossibleColoursForNode(bestSquare);
+          if (allowedValues.isEmpty()) {
+            countDeadEnd(depth);
+            fireNoSolution(board, depth);
+          } else {
+            countBranch(depth, allowedValues.size());
+            top = depth;
+            nodes[top] = bestSquare;
+            values[top] = allowedValues.iterator();
+            marks[top] = trail.mark();
+            foundBefore[top] = -1;
+          }
+        }
+      }
+
+      // try the next colour of the deepest decision with any left
+      descend = false;
+      while (top >= 0 && !descend) {
+        trail.rollback(board, marks[top]);
+        if (foundBefore[top] == found) {
+          countBacktrack();
+        }
+        Iterator<V> remaining = (Iterator<V>) values[top];
+        if (!stopped && remaining.hasNext()) {
+          T bestSquare = (T) nodes[top];
+          V value = remaining.next();
+          countGuess();
+          foundBefore[top] = found;
+          trail.setColour(board, bestSquare, value);
+          fireTriedCell(board, top, bestSquare, value);
+          depth = top + 1;
+          descend = true;
+        } else {
+          nodes[top] = null;
+          values[top] = null;
+          incrementSteps();
+          top--;
+        }
+      }
+    }
+    return found;
+  }
+}
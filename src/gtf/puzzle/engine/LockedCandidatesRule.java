@@ -0,0 +1,79 @@
+package gtf.puzzle.engine;
+
+import gtf.math.graph.ColourableGraph;
+
+import java.util.List;
+
+
+/**
+ * Locked candidates (pointing and claiming). If every place left
+ * for a colour in one unit also lies in a second unit, the colour
+ * must go in the overlap, and is excluded from the rest of the
+ * second unit.
+ * 
+ * For a Sudoku board, this covers both a zone pointing along a
+ * row or column, and a row or column claiming a colour within a
+ * zone.
+ * 
+ * Has no effect unless the topology is a UnitTopology.
+ * 
+ * @author gtf
+ *
+ * @param <T> The type used for the node addresses
+ * @param <V> The type used for the node values
+ */
+public class LockedCandidatesRule<T, V> implements PropagationRule<T, V> {
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.PropagationRule#apply(gtf.puzzle.engine.PropagationContext)
+   */
+  public boolean apply(PropagationContext<T, V> context) {
+    ColourableGraph<T, V> graph = context.getGraph();
+    UnitPlaces<T, V> places = context.getPlaces();
+    for (List<T> unit : context.getUnits()) {
+      places.fill(graph, unit);
+      for (int i = 0; i < places.size(); i++) {
+        if (places.isPlaced(i) || places.countPlaces(i) < 2) {
+          continue;
+        }
+        for (List<T> other : context.getUnitsContaining(places.getPlace(i, 0))) {
+          if (other != unit && holdsAllPlaces(context, other, places, i)) {
+            for (T node : other) {
+              if (graph.getColour(node) == null && !isPlace(places, i, node)) {
+                context.exclude(node, places.getColour(i));
+              }
+            }
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return true if every place of the i-th colour is in the unit
+   */
+  private boolean holdsAllPlaces(PropagationContext<T, V> context, List<T> unit,
+      UnitPlaces<T, V> places, int i) {
+    for (int k = 1; k < places.countPlaces(i); k++) {
+      boolean found = false;
+      for (List<T> containing : context.getUnitsContaining(places.getPlace(i, k))) {
+        found |= (containing == unit);
+      }
+      if (!found) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isPlace(UnitPlaces<T, V> places, int i, T node) {
+    for (int k = 0; k < places.countPlaces(i); k++) {
+      if (places.getPlace(i, k).equals(node)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,39 @@
+package gtf.puzzle.engine;
+
+import gtf.math.graph.ColourableGraph;
+import gtf.math.graph.NodeIndex;
+
+
+/**
+ * Colours every node that has only one possible colour left,
+ * and detects nodes that have none.
+ * 
+ * @author gtf
+ *
+ * @param <T> The type used for the node addresses
+ * @param <V> The type used for the node values
+ */
+public class NakedSingleRule<T, V> implements PropagationRule<T, V> {
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.PropagationRule#apply(gtf.puzzle.engine.PropagationContext)
+   */
+  public boolean apply(PropagationContext<T, V> context) {
+    ColourableGraph<T, V> graph = context.getGraph();
+    NodeIndex<T> nodeIndex = context.getNodeIndex();
+    for (int i = 0; i < nodeIndex.size(); i++) {
+      T node = nodeIndex.getNode(i);
+      if (graph.getColour(node) == null) {
+        int possibilities = graph.countPossibleColoursForNode(node);
+        if (possibilities == 0) {
+          return false;
+        }
+        if (possibilities == 1) {
+          context.assign(node, graph.getPossibleColoursForNode(node).iterator().next());
+        }
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,119 @@
+package gtf.puzzle.engine;
+
+import gtf.math.graph.ColourableGraph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ * Naked pairs, triples, etc. If n uncoloured nodes of a unit
+ * have only n possible colours between them, those colours must
+ * go in those nodes, and are excluded from the rest of the unit.
+ * 
+ * Has no effect unless the topology is a UnitTopology.
+ * 
+ * @author gtf
+ *
+ * @param <T> The type used for the node addresses
+ * @param <V> The type used for the node values
+ */
+public class NakedSubsetRule<T, V> implements PropagationRule<T, V> {
+
+  private final int size;
+
+  /**
+   * @param size the number of nodes in the subset (2 for pairs,
+   * 3 for triples)
+   */
+  public NakedSubsetRule(int size) {
+    if (size < 2) {
+      throw new IllegalArgumentException("bad subset size " + size);
+    }
+    this.size = size;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.PropagationRule#apply(gtf.puzzle.engine.PropagationContext)
+   */
+  public boolean apply(PropagationContext<T, V> context) {
+    ColourableGraph<T, V> graph = context.getGraph();
+    List<T> open = new ArrayList<T>();
+    List<Collection<V>> candidates = new ArrayList<Collection<V>>();
+    List<T> chosen = new ArrayList<T>(size);
+    List<V> union = new ArrayList<V>(size);
+    for (List<T> unit : context.getUnits()) {
+      open.clear();
+      candidates.clear();
+      int uncoloured = 0;
+      for (T node : unit) {
+        if (graph.getColour(node) == null) {
+          uncoloured++;
+          int possibilities = graph.countPossibleColoursForNode(node);
+          if (possibilities >= 2 && possibilities <= size) {
+            open.add(node);
+            candidates.add(graph.getPossibleColoursForNode(node));
+          }
+        }
+      }
+      if (uncoloured > size && !search(context, unit, open, candidates, 0, chosen, union)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Looks for subsets extending the chosen nodes with nodes from
+   * open[start..].
+   * 
+   * @param union the possible colours of the chosen nodes
+   * @return false if a contradiction was found
+   */
+  private boolean search(PropagationContext<T, V> context, List<T> unit, List<T> open,
+      List<Collection<V>> candidates, int start, List<T> chosen, List<V> union) {
+    if (chosen.size() == size) {
+      if (union.size() < size) {
+        return false;
+      }
+      for (T node : unit) {
+        if (!chosen.contains(node) && context.getGraph().getColour(node) == null) {
+          for (V colour : union) {
+            context.exclude(node, colour);
+          }
+        }
+      }
+      return true;
+    }
+    for (int i = start; i < open.size(); i++) {
+      int before = union.size();
+      for (V colour : candidates.get(i)) {
+        if (union.size() > size) {
+          break;
+        }
+        if (!union.contains(colour)) {
+          union.add(colour);
+        }
+      }
+      boolean ok = true;
+      if (union.size() <= size) {
+        chosen.add(open.get(i));
+        ok = search(context, unit, open, candidates, i + 1, chosen, union);
+        chosen.remove(chosen.size() - 1);
+      }
+      while (union.size() > before) {
+        union.remove(union.size() - 1);
+      }
+      if (!ok) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,134 @@
+package gtf.puzzle.engine;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A bounded store of learned nogoods: combinations of colour
+ * assignments that are known to have no solution.
+ *
+ * Each nogood is watched by all of its nodes, so that the
+ * assignment of a node only has to be checked against the
+ * nogoods that mention it. When the store is full, the nogood
+ * that was least recently added or used is evicted.
+ *
+ * @author gtf
+ *
+ * @param <V> The type used for the node values
+ */
+class NogoodStore<V> {
+
+  /**
+   * A combination of assignments, by node index.
+   */
+  static class Nogood<V> {
+
+    private final int[] nodes;
+
+    private final List<V> values;
+
+    private Nogood(int[] nodes, List<V> values) {
+      this.nodes = nodes;
+      this.values = values;
+    }
+
+    int size() {
+      return nodes.length;
+    }
+
+    int getNode(int i) {
+      return nodes[i];
+    }
+
+    V getValue(int i) {
+      return values.get(i);
+    }
+  }
+
+  private final int capacity;
+
+  private final Map<Nogood<V>, Nogood<V>> nogoods;
+
+  /**
+   * The nogoods mentioning each node, by node index.
+   */
+  private final List<List<Nogood<V>>> watches;
+
+  /**
+   * @param capacity the most nogoods to keep
+   * @param nodeCount the number of nodes of the graph
+   */
+  NogoodStore(int capacity, int nodeCount) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("bad capacity " + capacity);
+    }
+    this.capacity = capacity;
+    nogoods = new LinkedHashMap<Nogood<V>, Nogood<V>>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      protected boolean removeEldestEntry(Map.Entry<Nogood<V>, Nogood<V>> eldest) {
+        if (size() <= NogoodStore.this.capacity) {
+          return false;
+        }
+        unwatch(eldest.getKey());
+        return true;
+      }
+    };
+    watches = new ArrayList<List<Nogood<V>>>(nodeCount);
+    for (int i = 0; i < nodeCount; i++) {
+      watches.add(new ArrayList<Nogood<V>>(0));
+    }
+  }
+
+  /**
+   * Learns a nogood.
+   *
+   * @param nodes the indices of the nodes assigned
+   * @param values the colour assigned to each node
+   */
+  void add(int[] nodes, List<V> values) {
+    Nogood<V> nogood = new Nogood<V>(nodes, values);
+    for (int node : nodes) {
+      watches.get(node).add(nogood);
+    }
+    nogoods.put(nogood, nogood);
+  }
+
+  private void unwatch(Nogood<V> nogood) {
+    for (int node : nogood.nodes) {
+      Iterator<Nogood<V>> i = watches.get(node).iterator();
+      while (i.hasNext()) {
+        if (i.next() == nogood) {
+          i.remove();
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the nogoods mentioning a node. The list must not be
+   * modified, nor the store while the list is in use.
+   */
+  List<Nogood<V>> getWatches(int node) {
+    return watches.get(node);
+  }
+
+  /**
+   * Marks a nogood as used, so that it is evicted last.
+   */
+  void touch(Nogood<V> nogood) {
+    nogoods.get(nogood);
+  }
+
+  /**
+   * @return the number of nogoods held
+   */
+  int size() {
+    return nogoods.size();
+  }
+}
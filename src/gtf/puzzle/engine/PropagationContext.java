@@ -0,0 +1,144 @@
+package gtf.puzzle.engine;
+
+import gtf.math.graph.ColourableGraph;
+import gtf.math.graph.NodeIndex;
+
+import java.util.List;
+
+
+/**
+ * The graph being propagated, as seen by a PropagationRule.
+ * 
+ * All changes made by the rules go through the context, which
+ * records them on the solver's trail when there is one, and
+ * counts them so that the propagator can tell when it has
+ * reached a fixpoint.
+ * 
+ * @author gtf
+ *
+ * @param <T> The type used for the node addresses
+ * @param <V> The type used for the node values
+ */
+public final class PropagationContext<T, V> {
+
+  private final ColourableGraph<T, V> graph;
+
+  private final Trail<T, V> trail;
+
+  private final NodeIndex<T> nodeIndex;
+
+  private final UnitIndex<T> unitIndex;
+
+  /**
+   * The places gathered by the unit rules, or null until a rule
+   * asks for them.
+   */
+  private UnitPlaces<T, V> places;
+
+  private int changes;
+
+  /**
+   * @param graph the graph
+   * @param trail the trail to record changes on, or null if the
+   * changes need not be undone
+   */
+  PropagationContext(ColourableGraph<T, V> graph, Trail<T, V> trail) {
+    this(graph, trail, NodeIndex.of(graph.getTopology()), UnitIndex.of(graph.getTopology()));
+  }
+
+  /**
+   * @param graph the graph
+   * @param trail the trail to record changes on, or null if the
+   * changes need not be undone
+   * @param nodeIndex the index of the graph's topology
+   * @param unitIndex the units of the graph's topology
+   */
+  PropagationContext(ColourableGraph<T, V> graph, Trail<T, V> trail, NodeIndex<T> nodeIndex,
+      UnitIndex<T> unitIndex) {
+    this.graph = graph;
+    this.trail = trail;
+    this.nodeIndex = nodeIndex;
+    this.unitIndex = unitIndex;
+    changes = 0;
+  }
+
+  public ColourableGraph<T, V> getGraph() {
+    return graph;
+  }
+
+  /**
+   * @return the index of all nodes of the graph
+   */
+  public NodeIndex<T> getNodeIndex() {
+    return nodeIndex;
+  }
+
+  /**
+   * @return the units of the graph's topology; empty if it is not
+   * a UnitTopology.
+   */
+  public List<List<T>> getUnits() {
+    return unitIndex.getUnits();
+  }
+
+  /**
+   * @param node the node address
+   * @return the units that contain the node
+   */
+  public List<List<T>> getUnitsContaining(T node) {
+    return unitIndex.getUnitsContaining(node);
+  }
+
+  /**
+   * @return the places of the colours in a unit, to be refilled by
+   * each unit rule for each unit it looks at
+   */
+  UnitPlaces<T, V> getPlaces() {
+    if (places == null) {
+      places = new UnitPlaces<T, V>();
+    }
+    return places;
+  }
+
+  /**
+   * Colours a node whose colour has been deduced.
+   * 
+   * @param node the node address
+   * @param colour one of the possible colours of the node
+   */
+  public void assign(T node, V colour) {
+    if (trail == null) {
+      graph.setColour(node, colour);
+    } else {
+      trail.setColour(graph, node, colour);
+    }
+    changes++;
+  }
+
+  /**
+   * Excludes a colour that has been deduced to be impossible.
+   * 
+   * @param node the node address
+   * @param colour the colour
+   * @return true if the colour was not already excluded
+   */
+  public boolean exclude(T node, V colour) {
+    boolean changed;
+    if (trail == null) {
+      changed = graph.excludeColour(node, colour);
+    } else {
+      changed = trail.excludeColour(graph, node, colour);
+    }
+    if (changed) {
+      changes++;
+    }
+    return changed;
+  }
+
+  /**
+   * @return the number of changes made so far
+   */
+  public int getChanges() {
+    return changes;
+  }
+}
@@ -0,0 +1,29 @@
+package gtf.puzzle.engine;
+
+
+/**
+ * A deduction rule run by a Propagator before each branching
+ * decision of the solver.
+ * 
+ * A rule looks for colours that are forced or impossible, and
+ * records them through the context. It must not change the graph
+ * in any other way, so that its changes can be undone.
+ * 
+ * @author gtf
+ *
+ * @param <T> The type used for the node addresses
+ * @param <V> The type used for the node values
+ */
+public interface PropagationRule<T, V> {
+
+  /**
+   * Makes every deduction the rule can find in one pass over
+   * the graph.
+   * 
+   * @param context gives access to the graph and records the
+   * deductions
+   * @return false if the rule found that the graph cannot be
+   * completed; true otherwise.
+   */
+  boolean apply(PropagationContext<T, V> context);
+}
@@ -0,0 +1,125 @@
+package gtf.puzzle.engine;
+
+import gtf.math.graph.ColourableGraph;
+import gtf.math.graph.NodeIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * A pipeline of deduction rules, run by the solver on the board
+ * before each branching decision.
+ * 
+ * The rules are applied in order, cheapest first. Whenever a rule
+ * changes the board, the pipeline starts again from the first
+ * rule, so that the cheap rules can follow up on what the more
+ * expensive rule found. Propagation ends when no rule makes any
+ * further change (a fixpoint), or as soon as a rule finds a
+ * contradiction.
+ * 
+ * @author gtf
+ *
+ * @param <T> The type used for the node addresses
+ * @param <V> The type used for the node values
+ */
+public class Propagator<T, V> {
+
+  private final List<PropagationRule<T, V>> rules;
+
+  /**
+   * @param rules the rules, in the order to apply them
+   */
+  public Propagator(List<? extends PropagationRule<T, V>> rules) {
+    this.rules = Collections.unmodifiableList(new ArrayList<PropagationRule<T, V>>(rules));
+  }
+
+  /**
+   * @return a propagator for naked and hidden singles
+   */
+  public static <T, V> Propagator<T, V> singles() {
+    return new Propagator<T, V>(singleRules(new ArrayList<PropagationRule<T, V>>()));
+  }
+
+  /**
+   * @return a propagator for singles, and naked and hidden pairs
+   * and triples
+   */
+  public static <T, V> Propagator<T, V> subsets() {
+    return new Propagator<T, V>(subsetRules(new ArrayList<PropagationRule<T, V>>()));
+  }
+
+  /**
+   * @return a propagator for singles, subsets, locked candidates
+   * (pointing and claiming) and X-wings
+   */
+  public static <T, V> Propagator<T, V> advanced() {
+    List<PropagationRule<T, V>> rules = subsetRules(new ArrayList<PropagationRule<T, V>>());
+    rules.add(new LockedCandidatesRule<T, V>());
+    rules.add(new XWingRule<T, V>());
+    return new Propagator<T, V>(rules);
+  }
+
+  private static <T, V> List<PropagationRule<T, V>> singleRules(List<PropagationRule<T, V>> rules) {
+    rules.add(new NakedSingleRule<T, V>());
+    rules.add(new HiddenSingleRule<T, V>());
+    return rules;
+  }
+
+  private static <T, V> List<PropagationRule<T, V>> subsetRules(List<PropagationRule<T, V>> rules) {
+    singleRules(rules);
+    rules.add(new NakedSubsetRule<T, V>(2));
+    rules.add(new HiddenSubsetRule<T, V>(2));
+    rules.add(new NakedSubsetRule<T, V>(3));
+    rules.add(new HiddenSubsetRule<T, V>(3));
+    return rules;
+  }
+
+  public List<PropagationRule<T, V>> getRules() {
+    return rules;
+  }
+
+  /**
+   * Propagates a graph to a fixpoint, changing it in place.
+   * 
+   * @param graph the graph
+   * @return false if a contradiction was found; true otherwise.
+   */
+  public boolean propagate(ColourableGraph<T, V> graph) {
+    return propagate(new PropagationContext<T, V>(graph, null));
+  }
+
+  /**
+   * Propagates a graph to a fixpoint, recording the changes on
+   * a trail. The solvers look the indices up once per search, as
+   * they are the same for every node of it.
+   * 
+   * @param graph the graph
+   * @param trail the trail, or null if the changes need not be undone
+   * @param nodeIndex the index of the graph's topology
+   * @param unitIndex the units of the graph's topology
+   * @param metrics the metrics to count the changes made in
+   * @return false if a contradiction was found; true otherwise.
+   */
+  boolean propagate(ColourableGraph<T, V> graph, Trail<T, V> trail, NodeIndex<T> nodeIndex,
+      UnitIndex<T> unitIndex, SolverMetrics metrics) {
+    PropagationContext<T, V> context =
+        new PropagationContext<T, V>(graph, trail, nodeIndex, unitIndex);
+    boolean result = propagate(context);
+    metrics.countPropagations(context.getChanges());
+    return result;
+  }
+
+  private boolean propagate(PropagationContext<T, V> context) {
+    int i = 0;
+    while (i < rules.size()) {
+      int changes = context.getChanges();
+      if (!rules.get(i).apply(context)) {
+        return false;
+      }
+      i = (context.getChanges() == changes) ? i + 1 : 0;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,42 @@
+package gtf.puzzle.engine;
+
+import gtf.math.graph.ColourableGraph;
+
+
+/**
+ * Receives the solutions of a puzzle as soon as the solver
+ * finds them.
+ * 
+ * The handler is called on the search thread and the search
+ * waits until it returns, so a slow handler holds the solver
+ * back rather than letting solutions pile up. In parallel mode
+ * it is called from the worker threads, but never by more than
+ * one thread at a time.
+ * 
+ * @author gtf
+ *
+ * @param <T> The type used for the node addresses
+ * @param <V> The type used for the node values
+ */
+public interface SolutionHandler<T, V> {
+
+  /**
+   * Handles a solution. The solution is a board of its own and
+   * may be kept.
+   * 
+   * @param solution the solution
+   * @return true to continue the search; false to stop it.
+   */
+  boolean handleSolution(ColourableGraph<T, V> solution);
+
+  /**
+   * Tells whether the search should stop without waiting for another
+   * solution. The solvers ask at every node of the search tree, so
+   * this should be cheap; a flag set from another thread will do.
+   * 
+   * @return true to stop the search; by default false.
+   */
+  default boolean isCancelled() {
+    return false;
+  }
+}
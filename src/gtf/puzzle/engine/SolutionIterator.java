@@ -0,0 +1,147 @@
+package gtf.puzzle.engine;
+
+import gtf.math.graph.ColourableGraph;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Iterates over the solutions of a puzzle while the solver is
+ * still looking for more.
+ * 
+ * The solver runs on a background thread and hands solutions over
+ * through a bounded buffer. When the buffer is full the solver
+ * waits for the consumer to catch up. Calling cancel() stops the
+ * solver at its next node, even while it is still looking for
+ * a solution; this should be done if the iteration is abandoned
+ * before the end.
+ * 
+ * Obtained from the iterator() method of a solver.
+ * 
+ * @author gtf
+ *
+ * @param <T> The type used for the node addresses
+ * @param <V> The type used for the node values
+ */
+public class SolutionIterator<T, V> implements Iterator<ColourableGraph<T, V>> {
+
+  /**
+   * Marks the end of the solutions in the buffer.
+   */
+  private static final Object END = new Object();
+
+  private final BlockingQueue<Object> buffer;
+
+  private volatile boolean cancelled = false;
+
+  /**
+   * The next element taken from the buffer, or null if it
+   * has not been taken yet.
+   */
+  private Object next = null;
+
+  SolutionIterator(final AbstractSolver<T, V> solver, final ColourableGraph<T, V> puzzle,
+      final int maxSolutions, int bufferSize) {
+    buffer = new ArrayBlockingQueue<Object>(bufferSize);
+    Thread producer = new Thread("SolutionIterator") {
+      public void run() {
+        Object last = END;
+        try {
+          solver.solve(puzzle, maxSolutions, new SolutionHandler<T, V>() {
+            public boolean handleSolution(ColourableGraph<T, V> solution) {
+              return offer(solution);
+            }
+
+            public boolean isCancelled() {
+              return cancelled;
+            }
+          });
+        } catch (RuntimeException e) {
+          last = e;
+        } catch (Error e) {
+          last = e;
+        }
+        offer(last);
+      }
+    };
+    producer.setDaemon(true);
+    producer.start();
+  }
+
+  /**
+   * Puts an element in the buffer, waiting for space unless the
+   * iteration is cancelled.
+   * 
+   * @return false if the iteration was cancelled
+   */
+  private boolean offer(Object element) {
+    try {
+      while (!cancelled) {
+        if (buffer.offer(element, 100, TimeUnit.MILLISECONDS)) {
+          return true;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return false;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.util.Iterator#hasNext()
+   */
+  public boolean hasNext() {
+    if (next == null) {
+      if (cancelled) {
+        return false;
+      }
+      try {
+        next = buffer.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("interrupted", e);
+      }
+    }
+    if (next instanceof RuntimeException) {
+      throw (RuntimeException) next;
+    }
+    if (next instanceof Error) {
+      throw (Error) next;
+    }
+    return next != END;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.util.Iterator#next()
+   */
+  @SuppressWarnings("unchecked")
+  public ColourableGraph<T, V> next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    ColourableGraph<T, V> result = (ColourableGraph<T, V>) next;
+    next = null;
+    return result;
+  }
+
+  /**
+   * Not supported.
+   */
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Stops the solver and ends the iteration.
+   */
+  public void cancel() {
+    cancelled = true;
+    buffer.clear();
+  }
+}
@@ -1,11 +1,17 @@
 package gtf.puzzle.engine;
 
 import gtf.math.graph.ColourableGraph;
+import gtf.math.graph.NodeIndex;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.SortedMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -45,73 +51,370 @@ import java.util.SortedMap;
  * set on this branch is empty (no solution).</li>
  * </ol>
  * 
+ * In the in-place mode, the board is not copied for each
+ * allowed value. The guess is made on a single working copy
+ * of the board and recorded on a trail, and is undone by
+ * rolling back the trail once the recursive call returns.
+ * A board is only copied when it is found to be a solution.
+ * 
+ * The search can be limited to a number of solutions, in which
+ * case it stops as soon as that many have been found. This makes
+ * checking a puzzle for uniqueness much cheaper than finding
+ * every solution. Solutions may also be streamed to a handler
+ * or an iterator as they are found, instead of being collected.
+ * 
+ * A Propagator may be set to make deductions on the board at
+ * the start of each step, before the check for completeness.
+ * Its changes are undone together with the guess that led to
+ * them. The fewer guesses are needed, the smaller the tree.
+ * 
+ * In parallel mode, the branches of the search tree above the
+ * split depth are searched as separate fork/join tasks, each on
+ * its own copy of the board. Idle workers steal pending branches
+ * from busy ones. Below the split depth each task searches
+ * sequentially.
+ * 
  * @param T the type used for the node addresses
  * @param V the type used for the node values
  */
-public class Solver<T, V> {
+public class Solver<T, V> extends AbstractSolver<T, V> {
+
+  private boolean inPlace = false;
 
-  private int steps = 0;
+  private int parallelism = 1;
 
-  private final SolverEventHub<T, V> eventHub;
+  private int splitDepth = 4;
 
-  public Solver() {
-    eventHub = new SolverEventHub<T, V>(this);
+  private Propagator<T, V> propagator = null;
+
+  /**
+   * Selects the in-place backtracking mode. Instead of copying the
+   * board for every value tried, the solver works on a single copy
+   * and undoes its guesses from a trail.
+   * 
+   * In this mode the puzzle passed to listeners is only valid for
+   * the duration of the callback, except for solutions.
+   * 
+   * @param inPlace true for in-place backtracking; false (the default)
+   * to copy the board for every value tried.
+   */
+  public void setInPlace(boolean inPlace) {
+    this.inPlace = inPlace;
   }
 
-  public void addListener(SolverListener<T, V> listener) {
-    eventHub.addListener(listener);
+  public boolean isInPlace() {
+    return inPlace;
   }
-  
-  public void removeListener(SolverListener<T, V> listener) {
-    eventHub.removeListener(listener);
+
+  /**
+   * Sets the number of worker threads. With more than one, the
+   * search runs in parallel on a fork/join pool and listeners may
+   * be called from any of the workers (one call at a time).
+   * 
+   * @param parallelism the number of threads; 1 (the default) to
+   * search on the calling thread only.
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("bad parallelism " + parallelism);
+    }
+    this.parallelism = parallelism;
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Sets the granularity of the parallel search. Every value tried
+   * at a recursion depth below the split depth becomes a separate
+   * task. A larger split depth gives more, smaller tasks.
+   * 
+   * @param splitDepth the split depth (default 4)
+   */
+  public void setSplitDepth(int splitDepth) {
+    if (splitDepth < 0) {
+      throw new IllegalArgumentException("bad split depth " + splitDepth);
+    }
+    this.splitDepth = splitDepth;
+  }
+
+  public int getSplitDepth() {
+    return splitDepth;
+  }
+
+  /**
+   * Sets the deductions to make before each branching decision.
+   * 
+   * @param propagator the propagator, or null (the default) to make
+   * no deductions.
+   */
+  public void setPropagator(Propagator<T, V> propagator) {
+    this.propagator = propagator;
+  }
+
+  public Propagator<T, V> getPropagator() {
+    return propagator;
   }
   
   /**
-   * Solve a colourable graph.
+   * Solve a colourable graph, passing each solution to a handler
+   * as soon as it is found. Nothing is accumulated by the solver.
+   * The puzzle itself is not modified.
    * 
    * For better performance, the graph instance should not check its
    * constraint when its setColour method is called. The solver will
    * always check the constraint first before setting the colour.
    * 
    * @param puzzle the puzzle to solve
-   * @return set of solutions
+   * @param maxSolutions the most solutions to find
+   * @param handler the handler to receive the solutions. The search
+   * stops if it returns false.
+   * @return the number of solutions passed to the handler
    */
-  public Set<ColourableGraph<T, V>> solve(final ColourableGraph<T, V> puzzle) {
-    return solve(puzzle, 0);
+  public int solve(final ColourableGraph<T, V> puzzle, final int maxSolutions,
+      final SolutionHandler<T, V> handler) {
+    Search search = new Search(puzzle, maxSolutions, handler);
+    search.run(puzzle);
+    return Math.min(search.found.get(), maxSolutions);
   }
 
-  private Set<ColourableGraph<T, V>>
-      solve(final ColourableGraph<T, V> puzzle, final int recursionDepth) {
-    eventHub.fireInvoked(puzzle, recursionDepth, steps);
-    Set<ColourableGraph<T, V>> result = new HashSet<ColourableGraph<T, V>>();
-    if (puzzle.isComplete()) {
-      eventHub.fireFoundSolution(puzzle, recursionDepth, steps);
-      result.add(puzzle);
-      return result;
+  /**
+   * Counts the solutions of a colourable graph, stopping as soon as
+   * the limit is reached. The solutions are not kept.
+   * 
+   * @param puzzle the puzzle to solve
+   * @param limit the most solutions to count
+   * @return the number of solutions, or limit if there are at least
+   * that many.
+   */
+  public int countSolutions(final ColourableGraph<T, V> puzzle, final int limit) {
+    Search search = new Search(puzzle, limit, null);
+    search.run(puzzle);
+    return Math.min(search.found.get(), limit);
+  }
+
+  /**
+   * The state of a single call to solve(), shared by all of
+   * its tasks.
+   */
+  private class Search {
+
+    private final NodeIndex<T> nodeIndex;
+
+    private final UnitIndex<T> unitIndex;
+
+    private final int limit;
+
+    /**
+     * The handler for the solutions found, or null to only
+     * count them.
+     */
+    private final SolutionHandler<T, V> handler;
+
+    private final AtomicInteger found;
+
+    /**
+     * Set once the limit has been reached or the handler has
+     * cancelled the search, to unwind it.
+     */
+    private volatile boolean stopped;
+
+    private Search(ColourableGraph<T, V> puzzle, int limit, SolutionHandler<T, V> handler) {
+      if (limit < 1) {
+        throw new IllegalArgumentException("bad solution limit " + limit);
+      }
+      this.nodeIndex = NodeIndex.of(puzzle.getTopology());
+      this.unitIndex = UnitIndex.of(puzzle.getTopology());
+      this.limit = limit;
+      this.handler = handler;
+      found = new AtomicInteger();
+      stopped = false;
+    }
+
+    /**
+     * @return true once the search is to unwind, because it is done
+     * or because the handler has cancelled it
+     */
+    private boolean isStopped() {
+      if (!stopped && handler != null && handler.isCancelled()) {
+        stopped = true;
+      }
+      return stopped;
+    }
+
+    private void run(ColourableGraph<T, V> puzzle) {
+      long wall = System.nanoTime();
+      long cpu = SolverMetrics.currentThreadCpuTime();
+      if (parallelism > 1) {
+        // the workers are kept track of to add up their CPU time
+        final List<Thread> workers = new CopyOnWriteArrayList<Thread>();
+        ForkJoinPool pool = new ForkJoinPool(parallelism,
+            new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+              public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                ForkJoinWorkerThread worker =
+                    ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                workers.add(worker);
+                return worker;
+              }
+            }, null, false);
+        try {
+          pool.invoke(new SearchTask(this, puzzle.copyOf(), 0));
+        } finally {
+          for (Thread worker : workers) {
+            cpu -= SolverMetrics.threadCpuTime(worker);
+          }
+          pool.shutdown();
+        }
+      } else if (inPlace) {
+        solve(puzzle.copyOf(), newTrail(), 0);
+      } else {
+        // the propagator would change the puzzle itself
+        solve(propagator == null ? puzzle : puzzle.copyOf(), null, 0);
+      }
+      countSearch(System.nanoTime() - wall, SolverMetrics.currentThreadCpuTime() - cpu);
+    }
+
+    /**
+     * @return a new trail if in the in-place mode; otherwise null
+     */
+    private Trail<T, V> newTrail() {
+      return inPlace ? new Trail<T, V>(nodeIndex.size()) : null;
     }
-    Backtrackable<T, V> backtrackable = new BacktrackableImpl<T, V>(puzzle);
-    SortedMap<T, Collection<V>> squares = backtrackable.getUnvaluedNodesSorted();
-    if (squares.isEmpty()) {
-      eventHub.fireNoSolution(puzzle, recursionDepth, steps);
-      return result; // empty set
+
+    /**
+     * Records a solution, unless the limit has already been reached.
+     * 
+     * @param puzzle the complete board
+     * @param trail the trail, or null if the board is a private copy
+     * @param recursionDepth the recursion depth
+     * @return false if the limit had already been reached
+     */
+    private boolean foundSolution(ColourableGraph<T, V> puzzle, Trail<T, V> trail,
+        int recursionDepth) {
+      int count = found.incrementAndGet();
+      if (count > limit) {
+        return false;
+      }
+      if (count == limit) {
+        stopped = true;
+      }
+      countSolution();
+      ColourableGraph<T, V> solution =
+          (trail == null || handler == null) ? puzzle : puzzle.copyOf();
+      fireFoundSolution(solution, recursionDepth);
+      if (handler != null) {
+        synchronized (this) {
+          if (!handler.handleSolution(solution)) {
+            stopped = true;
+          }
+        }
+      }
+      return true;
     }
-    T bestSquare = squares.firstKey();
-    Collection<V> allowedValues = squares.get(bestSquare);
-    for (V value : allowedValues) {
-      ColourableGraph<T, V> next = puzzle.copyOf();
-      next.setColour(bestSquare, value);
-      eventHub.fireTriedCell(next, recursionDepth, steps, bestSquare, value);
-      Set<ColourableGraph<T, V>> nextResult = solve(next, recursionDepth + 1);
-      result.addAll(nextResult);
+
+    /**
+     * @param puzzle the board to solve
+     * @param trail the trail to record guesses on, or null to
+     * copy the board for every guess
+     * @param recursionDepth the recursion depth
+     * @return the number of solutions recorded in this branch
+     */
+    private int solve(final ColourableGraph<T, V> puzzle, final Trail<T, V> trail,
+        final int recursionDepth) {
+      if (isStopped()) {
+        return 0;
+      }
+      countNode(recursionDepth);
+      fireInvoked(puzzle, recursionDepth);
+      if (propagator != null && !propagator.propagate(puzzle, trail, nodeIndex, unitIndex,
+          getMetrics())) {
+        countDeadEnd(recursionDepth);
+        fireNoSolution(puzzle, recursionDepth);
+        return 0; // no solution
+      }
+      if (puzzle.isComplete()) {
+        return foundSolution(puzzle, trail, recursionDepth) ? 1 : 0;
+      }
+      Backtrackable<T, V> backtrackable = new BacktrackableImpl<T, V>(puzzle, nodeIndex);
+      T bestSquare = backtrackable.getMostConstrainedNode();
+      Collection<V> allowedValues = puzzle.getPossibleColoursForNode(bestSquare);
+      if (allowedValues.isEmpty()) {
+        countDeadEnd(recursionDepth);
+        fireNoSolution(puzzle, recursionDepth);
+        return 0; // no solution
+      }
+      countBranch(recursionDepth, allowedValues.size());
+      boolean fork = parallelism > 1 && recursionDepth < splitDepth;
+      Collection<SearchTask> tasks = fork ? new ArrayList<SearchTask>(allowedValues.size()) : null;
+      int solutions = 0;
+      for (V value : allowedValues) {
+        if (stopped) {
+          break;
+        }
+        countGuess();
+        int branchSolutions = 0;
+        if (fork || trail == null) {
+          ColourableGraph<T, V> next = puzzle.copyOf();
+          next.setColour(bestSquare, value);
+          fireTriedCell(next, recursionDepth, bestSquare, value);
+          if (fork) {
+            tasks.add(new SearchTask(this, next, recursionDepth + 1));
+            continue; // counted once the task is done
+          }
+          branchSolutions = solve(next, null, recursionDepth + 1);
+        } else {
+          int mark = trail.mark();
+          trail.setColour(puzzle, bestSquare, value);
+          fireTriedCell(puzzle, recursionDepth, bestSquare, value);
+          branchSolutions = solve(puzzle, trail, recursionDepth + 1);
+          trail.rollback(puzzle, mark);
+        }
+        if (branchSolutions == 0) {
+          countBacktrack();
+        }
+        solutions += branchSolutions;
+      }
+      if (fork) {
+        ForkJoinTask.invokeAll(tasks);
+        for (SearchTask task : tasks) {
+          if (task.solutions == 0) {
+            countBacktrack();
+          }
+          solutions += task.solutions;
+        }
+      }
+      incrementSteps();
+      return solutions;
     }
-    steps++;
-    return result;
   }
 
   /**
-   * @return the total number of steps taken to solve the puzzle.
+   * Searches one branch of the tree on its own copy of the board.
    */
-  public int getSteps() {
-    return steps;
+  private class SearchTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Search search;
+
+    private final ColourableGraph<T, V> board;
+
+    private final int recursionDepth;
+
+    /**
+     * The number of solutions recorded in the branch, once done.
+     */
+    private int solutions = 0;
+
+    private SearchTask(Search search, ColourableGraph<T, V> board, int recursionDepth) {
+      this.search = search;
+      this.board = board;
+      this.recursionDepth = recursionDepth;
+    }
+
+    protected void compute() {
+      solutions = search.solve(board, search.newTrail(), recursionDepth);
+    }
   }
 }
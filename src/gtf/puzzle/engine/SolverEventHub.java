@@ -1,60 +1,111 @@
-package gtf.puzzle.engine;
-
-import gtf.math.graph.ColourableGraph;
-
-import java.util.ArrayList;
-import java.util.Collection;
-
-
-/**
- * Delegate for managing SolverListeners.
- * 
- * @author gtf
- *
- * @param T the type used for the node addresses
- * @param V the type used for the node values
- */
-class SolverEventHub<T, V> {
-
-  private final Solver<T, V> eventSource;
-  
-  private final Collection<SolverListener<T, V>> listeners;
-
-  SolverEventHub(Solver<T, V> solver) {
-    eventSource = solver;
-    listeners = new ArrayList<SolverListener<T, V>>();
-  }
-  
-  void addListener(SolverListener<T, V> listener) {
-    listeners.add(listener);
-  }
-  
-  void removeListener(SolverListener<T, V> listener) {
-    listeners.remove(listener);
-  }
-  
-  void fireInvoked(ColourableGraph<T, V> puzzle, int recursionDepth, int steps) {
-    for (SolverListener<T, V> listener : listeners) {
-      listener.solverInvoked(new SolverEvent<T, V>(eventSource, puzzle, recursionDepth, steps));
-    }
-  }
-
-  void fireFoundSolution(ColourableGraph<T, V> puzzle, int recursionDepth, int steps) {
-    for (SolverListener<T, V> listener : listeners) {
-      listener.solverFoundSolution(new SolverEvent<T, V>(eventSource, puzzle, recursionDepth, steps));
-    }
-  }
-  
-  void fireNoSolution(ColourableGraph<T, V> puzzle, int recursionDepth, int steps) {
-    for (SolverListener<T, V> listener : listeners) {
-      listener.solverNoSolution(new SolverEvent<T, V>(eventSource, puzzle, recursionDepth, steps));
-    }
-  }
-
-  void fireTriedCell(ColourableGraph<T, V> puzzle, int recursionDepth, int steps,
-      T node, V value) {
-    for (SolverListener<T, V> listener : listeners) {
-      listener.solverTriedCell(new SolverEvent<T, V>(eventSource, puzzle, recursionDepth, steps, node, value));
-    }
-  }
-}
+package gtf.puzzle.engine;
+
+import gtf.math.graph.ColourableGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Delegate for managing SolverListeners.
+ * 
+ * Listeners may be added and removed while the solver is
+ * running. Events may be fired from several threads, but each
+ * listener is called by one thread at a time.
+ * 
+ * The listeners are held in an array that is replaced whenever
+ * one is added or removed, so firing an event with no listener
+ * costs one volatile read and allocates nothing. A single event
+ * object is shared by all the listeners.
+ * 
+ * @author gtf
+ *
+ * @param T the type used for the node addresses
+ * @param V the type used for the node values
+ */
+class SolverEventHub<T, V> {
+
+  private static final SolverListener<?, ?>[] NO_LISTENERS = new SolverListener<?, ?>[0];
+
+  private final Object eventSource;
+  
+  private volatile SolverListener<T, V>[] listeners;
+
+  @SuppressWarnings("unchecked")
+  SolverEventHub(Object source) {
+    eventSource = source;
+    listeners = (SolverListener<T, V>[]) NO_LISTENERS;
+  }
+  
+  synchronized void addListener(SolverListener<T, V> listener) {
+    SolverListener<T, V>[] result = Arrays.copyOf(listeners, listeners.length + 1);
+    result[listeners.length] = listener;
+    listeners = result;
+  }
+  
+  synchronized void removeListener(SolverListener<T, V> listener) {
+    List<SolverListener<T, V>> result = new ArrayList<SolverListener<T, V>>(Arrays.asList(listeners));
+    if (result.remove(listener)) {
+      listeners = result.toArray(Arrays.copyOf(listeners, result.size()));
+    }
+  }
+  
+  boolean hasListeners() {
+    return listeners.length > 0;
+  }
+
+  void fireInvoked(ColourableGraph<T, V> puzzle, int recursionDepth, int steps) {
+    SolverListener<T, V>[] current = listeners;
+    if (current.length == 0) {
+      return;
+    }
+    SolverEvent<T, V> event = new SolverEvent<T, V>(eventSource, puzzle, recursionDepth, steps);
+    for (SolverListener<T, V> listener : current) {
+      synchronized (listener) {
+        listener.solverInvoked(event);
+      }
+    }
+  }
+
+  void fireFoundSolution(ColourableGraph<T, V> puzzle, int recursionDepth, int steps) {
+    SolverListener<T, V>[] current = listeners;
+    if (current.length == 0) {
+      return;
+    }
+    SolverEvent<T, V> event = new SolverEvent<T, V>(eventSource, puzzle, recursionDepth, steps);
+    for (SolverListener<T, V> listener : current) {
+      synchronized (listener) {
+        listener.solverFoundSolution(event);
+      }
+    }
+  }
+  
+  void fireNoSolution(ColourableGraph<T, V> puzzle, int recursionDepth, int steps) {
+    SolverListener<T, V>[] current = listeners;
+    if (current.length == 0) {
+      return;
+    }
+    SolverEvent<T, V> event = new SolverEvent<T, V>(eventSource, puzzle, recursionDepth, steps);
+    for (SolverListener<T, V> listener : current) {
+      synchronized (listener) {
+        listener.solverNoSolution(event);
+      }
+    }
+  }
+
+  void fireTriedCell(ColourableGraph<T, V> puzzle, int recursionDepth, int steps,
+      T node, V value) {
+    SolverListener<T, V>[] current = listeners;
+    if (current.length == 0) {
+      return;
+    }
+    SolverEvent<T, V> event =
+        new SolverEvent<T, V>(eventSource, puzzle, recursionDepth, steps, node, value);
+    for (SolverListener<T, V> listener : current) {
+      synchronized (listener) {
+        listener.solverTriedCell(event);
+      }
+    }
+  }
+}
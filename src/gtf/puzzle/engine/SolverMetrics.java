@@ -0,0 +1,324 @@
+package gtf.puzzle.engine;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+
+/**
+ * Counts the work done by a solver, across all its searches.
+ *
+ * The counters are striped (LongAdder), so that the workers of a
+ * parallel search can update them without contending with each
+ * other. Reading a metric while a search is running gives a
+ * value that may be slightly out of date.
+ *
+ * Every solver has its own metrics, which may be registered as an
+ * MBean to be monitored through JMX, or dumped as JSON.
+ *
+ * @author gtf
+ */
+public class SolverMetrics implements SolverMetricsMXBean {
+
+  /**
+   * The most values counted separately by the branching histogram.
+   * Nodes with more values are counted together with this many.
+   */
+  public static final int MAX_BRANCHING = 16;
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  private final LongAdder searches = new LongAdder();
+
+  private final LongAdder nodesVisited = new LongAdder();
+
+  private final LongAdder guesses = new LongAdder();
+
+  private final LongAdder backtracks = new LongAdder();
+
+  private final LongAdder deadEnds = new LongAdder();
+
+  private final LongAdder propagations = new LongAdder();
+
+  private final LongAdder solutions = new LongAdder();
+
+  private final LongAccumulator maxDepth = new LongAccumulator(new LongBinaryOperator() {
+    public long applyAsLong(long left, long right) {
+      return Math.max(left, right);
+    }
+  }, 0);
+
+  private final LongAdder wallTimeNanos = new LongAdder();
+
+  private final LongAdder cpuTimeNanos = new LongAdder();
+
+  /**
+   * The branching histogram, by depth. A row is created the first
+   * time its depth is reached, and the array grows as needed. An
+   * array once published is never changed.
+   */
+  private volatile LongAdder[][] branching = new LongAdder[64][];
+
+  /**
+   * @return the CPU time used so far by the current thread, in
+   * nanoseconds, or 0 if it cannot be measured
+   */
+  public static long currentThreadCpuTime() {
+    return THREADS.isCurrentThreadCpuTimeSupported()
+        ? Math.max(THREADS.getCurrentThreadCpuTime(), 0) : 0;
+  }
+
+  /**
+   * @return the CPU time used so far by a thread, in nanoseconds,
+   * or 0 if it cannot be measured
+   */
+  public static long threadCpuTime(Thread thread) {
+    return THREADS.isThreadCpuTimeSupported()
+        ? Math.max(THREADS.getThreadCpuTime(thread.getId()), 0) : 0;
+  }
+
+  void countSearch(long wallNanos, long cpuNanos) {
+    searches.increment();
+    wallTimeNanos.add(wallNanos);
+    cpuTimeNanos.add(cpuNanos);
+  }
+
+  void countNode(int depth) {
+    nodesVisited.increment();
+    maxDepth.accumulate(depth);
+  }
+
+  void countBranch(int depth, int values) {
+    row(depth)[Math.min(values, MAX_BRANCHING)].increment();
+  }
+
+  void countDeadEnd(int depth) {
+    deadEnds.increment();
+    countBranch(depth, 0);
+  }
+
+  void countGuess() {
+    guesses.increment();
+  }
+
+  void countBacktrack() {
+    backtracks.increment();
+  }
+
+  void countPropagations(int count) {
+    propagations.add(count);
+  }
+
+  void countSolution() {
+    solutions.increment();
+  }
+
+  private LongAdder[] row(int depth) {
+    LongAdder[][] rows = branching;
+    if (depth < rows.length && rows[depth] != null) {
+      return rows[depth];
+    }
+    return createRow(depth);
+  }
+
+  private synchronized LongAdder[] createRow(int depth) {
+    LongAdder[][] rows = branching;
+    if (depth < rows.length && rows[depth] != null) {
+      return rows[depth];
+    }
+    LongAdder[] row = new LongAdder[MAX_BRANCHING + 1];
+    for (int i = 0; i < row.length; i++) {
+      row[i] = new LongAdder();
+    }
+    // the published array is never written to, as it is read without
+    // locking: the row goes into a copy, published as a whole
+    int length = (depth < rows.length) ? rows.length : Math.max(depth + 1, rows.length * 2);
+    rows = Arrays.copyOf(rows, length);
+    rows[depth] = row;
+    branching = rows;
+    return row;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.SolverMetricsMXBean#getSearches()
+   */
+  public long getSearches() {
+    return searches.sum();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.SolverMetricsMXBean#getNodesVisited()
+   */
+  public long getNodesVisited() {
+    return nodesVisited.sum();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.SolverMetricsMXBean#getGuesses()
+   */
+  public long getGuesses() {
+    return guesses.sum();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.SolverMetricsMXBean#getBacktracks()
+   */
+  public long getBacktracks() {
+    return backtracks.sum();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.SolverMetricsMXBean#getDeadEnds()
+   */
+  public long getDeadEnds() {
+    return deadEnds.sum();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.SolverMetricsMXBean#getPropagations()
+   */
+  public long getPropagations() {
+    return propagations.sum();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.SolverMetricsMXBean#getSolutions()
+   */
+  public long getSolutions() {
+    return solutions.sum();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.SolverMetricsMXBean#getMaxDepth()
+   */
+  public long getMaxDepth() {
+    return maxDepth.get();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.SolverMetricsMXBean#getWallTimeNanos()
+   */
+  public long getWallTimeNanos() {
+    return wallTimeNanos.sum();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.SolverMetricsMXBean#getCpuTimeNanos()
+   */
+  public long getCpuTimeNanos() {
+    return cpuTimeNanos.sum();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.SolverMetricsMXBean#getBranchingHistogram()
+   */
+  public long[][] getBranchingHistogram() {
+    LongAdder[][] rows = branching;
+    int depths = rows.length;
+    while (depths > 0 && rows[depths - 1] == null) {
+      depths--;
+    }
+    long[][] result = new long[depths][MAX_BRANCHING + 1];
+    for (int depth = 0; depth < depths; depth++) {
+      if (rows[depth] != null) {
+        for (int i = 0; i <= MAX_BRANCHING; i++) {
+          result[depth][i] = rows[depth][i].sum();
+        }
+      }
+    }
+    return result;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.SolverMetricsMXBean#reset()
+   */
+  public synchronized void reset() {
+    searches.reset();
+    nodesVisited.reset();
+    guesses.reset();
+    backtracks.reset();
+    deadEnds.reset();
+    propagations.reset();
+    solutions.reset();
+    maxDepth.reset();
+    wallTimeNanos.reset();
+    cpuTimeNanos.reset();
+    branching = new LongAdder[64][];
+  }
+
+  /**
+   * Registers the metrics with the platform MBean server.
+   *
+   * @param name the name to tell the solver apart from any other
+   * @return the object name the metrics were registered under
+   * @throws JMException if they could not be registered
+   */
+  public ObjectName registerMBean(String name) throws JMException {
+    ObjectName objectName = new ObjectName("gtf.puzzle.engine:type=SolverMetrics,name="
+        + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    return objectName;
+  }
+
+  /**
+   * @return the metrics as a JSON object. Rows of the branching
+   * histogram are cut after their last non-zero count.
+   */
+  public String toJson() {
+    StringBuffer sb = new StringBuffer();
+    sb.append('{');
+    appendField(sb, "searches", getSearches());
+    appendField(sb, "nodesVisited", getNodesVisited());
+    appendField(sb, "guesses", getGuesses());
+    appendField(sb, "backtracks", getBacktracks());
+    appendField(sb, "deadEnds", getDeadEnds());
+    appendField(sb, "propagations", getPropagations());
+    appendField(sb, "solutions", getSolutions());
+    appendField(sb, "maxDepth", getMaxDepth());
+    appendField(sb, "wallTimeNanos", getWallTimeNanos());
+    appendField(sb, "cpuTimeNanos", getCpuTimeNanos());
+    sb.append("\"branchingHistogram\":[");
+    long[][] histogram = getBranchingHistogram();
+    for (int depth = 0; depth < histogram.length; depth++) {
+      if (depth > 0) {
+        sb.append(',');
+      }
+      int length = histogram[depth].length;
+      while (length > 0 && histogram[depth][length - 1] == 0) {
+        length--;
+      }
+      sb.append('[');
+      for (int i = 0; i < length; i++) {
+        if (i > 0) {
+          sb.append(',');
+        }
+        sb.append(histogram[depth][i]);
+      }
+      sb.append(']');
+    }
+    sb.append("]}");
+    return sb.toString();
+  }
+
+  private static void appendField(StringBuffer sb, String name, long value) {
+    sb.append('"').append(name).append("\":").append(value).append(',');
+  }
+}
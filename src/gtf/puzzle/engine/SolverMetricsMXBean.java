@@ -0,0 +1,79 @@
+package gtf.puzzle.engine;
+
+
+/**
+ * The management interface of SolverMetrics, for monitoring a
+ * solver through JMX.
+ *
+ * @author gtf
+ */
+public interface SolverMetricsMXBean {
+
+  /**
+   * @return the number of calls to solve the solver has had
+   */
+  long getSearches();
+
+  /**
+   * @return the number of nodes of the search trees entered
+   */
+  long getNodesVisited();
+
+  /**
+   * @return the number of values tried
+   */
+  long getGuesses();
+
+  /**
+   * @return the number of values tried that led to no solution
+   */
+  long getBacktracks();
+
+  /**
+   * @return the number of nodes found to have no solution without
+   * trying any value
+   */
+  long getDeadEnds();
+
+  /**
+   * @return the number of deductions made by propagation
+   */
+  long getPropagations();
+
+  /**
+   * @return the number of solutions found
+   */
+  long getSolutions();
+
+  /**
+   * @return the deepest node of the search trees entered
+   */
+  long getMaxDepth();
+
+  /**
+   * @return the elapsed time spent solving, in nanoseconds
+   */
+  long getWallTimeNanos();
+
+  /**
+   * @return the CPU time spent solving by all threads, in nanoseconds,
+   * or 0 if it cannot be measured
+   */
+  long getCpuTimeNanos();
+
+  /**
+   * Gets the number of nodes at each depth of the search trees,
+   * by the number of values they had to try. Index [d][n] counts
+   * the nodes at depth d with n values; the last index of each row
+   * counts the nodes with that many values or more. Dead ends are
+   * counted with 0 values.
+   *
+   * @return the histogram, with a row for each depth reached
+   */
+  long[][] getBranchingHistogram();
+
+  /**
+   * Sets every metric back to zero.
+   */
+  void reset();
+}
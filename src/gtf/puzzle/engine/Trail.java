@@ -0,0 +1,126 @@
+package gtf.puzzle.engine;
+
+import gtf.math.graph.ColourableGraph;
+
+
+/**
+ * An undo log for in-place backtracking.
+ * 
+ * Every change made to a graph through the trail records the
+ * colour it replaced, or the colour it excluded. Taking a mark
+ * before a guess and rolling back to it afterwards restores the
+ * graph to the state it was in at the mark, without copying the
+ * graph.
+ * 
+ * @author gtf
+ *
+ * @param <T> The type used for the node addresses
+ * @param <V> The type used for the node values
+ */
+class Trail<T, V> {
+
+  private Object[] nodes;
+
+  /**
+   * The colour replaced by each change; or for an exclusion,
+   * the colour excluded.
+   */
+  private Object[] previousColours;
+
+  /**
+   * Whether each change is an exclusion.
+   */
+  private boolean[] exclusions;
+
+  private int size;
+
+  /**
+   * @param capacity the initial number of changes that can be
+   * recorded. The trail grows as needed.
+   */
+  Trail(int capacity) {
+    nodes = new Object[Math.max(capacity, 1)];
+    previousColours = new Object[nodes.length];
+    exclusions = new boolean[nodes.length];
+    size = 0;
+  }
+
+  /**
+   * @return a mark that can later be passed to rollback().
+   */
+  int mark() {
+    return size;
+  }
+
+  /**
+   * Sets the colour of a node, recording its previous colour.
+   * 
+   * @param graph the graph to change
+   * @param node the node address
+   * @param colour the new colour
+   */
+  void setColour(ColourableGraph<T, V> graph, T node, V colour) {
+    V previous = graph.getColour(node);
+    graph.setColour(node, colour);
+    push(node, previous, false);
+  }
+
+  /**
+   * Excludes a colour from a node, recording the exclusion if the
+   * colour was not already excluded.
+   * 
+   * @param graph the graph to change
+   * @param node the node address
+   * @param colour the colour to exclude
+   * @return true if the colour was not already excluded
+   */
+  boolean excludeColour(ColourableGraph<T, V> graph, T node, V colour) {
+    if (!graph.excludeColour(node, colour)) {
+      return false;
+    }
+    push(node, colour, true);
+    return true;
+  }
+
+  private void push(Object node, Object colour, boolean exclusion) {
+    if (size == nodes.length) {
+      grow();
+    }
+    nodes[size] = node;
+    previousColours[size] = colour;
+    exclusions[size] = exclusion;
+    size++;
+  }
+
+  /**
+   * Undoes every change recorded since the mark, most recent first.
+   * 
+   * @param graph the graph the changes were made to
+   * @param mark a value previously returned by mark()
+   */
+  @SuppressWarnings("unchecked")
+  void rollback(ColourableGraph<T, V> graph, int mark) {
+    while (size > mark) {
+      size--;
+      if (exclusions[size]) {
+        graph.includeColour((T) nodes[size], (V) previousColours[size]);
+      } else {
+        graph.setColour((T) nodes[size], (V) previousColours[size]);
+      }
+      nodes[size] = null;
+      previousColours[size] = null;
+    }
+  }
+
+  private void grow() {
+    Object[] newNodes = new Object[nodes.length * 2];
+    Object[] newPreviousColours = new Object[newNodes.length];
+    boolean[] newExclusions = new boolean[newNodes.length];
+    System.arraycopy(nodes, 0, newNodes, 0, size);
+    System.arraycopy(previousColours, 0, newPreviousColours, 0, size);
+    System.arraycopy(exclusions, 0, newExclusions, 0, size);
+    nodes = newNodes;
+    previousColours = newPreviousColours;
+    exclusions = newExclusions;
+  }
+}
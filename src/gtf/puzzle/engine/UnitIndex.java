@@ -0,0 +1,81 @@
+package gtf.puzzle.engine;
+
+import gtf.math.graph.GraphTopology;
+import gtf.math.graph.UnitTopology;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+
+/**
+ * The units of a topology, and the units that contain each node.
+ * 
+ * The index only depends on the topology, so a single instance
+ * is shared by every graph using the same topology. A topology
+ * that is not a UnitTopology has no units.
+ * 
+ * @author gtf
+ *
+ * @param <T> the type used for the node addresses
+ */
+class UnitIndex<T> {
+
+  private static final Map<GraphTopology<?>, UnitIndex<?>> indices =
+      new WeakHashMap<GraphTopology<?>, UnitIndex<?>>();
+
+  private final List<List<T>> units;
+
+  private final Map<T, List<List<T>>> unitsContaining;
+
+  private UnitIndex(GraphTopology<T> topology) {
+    units = new ArrayList<List<T>>();
+    unitsContaining = new HashMap<T, List<List<T>>>();
+    if (topology instanceof UnitTopology) {
+      for (Collection<T> unit : ((UnitTopology<T>) topology).getUnits()) {
+        List<T> nodes = Collections.unmodifiableList(new ArrayList<T>(unit));
+        units.add(nodes);
+        for (T node : nodes) {
+          List<List<T>> containing = unitsContaining.get(node);
+          if (containing == null) {
+            containing = new ArrayList<List<T>>();
+            unitsContaining.put(node, containing);
+          }
+          containing.add(nodes);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the index of a topology, computing it on first use.
+   * 
+   * @param topology the topology
+   * @return the shared index
+   */
+  @SuppressWarnings("unchecked")
+  static synchronized <T> UnitIndex<T> of(GraphTopology<T> topology) {
+    UnitIndex<T> result = (UnitIndex<T>) indices.get(topology);
+    if (result == null) {
+      result = new UnitIndex<T>(topology);
+      indices.put(topology, result);
+    }
+    return result;
+  }
+
+  List<List<T>> getUnits() {
+    return units;
+  }
+
+  List<List<T>> getUnitsContaining(T node) {
+    List<List<T>> result = unitsContaining.get(node);
+    if (result == null) {
+      return Collections.emptyList();
+    }
+    return result;
+  }
+}
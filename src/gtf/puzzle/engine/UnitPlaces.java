@@ -0,0 +1,238 @@
+package gtf.puzzle.engine;
+
+import gtf.math.graph.ColourableGraph;
+import gtf.math.graph.IndexedColourableGraph;
+import gtf.math.graph.NodeIndex;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The places left for each colour in one unit, as gathered by the
+ * unit rules.
+ *
+ * A single instance is refilled for every unit of every pass, so
+ * that the rules do not build maps for each unit. The colours are
+ * numbered, and the numbers are kept from one unit to the next: an
+ * IndexedColourableGraph numbers its own colours, and is read by
+ * number, without hashing or boxing; the colours of another graph
+ * are numbered in the order they are first met.
+ *
+ * @author gtf
+ *
+ * @param <T> The type used for the node addresses
+ * @param <V> The type used for the node values
+ */
+final class UnitPlaces<T, V> {
+
+  /**
+   * The numbers of the colours, if the graph does not number them.
+   */
+  private final Map<V, Integer> numbers = new HashMap<V, Integer>();
+
+  private Object[] colours = new Object[0];
+
+  /**
+   * The places of each colour, by number, in the first counts[]
+   * entries.
+   */
+  private Object[][] places = new Object[0][];
+
+  private int[] counts = new int[0];
+
+  private boolean[] placed = new boolean[0];
+
+  /**
+   * The numbers of the colours met in the unit, placed or not.
+   */
+  private int[] met = new int[0];
+
+  private int metCount;
+
+  /**
+   * The numbers of the colours that have places in the unit, in
+   * the order they are first met.
+   */
+  private int[] open = new int[0];
+
+  private int openCount;
+
+  private int uncoloured;
+
+  /**
+   * Gathers the places of a unit, replacing those of the previous
+   * unit.
+   *
+   * @param graph the graph
+   * @param unit the unit
+   */
+  void fill(ColourableGraph<T, V> graph, List<T> unit) {
+    for (int i = 0; i < metCount; i++) {
+      counts[met[i]] = 0;
+      placed[met[i]] = false;
+    }
+    metCount = 0;
+    openCount = 0;
+    uncoloured = 0;
+    if (graph instanceof IndexedColourableGraph) {
+      fillByNumber((IndexedColourableGraph<T, V>) graph, unit);
+      return;
+    }
+    for (T node : unit) {
+      V colour = graph.getColour(node);
+      if (colour != null) {
+        int number = meet(numberOf(colour), unit.size());
+        placed[number] = true;
+      } else {
+        uncoloured++;
+        for (V candidate : graph.getPossibleColoursForNode(node)) {
+          addPlace(meet(numberOf(candidate), unit.size()), node);
+        }
+      }
+    }
+  }
+
+  /**
+   * The same as fill(), by node and colour number.
+   */
+  private void fillByNumber(IndexedColourableGraph<T, V> graph, List<T> unit) {
+    if (colours.length == 0) {
+      colours = graph.getColours().toArray();
+      resize(colours.length);
+    }
+    NodeIndex<T> nodeIndex = graph.getNodeIndex();
+    for (T node : unit) {
+      int index = nodeIndex.indexOf(node);
+      int colour = graph.getColourIndex(index);
+      if (colour >= 0) {
+        meet(colour, unit.size());
+        placed[colour] = true;
+      } else {
+        uncoloured++;
+        int left = graph.countPossibleColours(index);
+        for (int candidate = 0; left > 0; candidate++) {
+          if (graph.isPossibleColour(index, candidate)) {
+            addPlace(meet(candidate, unit.size()), node);
+            left--;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the number of a colour of a graph that does not number
+   * its colours, numbering it if it is new
+   */
+  private int numberOf(V colour) {
+    Integer number = numbers.get(colour);
+    if (number == null) {
+      number = Integer.valueOf(numbers.size());
+      numbers.put(colour, number);
+      if (number.intValue() == colours.length) {
+        resize(Math.max(16, 2 * colours.length));
+      }
+      colours[number.intValue()] = colour;
+    }
+    return number.intValue();
+  }
+
+  private void resize(int length) {
+    colours = Arrays.copyOf(colours, length);
+    places = Arrays.copyOf(places, length);
+    counts = Arrays.copyOf(counts, length);
+    placed = Arrays.copyOf(placed, length);
+    met = Arrays.copyOf(met, length);
+    open = Arrays.copyOf(open, length);
+  }
+
+  /**
+   * Counts a colour as met in the unit.
+   *
+   * @return the number of the colour
+   */
+  private int meet(int number, int unitSize) {
+    if (counts[number] == 0 && !placed[number]) {
+      met[metCount++] = number;
+      if (places[number] == null || places[number].length < unitSize) {
+        places[number] = new Object[unitSize];
+      }
+    }
+    return number;
+  }
+
+  private void addPlace(int number, T node) {
+    if (counts[number] == 0) {
+      open[openCount++] = number;
+    }
+    places[number][counts[number]++] = node;
+  }
+
+  /**
+   * @return the number of uncoloured nodes in the unit
+   */
+  int getUncoloured() {
+    return uncoloured;
+  }
+
+  /**
+   * @return the number of colours that have places in the unit
+   */
+  int size() {
+    return openCount;
+  }
+
+  /**
+   * @param i the index of the colour, in the range 0..size()-1
+   * @return the colour
+   */
+  @SuppressWarnings("unchecked")
+  V getColour(int i) {
+    return (V) colours[open[i]];
+  }
+
+  /**
+   * @param i the index of the colour
+   * @return the number of the colour, which is the same in every unit
+   */
+  int getNumber(int i) {
+    return open[i];
+  }
+
+  /**
+   * @param i the index of the colour
+   * @return true if the colour is already that of a node of the unit
+   */
+  boolean isPlaced(int i) {
+    return placed[open[i]];
+  }
+
+  /**
+   * @param i the index of the colour
+   * @return the number of places of the colour
+   */
+  int countPlaces(int i) {
+    return counts[open[i]];
+  }
+
+  /**
+   * @param i the index of the colour
+   * @param k the index of the place, in the range 0..countPlaces(i)-1
+   * @return the node
+   */
+  @SuppressWarnings("unchecked")
+  T getPlace(int i, int k) {
+    return (T) places[open[i]][k];
+  }
+
+  /**
+   * @return the number of colours of the unit's nodes, plus the
+   * number of colours that are not, but have places
+   */
+  int countAvailable() {
+    return metCount;
+  }
+}
@@ -0,0 +1,144 @@
+package gtf.puzzle.engine;
+
+import gtf.math.graph.ColourableGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * X-wing, the fish of size two. Suppose a colour has exactly two
+ * places left in each of two disjoint base units, and these four
+ * places are covered by two other units. The colour must then go
+ * in two of the four places, which uses up its one occurrence in
+ * each cover unit, so it is excluded from the rest of the cover
+ * units.
+ * 
+ * For a Sudoku board, the base units are usually two rows and
+ * the cover units two columns, or vice versa.
+ * 
+ * Has no effect unless the topology is a UnitTopology.
+ * 
+ * @author gtf
+ *
+ * @param <T> The type used for the node addresses
+ * @param <V> The type used for the node values
+ */
+public class XWingRule<T, V> implements PropagationRule<T, V> {
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.PropagationRule#apply(gtf.puzzle.engine.PropagationContext)
+   */
+  public boolean apply(PropagationContext<T, V> context) {
+    ColourableGraph<T, V> graph = context.getGraph();
+    UnitPlaces<T, V> places = context.getPlaces();
+    List<List<T>> units = context.getUnits();
+    // every colour that has exactly two places in a unit, in the
+    // order of the units: the unit, the colour, and its places
+    int[] pairUnits = new int[16];
+    int[] pairNumbers = new int[16];
+    List<V> pairColours = new ArrayList<V>();
+    List<T> pairPlaces = new ArrayList<T>();
+    for (int u = 0; u < units.size(); u++) {
+      places.fill(graph, units.get(u));
+      for (int i = 0; i < places.size(); i++) {
+        if (places.countPlaces(i) == 2 && !places.isPlaced(i)) {
+          int pair = pairColours.size();
+          if (pair == pairUnits.length) {
+            pairUnits = Arrays.copyOf(pairUnits, 2 * pair);
+            pairNumbers = Arrays.copyOf(pairNumbers, 2 * pair);
+          }
+          pairUnits[pair] = u;
+          pairNumbers[pair] = places.getNumber(i);
+          pairColours.add(places.getColour(i));
+          pairPlaces.add(places.getPlace(i, 0));
+          pairPlaces.add(places.getPlace(i, 1));
+        }
+      }
+    }
+    for (int p = 0; p < pairColours.size(); p++) {
+      List<T> first = units.get(pairUnits[p]);
+      for (int q = p + 1; q < pairColours.size(); q++) {
+        List<T> second = units.get(pairUnits[q]);
+        if (pairNumbers[q] == pairNumbers[p] && second != first
+            && disjoint(context, first, second)) {
+          List<List<T>> bases = new ArrayList<List<T>>(2);
+          bases.add(first);
+          bases.add(second);
+          V colour = pairColours.get(p);
+          T p0 = pairPlaces.get(2 * p);
+          T p1 = pairPlaces.get(2 * p + 1);
+          T q0 = pairPlaces.get(2 * q);
+          T q1 = pairPlaces.get(2 * q + 1);
+          eliminate(context, colour, bases, p0, q0, p1, q1);
+          eliminate(context, colour, bases, p0, q1, p1, q0);
+        }
+      }
+    }
+    return true;
+  }
+
+  private boolean disjoint(PropagationContext<T, V> context, List<T> first, List<T> second) {
+    for (T node : first) {
+      if (isIn(context, node, second)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return true if the node is in the unit, which must be one of
+   * the units of the context
+   */
+  private boolean isIn(PropagationContext<T, V> context, T node, List<T> unit) {
+    for (List<T> containing : context.getUnitsContaining(node)) {
+      if (containing == unit) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Excludes the colour from every pair of cover units, one
+   * containing a1 and b1, the other containing a2 and b2.
+   */
+  private void eliminate(PropagationContext<T, V> context, V colour, List<List<T>> bases,
+      T a1, T b1, T a2, T b2) {
+    List<List<T>> firstCovers = commonUnits(context, bases, a1, b1);
+    if (firstCovers.isEmpty()) {
+      return;
+    }
+    List<List<T>> secondCovers = commonUnits(context, bases, a2, b2);
+    for (List<T> first : firstCovers) {
+      for (List<T> second : secondCovers) {
+        exclude(context, colour, first, a1, b1, a2, b2);
+        exclude(context, colour, second, a1, b1, a2, b2);
+      }
+    }
+  }
+
+  private List<List<T>> commonUnits(PropagationContext<T, V> context, List<List<T>> bases,
+      T a, T b) {
+    List<List<T>> result = new ArrayList<List<T>>();
+    for (List<T> unit : context.getUnitsContaining(a)) {
+      if (unit != bases.get(0) && unit != bases.get(1) && isIn(context, b, unit)) {
+        result.add(unit);
+      }
+    }
+    return result;
+  }
+
+  private void exclude(PropagationContext<T, V> context, V colour, List<T> cover,
+      T a1, T b1, T a2, T b2) {
+    for (T node : cover) {
+      if (!node.equals(a1) && !node.equals(b1) && !node.equals(a2) && !node.equals(b2)
+          && context.getGraph().getColour(node) == null) {
+        context.exclude(node, colour);
+      }
+    }
+  }
+}
@@ -26,6 +26,7 @@ class EventReporter implements SolverListener<SudokuCellAddress, Integer> {
   public void solverFoundSolution(SolverEvent<SudokuCellAddress, Integer> event) {
     System.out.println("FOUND SOLUTION");
     System.out.println(formatter.asString(event.getPuzzle()));
+    System.out.println();
   }
 
   public void solverNoSolution(SolverEvent<SudokuCellAddress, Integer> event) {
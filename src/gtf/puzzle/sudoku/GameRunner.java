@@ -1,10 +1,15 @@
 package gtf.puzzle.sudoku;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Set;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import javax.management.JMException;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -15,8 +20,20 @@ import org.apache.commons.cli.ParseException;
 
 import gtf.math.graph.ColourableGraph;
 
+import gtf.puzzle.engine.AbstractSolver;
+import gtf.puzzle.engine.AsyncSolverListener;
+import gtf.puzzle.engine.DifficultyGrader;
+import gtf.puzzle.engine.IterativeSolver;
+import gtf.puzzle.engine.Propagator;
+import gtf.puzzle.engine.SolutionHandler;
 import gtf.puzzle.engine.Solver;
 
+import gtf.puzzle.sudoku.batch.BatchGrader;
+import gtf.puzzle.sudoku.batch.BatchProcessor;
+import gtf.puzzle.sudoku.batch.BatchSolver;
+import gtf.puzzle.sudoku.bitset.BitsetSolver;
+import gtf.puzzle.sudoku.cache.CachingSolver;
+import gtf.puzzle.sudoku.dlx.DancingLinksSolver;
 import gtf.puzzle.sudoku.graph.SudokuBoard;
 import gtf.puzzle.sudoku.graph.SudokuCellAddress;
 import gtf.puzzle.sudoku.io.GameBoardReader;
@@ -31,9 +48,33 @@ public class GameRunner {
   private static class Args {
     private final File inputFile;
     private final boolean verbose;
-    private Args(File inputFile, boolean verbose) {
+    private final int traceSample;
+    private final int threads;
+    private final int maxSolutions;
+    private final int propagation;
+    private final boolean dancingLinks;
+    private final boolean iterative;
+    private final boolean bitset;
+    private final boolean batch;
+    private final boolean grade;
+    private final boolean stats;
+    private final int cacheCapacity;
+    private Args(File inputFile, boolean verbose, int traceSample, int threads, int maxSolutions,
+        int propagation, boolean dancingLinks, boolean iterative, boolean bitset,
+        boolean batch, boolean grade, boolean stats, int cacheCapacity) {
       this.inputFile = inputFile;
       this.verbose = verbose;
+      this.traceSample = traceSample;
+      this.threads = threads;
+      this.maxSolutions = maxSolutions;
+      this.propagation = propagation;
+      this.dancingLinks = dancingLinks;
+      this.iterative = iterative;
+      this.bitset = bitset;
+      this.batch = batch;
+      this.grade = grade;
+      this.stats = stats;
+      this.cacheCapacity = cacheCapacity;
     }
     private File getInputFile() {
       return inputFile;
@@ -41,23 +82,155 @@ public class GameRunner {
     private boolean isVerbose() {
       return verbose;
     }
+    private int getTraceSample() {
+      return traceSample;
+    }
+    private int getThreads() {
+      return threads;
+    }
+    private int getMaxSolutions() {
+      return maxSolutions;
+    }
+    private int getPropagation() {
+      return propagation;
+    }
+    private boolean isDancingLinks() {
+      return dancingLinks;
+    }
+    private boolean isIterative() {
+      return iterative;
+    }
+    private boolean isBitset() {
+      return bitset;
+    }
+    private boolean isBatch() {
+      return batch;
+    }
+    private boolean isGrade() {
+      return grade;
+    }
+    private boolean isStats() {
+      return stats;
+    }
+    private int getCacheCapacity() {
+      return cacheCapacity;
+    }
   }
 
   private final static String OPT_VERBOSE = "v";
 
+  private final static String OPT_TRACE_SAMPLE = "t";
+
+  private final static String OPT_THREADS = "j";
+
+  private final static String OPT_MAX_SOLUTIONS = "n";
+
+  private final static String OPT_PROPAGATION = "p";
+
+  private final static String OPT_DANCING_LINKS = "x";
+
+  private final static String OPT_ITERATIVE = "i";
+
+  private final static String OPT_BITSET = "w";
+
+  private final static String OPT_BATCH = "b";
+
+  private final static String OPT_GRADE = "g";
+
+  private final static String OPT_STATS = "s";
+
+  private final static String LONG_OPT_STATS = "stats";
+
+  private final static String OPT_CACHE = "c";
+
+  /**
+   * The number of puzzles read ahead of the output in batch mode,
+   * for each worker thread.
+   */
+  private final static int BATCH_WINDOW_PER_THREAD = 64;
+
+  /**
+   * The number of events held for the verbose output.
+   */
+  private final static int TRACE_BUFFER = 1024;
+
   private static Args parseOpts(String[] args) throws ParseException {
     Options opts = new Options();
     opts.addOption(new Option(OPT_VERBOSE, false, "give verbose output"));
+    opts.addOption(new Option(OPT_TRACE_SAMPLE, true,
+        "give verbose output for every Nth event only, dropping events when it falls behind"));
+    opts.addOption(new Option(OPT_THREADS, true, "number of solver threads"));
+    opts.addOption(new Option(OPT_MAX_SOLUTIONS, true, "stop after this many solutions"));
+    opts.addOption(new Option(OPT_PROPAGATION, true,
+        "deductions between guesses: 0 none, 1 singles, 2 subsets, 3 advanced"));
+    opts.addOption(new Option(OPT_DANCING_LINKS, false,
+        "solve as an exact cover problem with Dancing Links"));
+    opts.addOption(new Option(OPT_ITERATIVE, false,
+        "search with an explicit stack instead of recursion"));
+    opts.addOption(new Option(OPT_BITSET, false,
+        "solve with sets of candidates as bits and singles only, for giant boards"));
+    opts.addOption(new Option(OPT_BATCH, false,
+        "solve a stream of puzzles, writing one line for each"));
+    opts.addOption(new Option(OPT_GRADE, false,
+        "grade the difficulty of the puzzles instead of solving them"));
+    opts.addOption(new Option(OPT_STATS, LONG_OPT_STATS, false,
+        "publish the solver metrics through JMX, and dump them as JSON to the"
+        + " standard error when done"));
+    opts.addOption(new Option(OPT_CACHE, true,
+        "cache the solutions of up to N puzzles, matching puzzles up to symmetry"));
     CommandLineParser parser = new GnuParser();
     CommandLine cl = null;
     cl = parser.parse(opts, args, false);
-    boolean verbose = cl.hasOption(OPT_VERBOSE);
+    int traceSample = parsePositive(cl, OPT_TRACE_SAMPLE, 1, "Bad trace sample interval");
+    boolean verbose = cl.hasOption(OPT_VERBOSE) || cl.hasOption(OPT_TRACE_SAMPLE);
+    boolean dancingLinks = cl.hasOption(OPT_DANCING_LINKS);
+    boolean iterative = cl.hasOption(OPT_ITERATIVE);
+    boolean bitset = cl.hasOption(OPT_BITSET);
+    boolean batch = cl.hasOption(OPT_BATCH);
+    boolean grade = cl.hasOption(OPT_GRADE);
+    boolean stats = cl.hasOption(OPT_STATS);
+    int threads = parsePositive(cl, OPT_THREADS, 1, "Bad number of threads");
+    int maxSolutions = parsePositive(cl, OPT_MAX_SOLUTIONS, AbstractSolver.UNLIMITED,
+        "Bad number of solutions");
+    int cacheCapacity = cl.hasOption(OPT_CACHE)
+        ? parsePositive(cl, OPT_CACHE, 0, "Bad cache capacity") : 0;
+    int propagation = 0;
+    if (cl.hasOption(OPT_PROPAGATION)) {
+      try {
+        propagation = Integer.parseInt(cl.getOptionValue(OPT_PROPAGATION));
+      } catch (NumberFormatException e) {
+        throw new ParseException("Bad propagation level");
+      }
+      if (propagation < 0 || propagation > 3) {
+        throw new ParseException("Bad propagation level");
+      }
+    }
     String[] args2 = cl.getArgs();
-    if (args2.length != 1) {
+    File inFile = null;
+    if (args2.length == 1) {
+      inFile = new File(args2[0]);
+    } else if (args2.length != 0 || !batch) {
       throw new ParseException("Must provide a filename");
     }
-    File inFile = new File(args2[0]);
-    return new Args(inFile, verbose);
+    return new Args(inFile, verbose, traceSample, threads, maxSolutions, propagation,
+        dancingLinks, iterative, bitset, batch, grade, stats, cacheCapacity);
+  }
+
+  private static int parsePositive(CommandLine cl, String opt, int defaultValue,
+      String message) throws ParseException {
+    if (!cl.hasOption(opt)) {
+      return defaultValue;
+    }
+    int value;
+    try {
+      value = Integer.parseInt(cl.getOptionValue(opt));
+    } catch (NumberFormatException e) {
+      throw new ParseException(message);
+    }
+    if (value < 1) {
+      throw new ParseException(message);
+    }
+    return value;
   }
 
   public static void main(String[] args) throws ParseException {
@@ -80,24 +253,157 @@ public class GameRunner {
   }
 
   private void execute() throws GameBoardReaderException, IOException {
+    if (arguments.isBatch()) {
+      executeBatch();
+      return;
+    }
     GameBoardReader reader = new GameBoardReader();
     InputStream in = new FileInputStream(arguments.getInputFile());
     SudokuBoard board = reader.read(in);
-    SudokuFormatter formatter = new SudokuFormatter(board.getTopology());
+    final SudokuFormatter formatter = new SudokuFormatter(board.getTopology());
     System.out.println("Game board:");
     System.out.println(board.toString());
     System.out.println();
-    Solver<SudokuCellAddress, Integer> solver =
-        new Solver<SudokuCellAddress, Integer>();
+    if (arguments.isGrade()) {
+      DifficultyGrader<SudokuCellAddress, Integer> grader = DifficultyGrader.standard();
+      System.out.println("Grade: " + grader.grade(board.getGraph()));
+      return;
+    }
+    AbstractSolver<SudokuCellAddress, Integer> solver = createSolver(arguments.getThreads());
+    // the verbose output is written by a thread of its own, and
+    // includes the solutions, to keep them in order
+    AsyncSolverListener<SudokuCellAddress, Integer> reporter = null;
     if (arguments.isVerbose()) {
-      solver.addListener(new EventReporter(formatter));
+      int sample = arguments.getTraceSample();
+      reporter = new AsyncSolverListener<SudokuCellAddress, Integer>(
+          new EventReporter(formatter), TRACE_BUFFER, sample, sample > 1);
+      solver.addListener(reporter);
+    }
+    final boolean printSolutions = (reporter == null);
+    int solutions = solver.solve(board.getGraph(), arguments.getMaxSolutions(),
+        new SolutionHandler<SudokuCellAddress, Integer>() {
+          public boolean handleSolution(ColourableGraph<SudokuCellAddress, Integer> solution) {
+            if (printSolutions) {
+              System.out.println(formatter.asString(solution));
+              System.out.println();
+            }
+            return true;
+          }
+        });
+    if (reporter != null) {
+      try {
+        reporter.close();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (reporter.getDropped() > 0) {
+        System.out.println("(" + reporter.getDropped() + " events dropped from the output)");
+      }
     }
-    Set<ColourableGraph<SudokuCellAddress, Integer>> results = solver.solve(board.getGraph());
-    System.out.println(Integer.toString(results.size()) + " solutions");
+    System.out.println(Integer.toString(solutions) + " solutions");
     System.out.println("(solved in " + solver.getSteps() + " steps)");
-    for (ColourableGraph<SudokuCellAddress, Integer> result : results) {
-      System.out.println();
-      System.out.println(formatter.asString(result));
+    reportStats(solver);
+  }
+
+  /**
+   * Solves or grades a stream of puzzles from the input file, or the
+   * standard input if there is none, writing one line for each to the
+   * standard output. The worker threads each take one puzzle at
+   * a time.
+   */
+  private void executeBatch() throws IOException {
+    InputStream in = (arguments.getInputFile() == null)
+        ? System.in : new FileInputStream(arguments.getInputFile());
+    Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+    int threads = arguments.getThreads();
+    AbstractSolver<SudokuCellAddress, Integer> solver = null;
+    BatchProcessor processor;
+    if (arguments.isGrade()) {
+      processor = new BatchGrader(DifficultyGrader.<SudokuCellAddress, Integer>standard(),
+          threads, threads * BATCH_WINDOW_PER_THREAD);
+    } else {
+      solver = createSolver(1);
+      processor = new BatchSolver(solver, threads,
+          threads * BATCH_WINDOW_PER_THREAD, arguments.getMaxSolutions());
+    }
+    long start = System.currentTimeMillis();
+    try {
+      long count = processor.run(new InputStreamReader(in), out);
+      System.err.println(count + " puzzles " + (arguments.isGrade() ? "graded" : "solved")
+          + " in " + (System.currentTimeMillis() - start) + " ms");
+    } finally {
+      in.close();
+    }
+    if (solver != null) {
+      reportStats(solver);
+    }
+  }
+
+  /**
+   * Dumps the metrics of the solver to the standard error, if asked to.
+   */
+  private void reportStats(AbstractSolver<SudokuCellAddress, Integer> solver) {
+    if (arguments.isStats()) {
+      System.err.println(solver.getMetrics().toJson());
+      if (solver instanceof CachingSolver) {
+        System.err.println(((CachingSolver) solver).toJson());
+      }
+    }
+  }
+
+  /**
+   * @param parallelism the number of threads for a single search
+   * @return the solver selected by the arguments
+   */
+  private AbstractSolver<SudokuCellAddress, Integer> createSolver(int parallelism) {
+    AbstractSolver<SudokuCellAddress, Integer> result;
+    if (arguments.isDancingLinks()) {
+      result = new DancingLinksSolver();
+    } else if (arguments.isBitset()) {
+      result = new BitsetSolver();
+    } else if (arguments.isIterative()) {
+      IterativeSolver<SudokuCellAddress, Integer> solver =
+          new IterativeSolver<SudokuCellAddress, Integer>();
+      solver.setPropagator(createPropagator(arguments.getPropagation()));
+      result = solver;
+    } else {
+      Solver<SudokuCellAddress, Integer> solver = new Solver<SudokuCellAddress, Integer>();
+      solver.setInPlace(true);
+      solver.setParallelism(parallelism);
+      solver.setPropagator(createPropagator(arguments.getPropagation()));
+      result = solver;
+    }
+    if (arguments.isStats()) {
+      try {
+        result.getMetrics().registerMBean("GameRunner");
+      } catch (JMException e) {
+        System.err.println("Could not publish the solver metrics: " + e.getMessage());
+      }
+    }
+    if (arguments.getCacheCapacity() > 0) {
+      CachingSolver cache = new CachingSolver(result, arguments.getCacheCapacity());
+      if (arguments.isStats()) {
+        try {
+          cache.registerMBean("GameRunner");
+        } catch (JMException e) {
+          System.err.println("Could not publish the cache metrics: " + e.getMessage());
+        }
+      }
+      result = cache;
+    }
+    return result;
+  }
+
+  private static Propagator<SudokuCellAddress, Integer> createPropagator(int level) {
+    switch (level) {
+    case 1:
+      return Propagator.singles();
+    case 2:
+      return Propagator.subsets();
+    case 3:
+      return Propagator.advanced();
+    default:
+      return null;
     }
   }
 }
@@ -0,0 +1,154 @@
+package gtf.puzzle.sudoku;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import gtf.puzzle.sudoku.generate.PuzzleGenerator;
+import gtf.puzzle.sudoku.generate.PuzzleHandler;
+import gtf.puzzle.sudoku.graph.SudokuBoard;
+import gtf.puzzle.sudoku.io.GameBoardWriter;
+
+
+/**
+ * Generates minimal puzzles with a unique solution, writing them
+ * one after the other in the board file format, and reports the
+ * rate at which they were made.
+ *
+ * @author gtf
+ */
+public class GeneratorRunner {
+
+  private final static String OPT_COUNT = "n";
+
+  private final static String OPT_THREADS = "j";
+
+  private final static String OPT_ZONE = "z";
+
+  private final static String OPT_SEED = "r";
+
+  public static void main(String[] args) throws ParseException, InterruptedException {
+    Options opts = new Options();
+    opts.addOption(new Option(OPT_COUNT, true, "number of puzzles (default 1)"));
+    opts.addOption(new Option(OPT_THREADS, true,
+        "number of generator threads (default one per processor)"));
+    opts.addOption(new Option(OPT_ZONE, true,
+        "zone size, as H or HxW for zones H high and W wide (default 3)"));
+    opts.addOption(new Option(OPT_SEED, true, "seed of the puzzles (default random)"));
+    CommandLineParser parser = new GnuParser();
+    CommandLine cl = parser.parse(opts, args, false);
+    long count = parsePositive(cl, OPT_COUNT, 1, "Bad number of puzzles");
+    int threads = (int) parsePositive(cl, OPT_THREADS,
+        Runtime.getRuntime().availableProcessors(), "Bad number of threads");
+    int hsize = 3;
+    int wsize = 3;
+    if (cl.hasOption(OPT_ZONE)) {
+      String zone = cl.getOptionValue(OPT_ZONE);
+      int x = zone.indexOf('x');
+      try {
+        hsize = Integer.parseInt((x < 0) ? zone : zone.substring(0, x));
+        wsize = (x < 0) ? hsize : Integer.parseInt(zone.substring(x + 1));
+      } catch (NumberFormatException e) {
+        throw new ParseException("Bad zone size");
+      }
+      if (hsize < 1 || wsize < 1) {
+        throw new ParseException("Bad zone size");
+      }
+    }
+    long seed = System.nanoTime();
+    if (cl.hasOption(OPT_SEED)) {
+      try {
+        seed = Long.parseLong(cl.getOptionValue(OPT_SEED));
+      } catch (NumberFormatException e) {
+        throw new ParseException("Bad seed");
+      }
+    }
+    String[] files = cl.getArgs();
+    if (files.length > 1) {
+      throw new ParseException("Too many filenames");
+    }
+
+    final boolean toStandardOutput = (files.length == 0);
+    String target = toStandardOutput ? "the standard output" : files[0];
+    OutputStream out = null;
+    try {
+      out = new BufferedOutputStream(toStandardOutput
+          ? System.out : new FileOutputStream(new File(files[0])));
+      final GameBoardWriter writer = new GameBoardWriter(out);
+      final long[] clues = new long[1];
+      final int width = hsize * wsize;
+      long start = System.currentTimeMillis();
+      long made = new PuzzleGenerator(hsize, wsize, seed).generate(count, threads,
+          new PuzzleHandler() {
+            public boolean handlePuzzle(long index, SudokuBoard puzzle) {
+              for (int row = 0; row < width; row++) {
+                for (int col = 0; col < width; col++) {
+                  if (puzzle.getValue(row, col) != null) {
+                    clues[0]++;
+                  }
+                }
+              }
+              writer.append(puzzle);
+              return !failed(writer, toStandardOutput);
+            }
+          });
+      long elapsed = Math.max(System.currentTimeMillis() - start, 1);
+      if (failed(writer, toStandardOutput)) {
+        throw new IOException("write failed");
+      }
+      if (!toStandardOutput) {
+        out.close();
+      }
+      System.err.println(made + " puzzles generated in " + elapsed + " ms ("
+          + String.format("%.1f", made * 1000.0 / elapsed) + " per second, "
+          + String.format("%.1f", (made == 0) ? 0.0 : (double) clues[0] / made)
+          + " clues on average; seed " + seed + ")");
+    } catch (IOException e) {
+      System.err.println("Could not write the puzzles to " + target);
+      System.exit(1);
+    } finally {
+      if (out != null && !toStandardOutput) {
+        try {
+          out.close();
+        } catch (IOException e) {
+          // already reported
+        }
+      }
+    }
+  }
+
+  /**
+   * Flushes the puzzles written, and tells whether writing them has
+   * failed. Neither the writer nor the standard output report
+   * exceptions of their own.
+   */
+  private static boolean failed(GameBoardWriter writer, boolean toStandardOutput) {
+    return writer.checkError() || (toStandardOutput && System.out.checkError());
+  }
+
+  private static long parsePositive(CommandLine cl, String opt, long defaultValue,
+      String message) throws ParseException {
+    if (!cl.hasOption(opt)) {
+      return defaultValue;
+    }
+    long value;
+    try {
+      value = Long.parseLong(cl.getOptionValue(opt));
+    } catch (NumberFormatException e) {
+      throw new ParseException(message);
+    }
+    if (value < 1) {
+      throw new ParseException(message);
+    }
+    return value;
+  }
+}
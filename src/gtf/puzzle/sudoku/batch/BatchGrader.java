@@ -0,0 +1,57 @@
+package gtf.puzzle.sudoku.batch;
+
+import gtf.puzzle.engine.DifficultyGrade;
+import gtf.puzzle.engine.DifficultyGrader;
+import gtf.puzzle.sudoku.graph.SudokuBoard;
+import gtf.puzzle.sudoku.graph.SudokuCellAddress;
+
+
+/**
+ * Grades a stream of puzzles, writing one line per puzzle in the
+ * order they were read.
+ *
+ * The line written for a puzzle is made of its score, the level
+ * and name of the hardest technique needed, the number of steps,
+ * the number of guesses and the backtracking depth, separated by
+ * spaces; followed by "none" or "several" if the puzzle does not
+ * have a unique solution. A puzzle that is already complete is
+ * graded "complete". A puzzle that could not be read gives "error: "
+ * and a message.
+ *
+ * @author gtf
+ */
+public class BatchGrader extends BatchProcessor {
+
+  private final DifficultyGrader<SudokuCellAddress, Integer> grader;
+
+  /**
+   * @param grader the grader, shared by the workers
+   * @param threads the number of worker threads
+   * @param window the most puzzles read ahead of the output, waiting
+   * either to be graded or to be written
+   */
+  public BatchGrader(DifficultyGrader<SudokuCellAddress, Integer> grader, int threads,
+      int window) {
+    super(threads, window);
+    this.grader = grader;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.sudoku.batch.BatchProcessor#process(gtf.puzzle.sudoku.graph.SudokuBoard)
+   */
+  protected String process(SudokuBoard board) {
+    DifficultyGrade grade = grader.grade(board.getGraph());
+    StringBuffer sb = new StringBuffer();
+    sb.append(grade.getScore()).append(' ');
+    sb.append(grade.getLevel()).append(' ');
+    sb.append(grade.getHardestTechnique() == null ? "complete" : grade.getHardestTechnique());
+    sb.append(' ').append(grade.getSteps());
+    sb.append(' ').append(grade.getGuesses());
+    sb.append(' ').append(grade.getBacktrackDepth());
+    if (grade.getSolutions() != 1) {
+      sb.append(grade.getSolutions() == 0 ? " none" : " several");
+    }
+    return sb.toString();
+  }
+}
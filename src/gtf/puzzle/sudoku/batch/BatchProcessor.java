@@ -0,0 +1,205 @@
+package gtf.puzzle.sudoku.batch;
+
+import gtf.puzzle.sudoku.graph.SudokuBoard;
+import gtf.puzzle.sudoku.io.GameBoardReaderException;
+import gtf.puzzle.sudoku.io.PuzzleStreamReader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+
+/**
+ * Processes a stream of puzzles, writing one line per puzzle in the
+ * order they were read. Subclasses say what the line for a puzzle is.
+ *
+ * The work is done by a pipeline of three stages, so that reading
+ * and writing overlap with processing:
+ * <ol>
+ * <li>the calling thread reads and parses the puzzles, and queues
+ * them for the workers;</li>
+ * <li>a pool of worker threads processes them;</li>
+ * <li>a writer thread puts the lines back in input order through a
+ * reorder buffer, and writes them.</li>
+ * </ol>
+ * Both the queue and the reorder buffer are bounded by the window,
+ * so the memory used does not depend on the length of the stream.
+ *
+ * The line written for a puzzle that could not be read or processed
+ * is "error: " and a message.
+ *
+ * @author gtf
+ */
+public abstract class BatchProcessor {
+
+  /**
+   * Marks the end of the puzzles in the queue.
+   */
+  private static final Job END = new Job(-1, null, null);
+
+  private final int threads;
+
+  private final int window;
+
+  /**
+   * A puzzle read, or the error in reading it.
+   */
+  private static class Job {
+    private final long sequence;
+    private final SudokuBoard board;
+    private final String error;
+    private Job(long sequence, SudokuBoard board, String error) {
+      this.sequence = sequence;
+      this.board = board;
+      this.error = error;
+    }
+  }
+
+  /**
+   * @param threads the number of worker threads
+   * @param window the most puzzles read ahead of the output, waiting
+   * either to be processed or to be written
+   */
+  protected BatchProcessor(int threads, int window) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("bad number of threads " + threads);
+    }
+    if (window < threads) {
+      throw new IllegalArgumentException("bad window " + window);
+    }
+    this.threads = threads;
+    this.window = window;
+  }
+
+  /**
+   * Processes a puzzle. Called from any of the worker threads, for
+   * several puzzles at once.
+   *
+   * @param board the puzzle
+   * @return the line to write for it, without the line terminator
+   */
+  protected abstract String process(SudokuBoard board);
+
+  /**
+   * Processes every puzzle of the input. The output is flushed, but
+   * neither stream is closed.
+   *
+   * @param in the puzzles
+   * @param out the results, one line per puzzle
+   * @return the number of puzzles read
+   * @throws IOException if the input could not be read or the
+   * output written
+   */
+  public long run(Reader in, final Writer out) throws IOException {
+    final BlockingQueue<Job> queue = new ArrayBlockingQueue<Job>(window);
+    final ReorderBuffer<String> results = new ReorderBuffer<String>(window);
+    final IOException[] writeError = new IOException[1];
+
+    List<Thread> workers = new ArrayList<Thread>(threads);
+    for (int i = 0; i < threads; i++) {
+      Thread worker = new Thread("BatchSolver-worker-" + i) {
+        public void run() {
+          try {
+            Job job = queue.take();
+            while (job != END) {
+              results.put(job.sequence, processJob(job));
+              job = queue.take();
+            }
+            queue.put(END); // for the other workers
+          } catch (InterruptedException e) {
+            results.abort();
+          }
+        }
+      };
+      worker.setDaemon(true);
+      workers.add(worker);
+      worker.start();
+    }
+    Thread writer = new Thread("BatchSolver-writer") {
+      public void run() {
+        try {
+          String result = results.poll();
+          while (true) {
+            if (result == null) {
+              // about to wait, so let the output catch up
+              out.flush();
+              result = results.take();
+              if (result == null) {
+                break;
+              }
+            }
+            out.write(result);
+            out.write('\n');
+            result = results.poll();
+          }
+          out.flush();
+        } catch (IOException e) {
+          writeError[0] = e;
+          results.abort();
+        } catch (InterruptedException e) {
+          results.abort();
+        }
+      }
+    };
+    writer.setDaemon(true);
+    writer.start();
+
+    long count = 0;
+    boolean ended = false;
+    try {
+      try {
+        PuzzleStreamReader reader = new PuzzleStreamReader(in);
+        while (!ended && writer.isAlive()) {
+          Job job;
+          try {
+            SudokuBoard board = reader.next();
+            job = (board == null) ? END : new Job(count, board, null);
+          } catch (GameBoardReaderException e) {
+            job = new Job(count, null, e.getMessage());
+          }
+          queue.put(job);
+          if (job == END) {
+            ended = true;
+          } else {
+            count++;
+          }
+        }
+      } finally {
+        if (!ended) {
+          // the input or the output failed: stop the workers
+          results.abort();
+          queue.clear();
+          queue.offer(END);
+        }
+      }
+      results.finish(count);
+      for (Thread worker : workers) {
+        worker.join();
+      }
+      writer.join();
+    } catch (InterruptedException e) {
+      results.abort();
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted");
+    }
+    if (writeError[0] != null) {
+      throw writeError[0];
+    }
+    return count;
+  }
+
+  private String processJob(Job job) {
+    if (job.error != null) {
+      return "error: " + job.error;
+    }
+    try {
+      return process(job.board);
+    } catch (RuntimeException e) {
+      return "error: " + e.toString();
+    }
+  }
+}
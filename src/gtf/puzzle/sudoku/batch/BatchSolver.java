@@ -0,0 +1,80 @@
+package gtf.puzzle.sudoku.batch;
+
+import gtf.math.graph.ColourableGraph;
+import gtf.puzzle.engine.AbstractSolver;
+import gtf.puzzle.engine.SolutionHandler;
+import gtf.puzzle.sudoku.graph.SudokuBoard;
+import gtf.puzzle.sudoku.graph.SudokuCellAddress;
+import gtf.puzzle.sudoku.io.SudokuLineFormat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Solves a stream of puzzles, writing one line per puzzle in the
+ * order they were read.
+ *
+ * The line written for a puzzle holds its solutions in the compact
+ * form of SudokuLineFormat, separated by spaces; or "none" if it
+ * has no solution; or "error: " and a message if it could not be
+ * read or solved.
+ *
+ * @author gtf
+ */
+public class BatchSolver extends BatchProcessor {
+
+  private final AbstractSolver<SudokuCellAddress, Integer> solver;
+
+  private final int maxSolutions;
+
+  /**
+   * @param solver the solver, shared by the workers. It must allow
+   * several puzzles to be solved at once.
+   * @param threads the number of worker threads
+   * @param window the most puzzles read ahead of the output, waiting
+   * either to be solved or to be written
+   * @param maxSolutions the most solutions to find for each puzzle
+   */
+  public BatchSolver(AbstractSolver<SudokuCellAddress, Integer> solver, int threads,
+      int window, int maxSolutions) {
+    super(threads, window);
+    if (maxSolutions < 1) {
+      throw new IllegalArgumentException("bad solution limit " + maxSolutions);
+    }
+    this.solver = solver;
+    this.maxSolutions = maxSolutions;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.sudoku.batch.BatchProcessor#process(gtf.puzzle.sudoku.graph.SudokuBoard)
+   */
+  protected String process(SudokuBoard board) {
+    final List<ColourableGraph<SudokuCellAddress, Integer>> solutions =
+        new ArrayList<ColourableGraph<SudokuCellAddress, Integer>>(1);
+    solver.solve(board.getGraph(), maxSolutions,
+        new SolutionHandler<SudokuCellAddress, Integer>() {
+          public boolean handleSolution(ColourableGraph<SudokuCellAddress, Integer> solution) {
+            solutions.add(solution);
+            return true;
+          }
+        });
+    if (solutions.isEmpty()) {
+      return "none";
+    }
+    SudokuLineFormat lineFormat = new SudokuLineFormat();
+    StringBuffer sb = new StringBuffer();
+    for (ColourableGraph<SudokuCellAddress, Integer> solution : solutions) {
+      if (sb.length() > 0) {
+        sb.append(' ');
+      }
+      try {
+        sb.append(lineFormat.format(solution));
+      } catch (IllegalArgumentException e) {
+        return "error: " + e.getMessage();
+      }
+    }
+    return sb.toString();
+  }
+}
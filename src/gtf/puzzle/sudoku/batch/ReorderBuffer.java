@@ -0,0 +1,115 @@
+package gtf.puzzle.sudoku.batch;
+
+
+/**
+ * Puts results that arrive out of order back in sequence.
+ *
+ * Results are put by sequence number from any thread, and taken
+ * in sequence by a single consumer. Only a window of sequence
+ * numbers ahead of the next one to be taken may be put; a
+ * producer with a result beyond the window waits for the consumer
+ * to catch up. This bounds the memory held by results waiting for
+ * an earlier, slower one.
+ *
+ * @author gtf
+ *
+ * @param <E> the type of the results
+ */
+class ReorderBuffer<E> {
+
+  private final Object[] slots;
+
+  /**
+   * The sequence number of the next result to take.
+   */
+  private long next = 0;
+
+  /**
+   * The number of results there will be, or -1 if not yet known.
+   */
+  private long total = -1;
+
+  private boolean aborted = false;
+
+  /**
+   * @param window the number of results that may be held
+   */
+  ReorderBuffer(int window) {
+    if (window < 1) {
+      throw new IllegalArgumentException("bad window " + window);
+    }
+    slots = new Object[window];
+  }
+
+  private int slotOf(long sequence) {
+    return (int) (sequence % slots.length);
+  }
+
+  /**
+   * Puts a result, waiting until its sequence number is within
+   * the window.
+   *
+   * @param sequence the sequence number of the result
+   * @param result the result, not null
+   */
+  synchronized void put(long sequence, E result) throws InterruptedException {
+    while (!aborted && sequence >= next + slots.length) {
+      wait();
+    }
+    if (!aborted) {
+      slots[slotOf(sequence)] = result;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Takes the next result if it is there.
+   *
+   * @return the next result, or null if it has not been put yet,
+   * or there are no more.
+   */
+  @SuppressWarnings("unchecked")
+  synchronized E poll() {
+    int slot = slotOf(next);
+    E result = (E) slots[slot];
+    if (aborted || result == null) {
+      return null;
+    }
+    slots[slot] = null;
+    next++;
+    notifyAll();
+    return result;
+  }
+
+  /**
+   * Takes the next result, waiting for it to be put.
+   *
+   * @return the next result, or null if there are no more.
+   */
+  synchronized E take() throws InterruptedException {
+    E result = poll();
+    while (result == null && !aborted && (total < 0 || next < total)) {
+      wait();
+      result = poll();
+    }
+    return result;
+  }
+
+  /**
+   * Sets the number of results there will be, so that the consumer
+   * knows when it has taken the last one.
+   */
+  synchronized void finish(long total) {
+    this.total = total;
+    notifyAll();
+  }
+
+  /**
+   * Gives up: producers no longer wait, and the consumer takes
+   * nothing more.
+   */
+  synchronized void abort() {
+    aborted = true;
+    notifyAll();
+  }
+}
@@ -0,0 +1,656 @@
+package gtf.puzzle.sudoku.bitset;
+
+import gtf.math.graph.ColourableGraph;
+import gtf.math.graph.IndexedColourableGraph;
+import gtf.math.types.ColourBits;
+import gtf.puzzle.engine.AbstractSolver;
+import gtf.puzzle.engine.SolutionHandler;
+import gtf.puzzle.engine.SolverMetrics;
+import gtf.puzzle.sudoku.graph.SudokuCellAddress;
+import gtf.puzzle.sudoku.graph.SudokuTopology;
+
+
+/**
+ * Solves Sudoku boards of any size by backtracking over sets of
+ * candidates held as bits, propagating singles between guesses.
+ *
+ * The candidate digits of each cell are a set of bits of as many
+ * words as the width of the board needs, so boards wider than 64
+ * are handled the same way as the others. For every unit (row,
+ * column or zone) and digit, the positions in the unit where the
+ * digit can still go are kept as a further set of bits. Whenever a
+ * candidate is removed, its cell and its three units are checked at
+ * once: a cell with one candidate left is a naked single, a digit
+ * with one position left in a unit is a hidden single, and a cell or
+ * digit with none left is a dead end.
+ *
+ * The search branches on the empty cell with the fewest candidates,
+ * or on the digit with the fewest positions left in a unit, if that
+ * is fewer. The search is chronological, so it is only as good
+ * as the singles on giant boards: a 64x64 puzzle with much less than
+ * two thirds of its cells given may take it longer than is practical,
+ * as it does the Dancing Links solver.
+ *
+ * All the state is in one long array, of about 4n * words(width)
+ * words for a board of n cells. The words changed are recorded on
+ * a trail to be restored when backtracking, each at most once per
+ * guess, so the memory used grows with the number of cells and not
+ * with the number of values tried. Boards up to 100 wide fit easily
+ * in a small heap.
+ *
+ * Boards with two clashing givens have no solution. The puzzle must
+ * use a SudokuTopology, of any zone size, and its values must be the
+ * digits 1 to the width of the board.
+ *
+ * The listeners receive the same events as from the graph-colouring
+ * Solver. When there are any, a working copy of the board is kept
+ * in step with the search so that it can be passed to them; it is
+ * only valid for the duration of the callback, except for
+ * solutions.
+ *
+ * @author gtf
+ */
+public class BitsetSolver extends AbstractSolver<SudokuCellAddress, Integer> {
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.AbstractSolver#solve(gtf.math.graph.ColourableGraph, int, gtf.puzzle.engine.SolutionHandler)
+   */
+  public int solve(ColourableGraph<SudokuCellAddress, Integer> puzzle, int maxSolutions,
+      SolutionHandler<SudokuCellAddress, Integer> handler) {
+    Search search = new Search(puzzle, maxSolutions, handler);
+    search.run();
+    return search.found;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.AbstractSolver#countSolutions(gtf.math.graph.ColourableGraph, int)
+   */
+  public int countSolutions(ColourableGraph<SudokuCellAddress, Integer> puzzle, int limit) {
+    Search search = new Search(puzzle, limit, null);
+    search.run();
+    return search.found;
+  }
+
+  /**
+   * The state of a single call to solve().
+   */
+  private class Search {
+
+    private final ColourableGraph<SudokuCellAddress, Integer> puzzle;
+
+    private final int limit;
+
+    /**
+     * The handler for the solutions found, or null to only
+     * count them.
+     */
+    private final SolutionHandler<SudokuCellAddress, Integer> handler;
+
+    private final SudokuTopology topology;
+
+    private final int width;
+
+    private final int cellCount;
+
+    /**
+     * The number of words of each set of digits or positions.
+     */
+    private final int words;
+
+    /*
+     * The state. The candidates of cell c are at c * words; the
+     * positions of digit d in unit u at positionBase + (u * width +
+     * d) * words; and the digits placed in unit u at placedBase + u
+     * * words. The units are numbered as by the topology: the rows,
+     * then the columns, then the zones.
+     */
+    private final long[] state;
+
+    private final int positionBase;
+
+    private final int placedBase;
+
+    /**
+     * The digit of each cell, from 0; -1 if the cell is empty.
+     */
+    private final int[] values;
+
+    private int filled;
+
+    /**
+     * The three units of each cell, and the position of the cell
+     * in each, at 3 * cell onwards.
+     */
+    private final int[] cellUnits;
+
+    private final int[] cellPositions;
+
+    /*
+     * The trail. An entry for a word of the state holds its index,
+     * its previous value and its previous stamp. An entry for a
+     * value holds the complement of the cell, the value having been
+     * empty before.
+     */
+    private int[] trailIndices;
+    private long[] trailWords;
+    private int[] trailStamps;
+    private int trailSize;
+
+    /**
+     * The guess in which each word of the state was last recorded
+     * on the trail, so that it is recorded once per guess.
+     */
+    private final int[] stamps;
+
+    private int guess;
+
+    private int guessCount;
+
+    /**
+     * The cells and unit digits to check for singles. A cell c is
+     * queued as c, and digit d of unit u as cellCount + u * width + d.
+     */
+    private int[] queue;
+    private int queueHead;
+    private int queueTail;
+
+    private int propagations;
+
+    /**
+     * The board kept in step with the search for the listeners,
+     * or null if there are none.
+     */
+    private ColourableGraph<SudokuCellAddress, Integer> working;
+
+    private int found;
+
+    private boolean stopped;
+
+    private Search(ColourableGraph<SudokuCellAddress, Integer> puzzle, int limit,
+        SolutionHandler<SudokuCellAddress, Integer> handler) {
+      if (limit < 1) {
+        throw new IllegalArgumentException("bad solution limit " + limit);
+      }
+      if (!(puzzle.getTopology() instanceof SudokuTopology)) {
+        throw new IllegalArgumentException("not a Sudoku board");
+      }
+      this.puzzle = puzzle;
+      this.limit = limit;
+      this.handler = handler;
+      topology = (SudokuTopology) puzzle.getTopology();
+      width = topology.getWidth();
+      cellCount = topology.getNodeCount();
+      words = ColourBits.words(width);
+      positionBase = cellCount * words;
+      placedBase = positionBase + topology.unitCount() * width * words;
+      state = new long[placedBase + topology.unitCount() * words];
+      stamps = new int[state.length];
+      values = new int[cellCount];
+      cellUnits = new int[3 * cellCount];
+      cellPositions = new int[3 * cellCount];
+      int hsize = topology.getZoneHeight();
+      int wsize = topology.getZoneWidth();
+      for (int cell = 0; cell < cellCount; cell++) {
+        int row = cell / width;
+        int col = cell % width;
+        cellUnits[3 * cell] = row;
+        cellPositions[3 * cell] = col;
+        cellUnits[3 * cell + 1] = width + col;
+        cellPositions[3 * cell + 1] = row;
+        cellUnits[3 * cell + 2] = 2 * width + (row / hsize) * hsize + col / wsize;
+        cellPositions[3 * cell + 2] = (row % hsize) * wsize + col % wsize;
+      }
+      trailIndices = new int[Math.max(state.length / 4, 16)];
+      trailWords = new long[trailIndices.length];
+      trailStamps = new int[trailIndices.length];
+      queue = new int[Math.max(cellCount, 16)];
+      found = 0;
+      stopped = false;
+    }
+
+    /**
+     * @return true once the search is to unwind, because it is done
+     * or because the handler has cancelled it
+     */
+    private boolean isStopped() {
+      if (!stopped && handler != null && handler.isCancelled()) {
+        stopped = true;
+      }
+      return stopped;
+    }
+
+    private void run() {
+      long wall = System.nanoTime();
+      long cpu = SolverMetrics.currentThreadCpuTime();
+      if (load()) {
+        working = hasListeners() ? puzzle.copyOf() : null;
+        search(0);
+      } else {
+        countNode(0);
+        countDeadEnd(0);
+        if (hasListeners()) {
+          fireNoSolution(puzzle, 0);
+        }
+      }
+      countPropagations(propagations);
+      countSearch(System.nanoTime() - wall, SolverMetrics.currentThreadCpuTime() - cpu);
+    }
+
+    /**
+     * Sets up the state for the givens of the puzzle, with the
+     * candidates of each empty cell those not placed in its units,
+     * and not ruled out by the puzzle itself, such as excluded
+     * colours. Queues the singles found.
+     *
+     * @return false if two givens clash, or some cell or unit digit
+     * has no place left
+     */
+    private boolean load() {
+      filled = 0;
+      for (int cell = 0; cell < cellCount; cell++) {
+        values[cell] = -1;
+        Integer value = puzzle.getColour(topology.node(cell));
+        if (value != null) {
+          int digit = digitOf(value);
+          for (int k = 3 * cell; k < 3 * cell + 3; k++) {
+            int placed = placedBase + cellUnits[k] * words;
+            if (ColourBits.get(state, placed, digit)) {
+              return false;
+            }
+            ColourBits.set(state, placed, digit);
+          }
+          values[cell] = digit;
+          filled++;
+        }
+      }
+      long[] possible = new long[words];
+      for (int cell = 0; cell < cellCount; cell++) {
+        if (values[cell] < 0) {
+          int offset = cell * words;
+          for (int w = 0; w < words; w++) {
+            long placed = state[placedBase + cellUnits[3 * cell] * words + w]
+                | state[placedBase + cellUnits[3 * cell + 1] * words + w]
+                | state[placedBase + cellUnits[3 * cell + 2] * words + w];
+            state[offset + w] = allBits(w) & ~placed;
+          }
+          SudokuCellAddress node = topology.node(cell);
+          if (puzzle.countPossibleColoursForNode(node) != ColourBits.count(state, offset, words)) {
+            for (int w = 0; w < words; w++) {
+              possible[w] = 0;
+            }
+            for (Integer value : puzzle.getPossibleColoursForNode(node)) {
+              ColourBits.set(possible, 0, digitOf(value));
+            }
+            for (int w = 0; w < words; w++) {
+              state[offset + w] &= possible[w];
+            }
+          }
+          int count = ColourBits.count(state, offset, words);
+          if (count == 0) {
+            return false;
+          }
+          if (count == 1) {
+            enqueue(cell);
+          }
+          int digit = ColourBits.next(state, offset, words, 0);
+          while (digit >= 0) {
+            for (int k = 3 * cell; k < 3 * cell + 3; k++) {
+              ColourBits.set(state, positionBase + (cellUnits[k] * width + digit) * words,
+                  cellPositions[k]);
+            }
+            digit = ColourBits.next(state, offset, words, digit + 1);
+          }
+        }
+      }
+      for (int unit = 0; unit < topology.unitCount(); unit++) {
+        for (int digit = 0; digit < width; digit++) {
+          if (!ColourBits.get(state, placedBase + unit * words, digit)) {
+            int count = ColourBits.count(state, positionBase + (unit * width + digit) * words, words);
+            if (count == 0) {
+              return false;
+            }
+            if (count == 1) {
+              enqueue(cellCount + unit * width + digit);
+            }
+          }
+        }
+      }
+      return true;
+    }
+
+    private int digitOf(Integer value) {
+      int digit = value.intValue();
+      if (digit < 1 || digit > width) {
+        throw new IllegalArgumentException("bad colour " + value);
+      }
+      return digit - 1;
+    }
+
+    /**
+     * @return word w of the set of every digit
+     */
+    private long allBits(int w) {
+      int bits = width - 64 * w;
+      return (bits >= 64) ? -1L : (1L << bits) - 1;
+    }
+
+    /**
+     * Changes a word of the state, recording its value on the trail
+     * if it has not been yet since the last guess.
+     */
+    private void write(int index, long value) {
+      if (stamps[index] != guess) {
+        push(index, state[index], stamps[index]);
+        stamps[index] = guess;
+      }
+      state[index] = value;
+    }
+
+    private void push(int index, long word, int stamp) {
+      if (trailSize == trailIndices.length) {
+        int capacity = 2 * trailSize;
+        int[] indices = new int[capacity];
+        long[] words = new long[capacity];
+        int[] stamps = new int[capacity];
+        System.arraycopy(trailIndices, 0, indices, 0, trailSize);
+        System.arraycopy(trailWords, 0, words, 0, trailSize);
+        System.arraycopy(trailStamps, 0, stamps, 0, trailSize);
+        trailIndices = indices;
+        trailWords = words;
+        trailStamps = stamps;
+      }
+      trailIndices[trailSize] = index;
+      trailWords[trailSize] = word;
+      trailStamps[trailSize] = stamp;
+      trailSize++;
+    }
+
+    private void clearBit(int offset, int bit) {
+      int index = offset + (bit >>> 6);
+      write(index, state[index] & ~(1L << bit));
+    }
+
+    /**
+     * Undoes every change recorded since a mark.
+     */
+    private void rollback(int mark) {
+      while (trailSize > mark) {
+        trailSize--;
+        int index = trailIndices[trailSize];
+        if (index >= 0) {
+          state[index] = trailWords[trailSize];
+          stamps[index] = trailStamps[trailSize];
+        } else {
+          int cell = ~index;
+          values[cell] = -1;
+          filled--;
+          if (working != null) {
+            working.setColour(topology.node(cell), null);
+          }
+        }
+      }
+      queueHead = 0;
+      queueTail = 0;
+    }
+
+    private void enqueue(int item) {
+      if (queueTail == queue.length) {
+        int[] larger = new int[2 * queue.length];
+        System.arraycopy(queue, 0, larger, 0, queueTail);
+        queue = larger;
+      }
+      queue[queueTail++] = item;
+    }
+
+    /**
+     * Removes a candidate from an empty cell.
+     *
+     * @return false if the cell, or the digit in one of the units
+     * of the cell, is left with no place
+     */
+    private boolean eliminate(int cell, int digit) {
+      int offset = cell * words;
+      if (!ColourBits.get(state, offset, digit)) {
+        return true;
+      }
+      clearBit(offset, digit);
+      int left = ColourBits.count(state, offset, words);
+      if (left == 0) {
+        return false;
+      }
+      if (left == 1) {
+        enqueue(cell);
+      }
+      for (int k = 3 * cell; k < 3 * cell + 3; k++) {
+        if (!removePosition(cellUnits[k], digit, cellPositions[k])) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Removes a position of a digit in a unit.
+     *
+     * @return false if the digit is left with no place in the unit
+     */
+    private boolean removePosition(int unit, int digit, int position) {
+      int offset = positionBase + (unit * width + digit) * words;
+      clearBit(offset, position);
+      if (ColourBits.get(state, placedBase + unit * words, digit)) {
+        return true;
+      }
+      int left = ColourBits.count(state, offset, words);
+      if (left == 0) {
+        return false;
+      }
+      if (left == 1) {
+        enqueue(cellCount + unit * width + digit);
+      }
+      return true;
+    }
+
+    /**
+     * Puts a digit in an empty cell, which has it as a candidate,
+     * and removes it from the candidates of the neighbours.
+     *
+     * @return false if this leaves some cell or unit digit with
+     * no place
+     */
+    private boolean assign(int cell, int digit) {
+      push(~cell, 0, 0);
+      values[cell] = digit;
+      filled++;
+      if (working != null) {
+        working.setColour(topology.node(cell), Integer.valueOf(digit + 1));
+      }
+      for (int k = 3 * cell; k < 3 * cell + 3; k++) {
+        int index = placedBase + cellUnits[k] * words + (digit >>> 6);
+        write(index, state[index] | (1L << digit));
+      }
+      // the cell is no longer a position for any of its candidates
+      int offset = cell * words;
+      int candidate = ColourBits.next(state, offset, words, 0);
+      while (candidate >= 0) {
+        for (int k = 3 * cell; k < 3 * cell + 3; k++) {
+          if (!removePosition(cellUnits[k], candidate, cellPositions[k])) {
+            return false;
+          }
+        }
+        candidate = ColourBits.next(state, offset, words, candidate + 1);
+      }
+      for (int w = 0; w < words; w++) {
+        write(offset + w, 0);
+      }
+      int neighbours = topology.neighbourCount(cell);
+      for (int i = 0; i < neighbours; i++) {
+        int neighbour = topology.neighbour(cell, i);
+        if (values[neighbour] < 0 && !eliminate(neighbour, digit)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Assigns the singles queued, and those they lead to.
+     *
+     * @return false if a dead end is reached
+     */
+    private boolean propagate() {
+      while (queueHead < queueTail) {
+        int item = queue[queueHead++];
+        if (item < cellCount) {
+          if (values[item] < 0) {
+            int offset = item * words;
+            if (ColourBits.count(state, offset, words) == 1) {
+              propagations++;
+              if (!assign(item, ColourBits.next(state, offset, words, 0))) {
+                return false;
+              }
+            }
+          }
+        } else {
+          int unit = (item - cellCount) / width;
+          int digit = (item - cellCount) % width;
+          int offset = positionBase + (unit * width + digit) * words;
+          if (!ColourBits.get(state, placedBase + unit * words, digit)
+              && ColourBits.count(state, offset, words) == 1) {
+            int cell = topology.unitCell(unit, ColourBits.next(state, offset, words, 0));
+            propagations++;
+            if (!assign(cell, digit)) {
+              return false;
+            }
+          }
+        }
+      }
+      queueHead = 0;
+      queueTail = 0;
+      return true;
+    }
+
+    private void search(int depth) {
+      if (isStopped()) {
+        return;
+      }
+      countNode(depth);
+      if (working != null) {
+        fireInvoked(working, depth);
+      }
+      if (!propagate()) {
+        deadEnd(depth);
+        return;
+      }
+      if (filled == cellCount) {
+        foundSolution(depth);
+        return;
+      }
+
+      // the empty cell with the fewest candidates
+      int bestCell = -1;
+      int fewest = Integer.MAX_VALUE;
+      for (int cell = 0; cell < cellCount && fewest > 2; cell++) {
+        if (values[cell] < 0) {
+          int count = ColourBits.count(state, cell * words, words);
+          if (count < fewest) {
+            bestCell = cell;
+            fewest = count;
+          }
+        }
+      }
+      // or the unit digit with the fewest positions
+      int bestUnitDigit = -1;
+      for (int unit = 0; unit < topology.unitCount() && fewest > 2; unit++) {
+        int placed = placedBase + unit * words;
+        for (int digit = 0; digit < width; digit++) {
+          if (!ColourBits.get(state, placed, digit)) {
+            int count = ColourBits.count(state, positionBase + (unit * width + digit) * words, words);
+            if (count < fewest) {
+              bestUnitDigit = unit * width + digit;
+              fewest = count;
+            }
+          }
+        }
+      }
+      if (fewest == 0) {
+        deadEnd(depth);
+        return;
+      }
+
+      countBranch(depth, fewest);
+      int guessed = guessCount;
+      int offset = (bestUnitDigit < 0)
+          ? bestCell * words : positionBase + bestUnitDigit * words;
+      int choice = ColourBits.next(state, offset, words, 0);
+      while (choice >= 0 && !stopped) {
+        int cell = (bestUnitDigit < 0)
+            ? bestCell : topology.unitCell(bestUnitDigit / width, choice);
+        int digit = (bestUnitDigit < 0) ? choice : bestUnitDigit % width;
+        countGuess();
+        int foundBefore = found;
+        int mark = trailSize;
+        int previousGuess = guess;
+        guess = ++guessCount;
+        if (assign(cell, digit)) {
+          if (working != null) {
+            fireTriedCell(working, depth, topology.node(cell), Integer.valueOf(digit + 1));
+          }
+          search(depth + 1);
+        } else {
+          countNode(depth + 1);
+          deadEnd(depth + 1);
+        }
+        rollback(mark);
+        guess = previousGuess;
+        if (found == foundBefore) {
+          countBacktrack();
+        }
+        choice = ColourBits.next(state, offset, words, choice + 1);
+      }
+      if (guessCount > guessed) {
+        incrementSteps();
+      }
+    }
+
+    private void deadEnd(int depth) {
+      queueHead = 0;
+      queueTail = 0;
+      countDeadEnd(depth);
+      if (working != null) {
+        fireNoSolution(working, depth);
+      }
+    }
+
+    private void foundSolution(int depth) {
+      found++;
+      countSolution();
+      if (found == limit) {
+        stopped = true;
+      }
+      ColourableGraph<SudokuCellAddress, Integer> solution = working;
+      if (handler != null) {
+        solution = puzzle.copyOf();
+        IndexedColourableGraph<SudokuCellAddress, Integer> indexed =
+            (solution instanceof IndexedColourableGraph)
+            ? (IndexedColourableGraph<SudokuCellAddress, Integer>) solution : null;
+        for (int cell = 0; cell < cellCount; cell++) {
+          if (indexed != null) {
+            if (indexed.getColourIndex(cell) < 0) {
+              indexed.setColourIndex(cell, indexed.indexOfColour(Integer.valueOf(values[cell] + 1)));
+            }
+          } else if (solution.getColour(topology.node(cell)) == null) {
+            solution.setColour(topology.node(cell), Integer.valueOf(values[cell] + 1));
+          }
+        }
+      }
+      if (solution != null) {
+        fireFoundSolution(solution, depth);
+      }
+      if (handler != null && !handler.handleSolution(solution)) {
+        stopped = true;
+      }
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package gtf.puzzle.sudoku.bitset;
+
+import gtf.math.graph.ColourableGraph;
+import gtf.puzzle.sudoku.dlx.DancingLinksSolver;
+import gtf.puzzle.sudoku.graph.SudokuBoard;
+import gtf.puzzle.sudoku.graph.SudokuCellAddress;
+import gtf.puzzle.sudoku.graph.SudokuTopology;
+import gtf.puzzle.sudoku.io.GameBoardReader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Checks the bitset solver against the Dancing Links solver, on the
+ * boards and on a board too wide for its candidates to fit in one
+ * word.
+ *
+ * The boards are read from the boards directory, so the tests must
+ * be run from the top of the project.
+ *
+ * @author gtf
+ */
+public class BitsetSolverTest extends TestCase {
+
+  /**
+   * More than the number of solutions of any of the boards.
+   */
+  private static final int LIMIT = 1000;
+
+  public BitsetSolverTest(String name) {
+    super(name);
+  }
+
+  public void testBoardsAgreeWithDancingLinks() throws Exception {
+    File[] files = new File("boards").listFiles();
+    assertNotNull("no boards directory", files);
+    Arrays.sort(files);
+    int boards = 0;
+    for (File file : files) {
+      if (!file.getName().endsWith(".gb")) {
+        continue;
+      }
+      assertAgree(file.getName(), read(file));
+      boards++;
+    }
+    assertTrue("no boards read", boards > 0);
+  }
+
+  /**
+   * An 81x81 board, the pattern board with 70% of its cells kept,
+   * which has 16 solutions. Its candidates take two words per cell.
+   */
+  public void testBoardWiderThan64() {
+    int size = 9;
+    int width = size * size;
+    ColourableGraph<SudokuCellAddress, Integer> puzzle = new SudokuBoard(size).getGraph();
+    SudokuTopology topology = (SudokuTopology) puzzle.getTopology();
+    Random random = new Random(25);
+    for (int row = 0; row < width; row++) {
+      for (int col = 0; col < width; col++) {
+        if (random.nextDouble() < 0.7) {
+          int digit = (size * (row % size) + row / size + col) % width + 1;
+          puzzle.setColour(topology.cellAt(row, col), Integer.valueOf(digit));
+        }
+      }
+    }
+    assertEquals(16, assertAgree("81x81", puzzle));
+    for (ColourableGraph<SudokuCellAddress, Integer> solution
+        : new BitsetSolver().solve(puzzle, LIMIT)) {
+      assertSolves(puzzle, solution);
+    }
+  }
+
+  /**
+   * Checks that both solvers count, and find, the same solutions.
+   *
+   * @return the number of solutions
+   */
+  private static int assertAgree(String name, ColourableGraph<SudokuCellAddress, Integer> puzzle) {
+    int count = new DancingLinksSolver().countSolutions(puzzle, LIMIT);
+    assertEquals(name, count, new BitsetSolver().countSolutions(puzzle, LIMIT));
+    Set<String> expected = digits(new DancingLinksSolver().solve(puzzle, LIMIT));
+    assertEquals(name, count, expected.size());
+    assertEquals(name, expected, digits(new BitsetSolver().solve(puzzle, LIMIT)));
+    return count;
+  }
+
+  /**
+   * Checks that a solution keeps the givens of the puzzle, and has
+   * every digit once in each unit.
+   */
+  private static void assertSolves(ColourableGraph<SudokuCellAddress, Integer> puzzle,
+      ColourableGraph<SudokuCellAddress, Integer> solution) {
+    SudokuTopology topology = (SudokuTopology) puzzle.getTopology();
+    for (SudokuCellAddress cell : topology.getAllNodes()) {
+      Integer given = puzzle.getColour(cell);
+      if (given != null) {
+        assertEquals(cell.toString(), given, solution.getColour(cell));
+      }
+    }
+    for (List<SudokuCellAddress> unit : topology.getUnits()) {
+      Set<Integer> seen = new HashSet<Integer>();
+      for (SudokuCellAddress cell : unit) {
+        Integer colour = solution.getColour(cell);
+        assertNotNull(cell.toString(), colour);
+        assertTrue(cell.toString(), colour.intValue() >= 1
+            && colour.intValue() <= topology.getWidth());
+        assertTrue(cell + " repeats " + colour, seen.add(colour));
+      }
+    }
+  }
+
+  private static ColourableGraph<SudokuCellAddress, Integer> read(File file) throws Exception {
+    InputStream in = new FileInputStream(file);
+    try {
+      return new GameBoardReader().read(in).getGraph();
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * @return the solutions, each written as its digits
+   */
+  private static Set<String> digits(Set<ColourableGraph<SudokuCellAddress, Integer>> solutions) {
+    Set<String> result = new HashSet<String>();
+    for (ColourableGraph<SudokuCellAddress, Integer> solution : solutions) {
+      StringBuilder digits = new StringBuilder();
+      for (SudokuCellAddress cell : solution.getTopology().getAllNodes()) {
+        digits.append(solution.getColour(cell)).append(' ');
+      }
+      result.add(digits.toString());
+    }
+    return result;
+  }
+}
@@ -0,0 +1,424 @@
+package gtf.puzzle.sudoku.cache;
+
+import gtf.math.graph.ColourableGraph;
+import gtf.puzzle.engine.AbstractSolver;
+import gtf.puzzle.engine.SolutionHandler;
+import gtf.puzzle.engine.SolverListener;
+import gtf.puzzle.engine.SolverMetrics;
+import gtf.puzzle.sudoku.graph.SudokuCellAddress;
+import gtf.puzzle.sudoku.graph.SudokuTopology;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+
+/**
+ * A solver that remembers the solutions of the puzzles it has seen,
+ * up to symmetry.
+ *
+ * Puzzles are looked up by their CanonicalForm, so a puzzle is a hit
+ * if the cache holds any relabelling, transposition or permutation
+ * of it. The solutions are kept in canonical form, and turned back
+ * to the orientation and digits of each caller's puzzle. A miss is
+ * passed on to the solver, and its solutions stored.
+ *
+ * The cache holds at most capacity puzzles, dropping the least
+ * recently used, as the NogoodStore does. An entry records whether
+ * its solutions are all there are, or only the first few: a search
+ * stopped at maxSolutions, or by its handler, answers later calls
+ * for no more than the solutions it found.
+ *
+ * Puzzles are looked up by their givens alone: colours excluded
+ * from a puzzle before solving it are not part of its key. Boards
+ * that CanonicalForm gives up on, being too large or having too few
+ * clues, go straight to the solver.
+ *
+ * The listeners and metrics are those of the solver, which only
+ * sees the misses. A cache may be shared by several threads if the
+ * solver may.
+ *
+ * @author gtf
+ */
+public class CachingSolver extends AbstractSolver<SudokuCellAddress, Integer>
+    implements SolutionCacheMXBean {
+
+  /**
+   * The default number of puzzles held.
+   */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  private final AbstractSolver<SudokuCellAddress, Integer> solver;
+
+  private final int capacity;
+
+  /**
+   * The solutions by canonical form, in access order. Guarded by
+   * itself.
+   */
+  private final Map<String, Solutions> entries;
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  private final LongAdder bypassed = new LongAdder();
+
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * The solutions of a puzzle in canonical form.
+   */
+  private static class Solutions {
+    private final List<byte[]> solutions;
+    /**
+     * True if the solutions are all the puzzle has.
+     */
+    private final boolean complete;
+    private Solutions(List<byte[]> solutions, boolean complete) {
+      this.solutions = solutions;
+      this.complete = complete;
+    }
+    /**
+     * @return true if the entry answers a search for up to limit solutions
+     */
+    private boolean answers(int limit) {
+      return complete || solutions.size() >= limit;
+    }
+  }
+
+  /**
+   * @param solver the solver for the puzzles not in the cache
+   */
+  public CachingSolver(AbstractSolver<SudokuCellAddress, Integer> solver) {
+    this(solver, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param solver the solver for the puzzles not in the cache
+   * @param capacity the most puzzles held
+   */
+  public CachingSolver(AbstractSolver<SudokuCellAddress, Integer> solver, int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("bad capacity " + capacity);
+    }
+    this.solver = solver;
+    this.capacity = capacity;
+    entries = new LinkedHashMap<String, Solutions>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      protected boolean removeEldestEntry(Map.Entry<String, Solutions> eldest) {
+        if (size() <= CachingSolver.this.capacity) {
+          return false;
+        }
+        evictions.increment();
+        return true;
+      }
+    };
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.AbstractSolver#solve(gtf.math.graph.ColourableGraph, int, gtf.puzzle.engine.SolutionHandler)
+   */
+  public int solve(ColourableGraph<SudokuCellAddress, Integer> puzzle, int maxSolutions,
+      SolutionHandler<SudokuCellAddress, Integer> handler) {
+    if (maxSolutions < 1) {
+      throw new IllegalArgumentException("bad solution limit " + maxSolutions);
+    }
+    return new Lookup(puzzle).solve(maxSolutions, handler);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.AbstractSolver#countSolutions(gtf.math.graph.ColourableGraph, int)
+   */
+  public int countSolutions(ColourableGraph<SudokuCellAddress, Integer> puzzle, int limit) {
+    if (limit < 1) {
+      throw new IllegalArgumentException("bad solution limit " + limit);
+    }
+    Lookup lookup = new Lookup(puzzle);
+    if (lookup.form == null) {
+      bypassed.increment();
+      return solver.countSolutions(puzzle, limit);
+    }
+    Solutions entry = lookup.find(limit);
+    if (entry != null) {
+      return Math.min(entry.solutions.size(), limit);
+    }
+    // solved rather than counted, so that the solutions can be kept
+    return lookup.miss(limit, null);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.AbstractSolver#addListener(gtf.puzzle.engine.SolverListener)
+   */
+  public void addListener(SolverListener<SudokuCellAddress, Integer> listener) {
+    solver.addListener(listener);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.AbstractSolver#removeListener(gtf.puzzle.engine.SolverListener)
+   */
+  public void removeListener(SolverListener<SudokuCellAddress, Integer> listener) {
+    solver.removeListener(listener);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.AbstractSolver#getSteps()
+   */
+  public int getSteps() {
+    return solver.getSteps();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.AbstractSolver#getMetrics()
+   */
+  public SolverMetrics getMetrics() {
+    return solver.getMetrics();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.sudoku.cache.SolutionCacheMXBean#getHits()
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.sudoku.cache.SolutionCacheMXBean#getMisses()
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.sudoku.cache.SolutionCacheMXBean#getBypassed()
+   */
+  public long getBypassed() {
+    return bypassed.sum();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.sudoku.cache.SolutionCacheMXBean#getEvictions()
+   */
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.sudoku.cache.SolutionCacheMXBean#getHitRatio()
+   */
+  public double getHitRatio() {
+    long h = hits.sum();
+    long lookups = h + misses.sum();
+    return (lookups == 0) ? 0.0 : (double) h / lookups;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.sudoku.cache.SolutionCacheMXBean#getSize()
+   */
+  public int getSize() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.sudoku.cache.SolutionCacheMXBean#getCapacity()
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.sudoku.cache.SolutionCacheMXBean#clear()
+   */
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.sudoku.cache.SolutionCacheMXBean#reset()
+   */
+  public void reset() {
+    hits.reset();
+    misses.reset();
+    bypassed.reset();
+    evictions.reset();
+  }
+
+  /**
+   * Registers the cache with the platform MBean server.
+   *
+   * @param name the name of the cache, unique among those registered
+   * @return the name it was registered under
+   * @throws JMException if it could not be registered
+   */
+  public ObjectName registerMBean(String name) throws JMException {
+    ObjectName objectName = new ObjectName("gtf.puzzle.sudoku.cache:type=SolutionCache,name="
+        + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    return objectName;
+  }
+
+  /**
+   * @return the counts of the cache as a JSON object
+   */
+  public String toJson() {
+    StringBuffer sb = new StringBuffer();
+    sb.append("{\"hits\":").append(getHits());
+    sb.append(",\"misses\":").append(getMisses());
+    sb.append(",\"bypassed\":").append(getBypassed());
+    sb.append(",\"evictions\":").append(getEvictions());
+    sb.append(",\"size\":").append(getSize());
+    sb.append(",\"capacity\":").append(capacity);
+    sb.append('}');
+    return sb.toString();
+  }
+
+  /**
+   * A puzzle being looked up: its cells and its canonical form.
+   */
+  private class Lookup {
+
+    private final ColourableGraph<SudokuCellAddress, Integer> puzzle;
+
+    private final SudokuCellAddress[] cells;
+
+    /**
+     * The canonical form of the puzzle, or null if it has none.
+     */
+    private final CanonicalForm form;
+
+    private final String key;
+
+    private Lookup(ColourableGraph<SudokuCellAddress, Integer> puzzle) {
+      if (!(puzzle.getTopology() instanceof SudokuTopology)) {
+        throw new IllegalArgumentException("not a Sudoku board");
+      }
+      this.puzzle = puzzle;
+      SudokuTopology topology = (SudokuTopology) puzzle.getTopology();
+      int width = topology.getWidth();
+      cells = new SudokuCellAddress[width * width];
+      for (int i = 0; i < cells.length; i++) {
+        cells[i] = topology.node(i);
+      }
+      form = CanonicalForm.of(digits(puzzle), topology.getZoneHeight(),
+          topology.getZoneWidth());
+      key = (form == null) ? null : form.getKey();
+    }
+
+    private byte[] digits(ColourableGraph<SudokuCellAddress, Integer> board) {
+      byte[] result = new byte[cells.length];
+      for (int i = 0; i < cells.length; i++) {
+        Integer colour = board.getColour(cells[i]);
+        result[i] = (colour == null) ? 0 : colour.byteValue();
+      }
+      return result;
+    }
+
+    /**
+     * @return the entry of the puzzle if it answers a search for up
+     * to limit solutions, counting a hit; null otherwise
+     */
+    private Solutions find(int limit) {
+      Solutions entry;
+      synchronized (entries) {
+        entry = entries.get(key);
+      }
+      if (entry == null || !entry.answers(limit)) {
+        return null;
+      }
+      hits.increment();
+      return entry;
+    }
+
+    private int solve(int maxSolutions, SolutionHandler<SudokuCellAddress, Integer> handler) {
+      if (form == null) {
+        bypassed.increment();
+        return solver.solve(puzzle, maxSolutions, handler);
+      }
+      Solutions entry = find(maxSolutions);
+      if (entry == null) {
+        return miss(maxSolutions, handler);
+      }
+      int found = 0;
+      for (byte[] canonical : entry.solutions) {
+        if (found == maxSolutions) {
+          break;
+        }
+        byte[] digits = form.fromCanonical(canonical);
+        ColourableGraph<SudokuCellAddress, Integer> solution = puzzle.copyOf();
+        for (int i = 0; i < cells.length; i++) {
+          if (solution.getColour(cells[i]) == null) {
+            solution.setColour(cells[i], Integer.valueOf(digits[i]));
+          }
+        }
+        found++;
+        if (!handler.handleSolution(solution)) {
+          break;
+        }
+      }
+      return found;
+    }
+
+    /**
+     * Passes the puzzle on to the solver, and stores its solutions.
+     *
+     * @param handler the caller's handler, or null to only count
+     * @return the number of solutions found
+     */
+    private int miss(int maxSolutions, final SolutionHandler<SudokuCellAddress, Integer> handler) {
+      misses.increment();
+      final List<byte[]> solutions = new ArrayList<byte[]>();
+      final boolean[] stopped = new boolean[1];
+      int found = solver.solve(puzzle, maxSolutions,
+          new SolutionHandler<SudokuCellAddress, Integer>() {
+            public boolean handleSolution(ColourableGraph<SudokuCellAddress, Integer> solution) {
+              solutions.add(form.toCanonical(digits(solution)));
+              if (handler != null && !handler.handleSolution(solution)) {
+                stopped[0] = true;
+                return false;
+              }
+              return true;
+            }
+
+            public boolean isCancelled() {
+              return handler != null && handler.isCancelled();
+            }
+          });
+      Solutions entry = new Solutions(Collections.unmodifiableList(solutions),
+          !stopped[0] && found < maxSolutions);
+      synchronized (entries) {
+        Solutions old = entries.get(key);
+        if (old == null || (!old.complete && old.solutions.size() < solutions.size())) {
+          entries.put(key, entry);
+        }
+      }
+      return found;
+    }
+  }
+}
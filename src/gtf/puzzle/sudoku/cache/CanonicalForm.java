@@ -0,0 +1,535 @@
+package gtf.puzzle.sudoku.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * The canonical form of a Sudoku board: the representative of all
+ * the boards that are the same puzzle up to symmetry.
+ *
+ * Two boards have the same canonical form if one can be turned into
+ * the other by relabelling the digits, permuting the bands of rows
+ * and the rows within each band, permuting the stacks of columns and
+ * the columns within each stack, and transposing (when the zones are
+ * square). They then have the same number of solutions, and the
+ * solutions of one are those of the other under the same symmetry.
+ *
+ * The canonical form is the least of all these variants, read row
+ * by row, with the digits labelled in their order of first appearance
+ * and blanks ranked after every digit. It is found row by row,
+ * keeping every way of building the least rows so far. The first
+ * row depends only on where its clues are, so the rows that can
+ * come first are picked by their number of clues in each stack, and
+ * only the arrangements of the columns that pack those clues to the
+ * left are kept. Each following row is tried with each of these
+ * arrangements, keeping those that give the least row. Ranking
+ * blanks last brings the rows with the most clues first, which soon
+ * leaves few arrangements to follow: a few hundred for the usual
+ * puzzles, which take well under a millisecond. Boards with full
+ * rows keep every arrangement of the columns for the first row,
+ * 23328 of them on a 9x9, and take tens of milliseconds.
+ *
+ * The arrangements of the columns are listed for the first row, so
+ * only boards with few of them can be put in canonical form: up to
+ * 9x9, or 8x8 with zones 2 high and 4 wide. Boards with few clues
+ * leave many rows and arrangements alike, and the ways of building
+ * the least rows multiply: millions of them, and seconds, on an
+ * empty 9x9. So boards with fewer clues than digits, which always
+ * have several solutions, are not put in canonical form, nor are
+ * those that would have more than MAX_TRIED rows tried for any row.
+ * The number tried is the same for every variant of a board, so
+ * either all of them are put in canonical form, or none.
+ *
+ * @author gtf
+ */
+public final class CanonicalForm {
+
+  /**
+   * The most arrangements of the columns tried.
+   */
+  public static final int MAX_ARRANGEMENTS = 5000;
+
+  /**
+   * The most rows tried for any row of the canonical form: the ways
+   * of building the rows before it, times the rows that may come next.
+   */
+  public static final int MAX_TRIED = 50000;
+
+  private final int width;
+
+  private final byte[] key;
+
+  private final boolean transposed;
+
+  /**
+   * The row of the (transposed) board that each canonical row comes from.
+   */
+  private final int[] rows;
+
+  /**
+   * The column of the (transposed) board that each canonical column
+   * comes from.
+   */
+  private final int[] cols;
+
+  /**
+   * The canonical label of each digit, indexed by digit.
+   */
+  private final byte[] labels;
+
+  private CanonicalForm(int width, byte[] key, boolean transposed, int[] rows, int[] cols,
+      byte[] labels) {
+    this.width = width;
+    this.key = key;
+    this.transposed = transposed;
+    this.rows = rows;
+    this.cols = cols;
+    this.labels = labels;
+  }
+
+  /**
+   * Puts a board in canonical form.
+   *
+   * @param digits the value of each cell, indexed by row * width + col;
+   * 0 for an empty cell
+   * @param hsize the height of a zone
+   * @param wsize the width of a zone
+   * @return the canonical form, or null if the board has too many
+   * arrangements of its columns, fewer clues than digits, or too
+   * many ways of building its least rows to try
+   */
+  public static CanonicalForm of(byte[] digits, int hsize, int wsize) {
+    int width = hsize * wsize;
+    if (digits.length != width * width) {
+      throw new IllegalArgumentException("bad number of cells " + digits.length);
+    }
+    if (arrangements(hsize, wsize) > MAX_ARRANGEMENTS
+        || arrangements(wsize, hsize) > MAX_ARRANGEMENTS
+        || countClues(digits) < width) {
+      return null;
+    }
+    Search search = new Search(hsize, wsize);
+    search.start(digits, false);
+    if (hsize == wsize) {
+      search.start(transpose(digits, width), true);
+    }
+    return search.finish();
+  }
+
+  /**
+   * @return the number of arrangements of the columns of a board
+   * with zones hsize high and wsize wide
+   */
+  private static double arrangements(int hsize, int wsize) {
+    return factorial(hsize) * Math.pow(factorial(wsize), hsize);
+  }
+
+  private static int countClues(byte[] digits) {
+    int result = 0;
+    for (byte digit : digits) {
+      if (digit != 0) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  private static double factorial(int n) {
+    double result = 1;
+    for (int i = 2; i <= n; i++) {
+      result *= i;
+    }
+    return result;
+  }
+
+  private static byte[] transpose(byte[] digits, int width) {
+    byte[] result = new byte[digits.length];
+    for (int row = 0; row < width; row++) {
+      for (int col = 0; col < width; col++) {
+        result[col * width + row] = digits[row * width + col];
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the canonical board, as a key for maps: one character
+   * per cell, 0 for an empty cell
+   */
+  public String getKey() {
+    char[] chars = new char[key.length];
+    for (int i = 0; i < key.length; i++) {
+      chars[i] = (char) key[i];
+    }
+    return new String(chars);
+  }
+
+  /**
+   * Applies the symmetry that puts the board in canonical form to
+   * another board of the same size, typically a solution.
+   *
+   * @param digits the value of each cell, indexed by row * width + col
+   * @return the same board under the symmetry
+   */
+  public byte[] toCanonical(byte[] digits) {
+    byte[] board = transposed ? transpose(digits, width) : digits;
+    byte[] result = new byte[board.length];
+    for (int row = 0; row < width; row++) {
+      for (int col = 0; col < width; col++) {
+        result[row * width + col] = labels[board[rows[row] * width + cols[col]]];
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Undoes the symmetry that puts the board in canonical form.
+   *
+   * @param digits a board in canonical form, typically a solution
+   * @return the board in the orientation and labelling of the board
+   * that was put in canonical form
+   */
+  public byte[] fromCanonical(byte[] digits) {
+    byte[] digitOf = new byte[width + 1];
+    for (int digit = 0; digit <= width; digit++) {
+      digitOf[labels[digit]] = (byte) digit;
+    }
+    byte[] board = new byte[digits.length];
+    for (int row = 0; row < width; row++) {
+      for (int col = 0; col < width; col++) {
+        board[rows[row] * width + cols[col]] = digitOf[digits[row * width + col]];
+      }
+    }
+    return transposed ? transpose(board, width) : board;
+  }
+
+  /**
+   * A way of building the least board so far: the rows chosen, the
+   * arrangement of the columns, and the labels given. The arrays
+   * are shared, and never changed once the state is made. Until the
+   * first row is arranged, only the rows are set.
+   */
+  private static class State {
+    private final byte[] board;
+    private final boolean transposed;
+    private final int[] cols;
+    private final int[] rows;
+    private final byte[] labels;
+    private final int next;
+    /**
+     * The rows chosen, as a bit mask.
+     */
+    private final int used;
+    private State(byte[] board, boolean transposed, int[] cols, int[] rows, byte[] labels,
+        int next, int used) {
+      this.board = board;
+      this.transposed = transposed;
+      this.cols = cols;
+      this.rows = rows;
+      this.labels = labels;
+      this.next = next;
+      this.used = used;
+    }
+  }
+
+  /**
+   * The search for the least board, one row at a time.
+   */
+  private static class Search {
+
+    private final int width;
+
+    private final int hsize;
+
+    private final int wsize;
+
+    private List<State> states = new ArrayList<State>();
+
+    /**
+     * The clues of the least first row, as a bit mask with the first
+     * column as the highest bit.
+     */
+    private int pattern = -1;
+
+    /**
+     * The canonical board built so far.
+     */
+    private final byte[] key;
+
+    /**
+     * The least row so far, with blanks as width + 1.
+     */
+    private final int[] best;
+
+    /**
+     * The labels of the row being compared.
+     */
+    private final byte[] scratch;
+
+    private Search(int hsize, int wsize) {
+      this.width = hsize * wsize;
+      this.hsize = hsize;
+      this.wsize = wsize;
+      key = new byte[width * width];
+      best = new int[width];
+      scratch = new byte[width + 1];
+    }
+
+    /**
+     * Adds the states for the rows of a board that can give the least
+     * first row.
+     */
+    private void start(byte[] board, boolean transposed) {
+      for (int source = 0; source < width; source++) {
+        int mask = pattern(board, source);
+        if (mask < pattern) {
+          continue;
+        }
+        if (mask > pattern) {
+          states.clear();
+          pattern = mask;
+        }
+        int[] rows = new int[width];
+        rows[0] = source;
+        states.add(new State(board, transposed, null, rows, null, 1, 1 << source));
+      }
+    }
+
+    /**
+     * Whatever the arrangement of the columns, the first row has its
+     * digits labelled 1, 2, 3... in order, so it is only its clues
+     * that count. The least first row a row can give has the stacks
+     * with the most clues first, and the clues first in each stack.
+     *
+     * @return the clues of the least first row the row can give, as
+     * a bit mask with the first column as the highest bit
+     */
+    private int pattern(byte[] board, int source) {
+      int[] counts = new int[hsize];
+      for (int col = 0; col < width; col++) {
+        if (board[source * width + col] != 0) {
+          counts[col / wsize]++;
+        }
+      }
+      Arrays.sort(counts);
+      int mask = 0;
+      for (int stack = hsize - 1; stack >= 0; stack--) {
+        for (int i = 0; i < wsize; i++) {
+          mask = (mask << 1) | ((i < counts[stack]) ? 1 : 0);
+        }
+      }
+      return mask;
+    }
+
+    /**
+     * Keeps, for each first row, the arrangements of the columns that
+     * give the least pattern of clues: the stacks in order of their
+     * number of clues, and the clues first in each stack.
+     */
+    private void arrangeFirstRow() {
+      List<int[]> permutations = new ArrayList<int[]>();
+      permute(new int[wsize], 0, 0, permutations);
+      List<State> kept = new ArrayList<State>();
+      for (State state : states) {
+        int base = state.rows[0] * width;
+        int[] counts = new int[hsize];
+        List<List<int[]>> orders = new ArrayList<List<int[]>>(hsize);
+        for (int stack = 0; stack < hsize; stack++) {
+          List<int[]> packed = new ArrayList<int[]>();
+          for (int[] order : permutations) {
+            boolean blank = false;
+            boolean cluesFirst = true;
+            for (int i = 0; i < wsize; i++) {
+              boolean clue = state.board[base + stack * wsize + order[i]] != 0;
+              cluesFirst &= !(clue && blank);
+              blank |= !clue;
+            }
+            if (cluesFirst) {
+              packed.add(order);
+            }
+          }
+          for (int i = 0; i < wsize; i++) {
+            if (state.board[base + stack * wsize + i] != 0) {
+              counts[stack]++;
+            }
+          }
+          orders.add(packed);
+        }
+        int[] wanted = counts.clone();
+        Arrays.sort(wanted);
+        arrangeStacks(state, counts, wanted, orders, new int[width], 0, 0, kept);
+      }
+      states = kept;
+      int label = 1;
+      for (int col = 0; col < width; col++) {
+        key[col] = (byte) ((((pattern >>> (width - 1 - col)) & 1) != 0) ? label++ : 0);
+      }
+    }
+
+    /**
+     * Lists the permutations of 0 to wsize - 1.
+     */
+    private void permute(int[] order, int i, int used, List<int[]> result) {
+      if (i == wsize) {
+        result.add(order.clone());
+        return;
+      }
+      for (int c = 0; c < wsize; c++) {
+        if ((used & (1 << c)) == 0) {
+          order[i] = c;
+          permute(order, i + 1, used | (1 << c), result);
+        }
+      }
+    }
+
+    /**
+     * Places the stacks with the most clues first, each with its
+     * columns in one of the orders given, and adds a state for each
+     * arrangement.
+     *
+     * @param wanted the numbers of clues of the stacks, in increasing
+     * order, so that the stack placed at position p must have
+     * wanted[hsize - 1 - p]
+     */
+    private void arrangeStacks(State state, int[] counts, int[] wanted,
+        List<List<int[]>> orders, int[] cols, int position, int used, List<State> kept) {
+      if (position == hsize) {
+        byte[] labels = new byte[width + 1];
+        int next = 1;
+        int base = state.rows[0] * width;
+        for (int col = 0; col < width; col++) {
+          int digit = state.board[base + cols[col]];
+          if (digit != 0) {
+            labels[digit] = (byte) next++;
+          }
+        }
+        kept.add(new State(state.board, state.transposed, cols.clone(), state.rows, labels,
+            next, state.used));
+        return;
+      }
+      for (int stack = 0; stack < hsize; stack++) {
+        if ((used & (1 << stack)) == 0 && counts[stack] == wanted[hsize - 1 - position]) {
+          for (int[] order : orders.get(stack)) {
+            for (int i = 0; i < wsize; i++) {
+              cols[position * wsize + i] = stack * wsize + order[i];
+            }
+            arrangeStacks(state, counts, wanted, orders, cols, position + 1,
+                used | (1 << stack), kept);
+          }
+        }
+      }
+    }
+
+    /**
+     * Chooses every row in turn, keeping the states that give the
+     * least row.
+     *
+     * @return the canonical form, or null if more than MAX_TRIED
+     * rows would be tried for any row
+     */
+    private CanonicalForm finish() {
+      arrangeFirstRow();
+      for (int row = 1; row < width; row++) {
+        // every state has the same number of rows that may come next
+        if ((long) states.size() * Integer.bitCount(candidates(states.get(0), row)) > MAX_TRIED) {
+          return null;
+        }
+        List<State> kept = new ArrayList<State>();
+        for (State state : states) {
+          int candidates = candidates(state, row);
+          for (int source = 0; candidates != 0; source++, candidates >>>= 1) {
+            if ((candidates & 1) == 0) {
+              continue;
+            }
+            int next = compare(state, source, kept.isEmpty());
+            if (next < 0) {
+              continue; // greater than the least row
+            }
+            if (next > width + 1) {
+              kept.clear(); // less than the least row
+              next -= width + 2;
+            }
+            int[] rows = state.rows.clone();
+            rows[row] = source;
+            kept.add(new State(state.board, state.transposed, state.cols, rows,
+                scratch.clone(), next, state.used | (1 << source)));
+          }
+        }
+        states = kept;
+        for (int col = 0; col < width; col++) {
+          key[row * width + col] = (byte) ((best[col] > width) ? 0 : best[col]);
+        }
+      }
+      State state = states.get(0);
+      // the digits not on the board take the labels left, in order
+      byte[] labels = state.labels.clone();
+      int next = state.next;
+      for (int digit = 1; digit <= width; digit++) {
+        if (labels[digit] == 0) {
+          labels[digit] = (byte) next++;
+        }
+      }
+      return new CanonicalForm(width, key, state.transposed, state.rows, state.cols, labels);
+    }
+
+    /**
+     * @return the rows that may come next, as a bit mask: any row of
+     * a band not yet used if a band is to be started, or else the
+     * rows left in the current band
+     */
+    private int candidates(State state, int row) {
+      int band = (1 << hsize) - 1;
+      if (row % hsize != 0) {
+        return (band << (state.rows[row - 1] / hsize * hsize)) & ~state.used;
+      }
+      int result = 0;
+      for (int first = 0; first < width; first += hsize) {
+        if ((state.used & (band << first)) == 0) {
+          result |= band << first;
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Compares a row of a state with the least row so far, labelling
+     * its digits in the scratch labels, and replaces the least row
+     * if it is less.
+     *
+     * @param first true if there is no least row yet
+     * @return -1 if the row is greater; the next label if it is
+     * equal; the next label plus width + 2 if it is less
+     */
+    private int compare(State state, int source, boolean first) {
+      byte[] labels = scratch;
+      System.arraycopy(state.labels, 0, labels, 0, labels.length);
+      int next = state.next;
+      boolean less = first;
+      int base = source * width;
+      for (int col = 0; col < width; col++) {
+        int digit = state.board[base + state.cols[col]];
+        int value;
+        if (digit == 0) {
+          value = width + 1;
+        } else {
+          if (labels[digit] == 0) {
+            labels[digit] = (byte) next++;
+          }
+          value = labels[digit];
+        }
+        if (!less) {
+          if (value > best[col]) {
+            return -1;
+          }
+          less = value < best[col];
+        }
+        if (less) {
+          best[col] = value;
+        }
+      }
+      return less ? next + width + 2 : next;
+    }
+  }
+}
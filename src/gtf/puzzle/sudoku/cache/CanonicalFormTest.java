@@ -0,0 +1,165 @@
+package gtf.puzzle.sudoku.cache;
+
+import gtf.math.graph.ColourableGraph;
+import gtf.puzzle.sudoku.graph.SudokuCellAddress;
+import gtf.puzzle.sudoku.graph.SudokuTopology;
+import gtf.puzzle.sudoku.io.GameBoardReader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Checks that the canonical form is the same for every disguise of
+ * a board, and that its symmetry can be undone.
+ *
+ * The boards are read from the boards directory, so the tests must
+ * be run from the top of the project.
+ *
+ * @author gtf
+ */
+public class CanonicalFormTest extends TestCase {
+
+  /**
+   * The number of disguises tried for each board.
+   */
+  private static final int VARIANTS = 20;
+
+  public CanonicalFormTest(String name) {
+    super(name);
+  }
+
+  public void testBoardsAndTheirVariants() throws Exception {
+    File[] files = new File("boards").listFiles();
+    assertNotNull("no boards directory", files);
+    Arrays.sort(files);
+    Random random = new Random(20);
+    int boards = 0;
+    for (File file : files) {
+      if (!file.getName().endsWith(".gb")) {
+        continue;
+      }
+      ColourableGraph<SudokuCellAddress, Integer> graph = read(file);
+      SudokuTopology topology = (SudokuTopology) graph.getTopology();
+      int hsize = topology.getZoneHeight();
+      int wsize = topology.getZoneWidth();
+      byte[] digits = digits(graph);
+      CanonicalForm form = CanonicalForm.of(digits, hsize, wsize);
+      for (int i = 0; i <= VARIANTS; i++) {
+        byte[] variant = (i == 0) ? digits : disguise(digits, hsize, wsize, random);
+        String name = file.getName() + ", variant " + i;
+        CanonicalForm other = CanonicalForm.of(variant, hsize, wsize);
+        if (form == null) {
+          assertNull(name, other);
+          continue;
+        }
+        assertNotNull(name, other);
+        assertEquals(name, Arrays.toString(bytes(form.getKey())),
+            Arrays.toString(bytes(other.getKey())));
+        assertTrue(name, Arrays.equals(variant, other.fromCanonical(other.toCanonical(variant))));
+        assertTrue(name, Arrays.equals(variant, other.fromCanonical(bytes(other.getKey()))));
+      }
+      boards++;
+    }
+    assertTrue("no boards read", boards > 0);
+  }
+
+  /**
+   * Boards with fewer clues than digits are not put in canonical
+   * form, since that would take longer than solving them.
+   */
+  public void testFewClues() {
+    byte[] digits = new byte[81];
+    assertNull(CanonicalForm.of(digits, 3, 3));
+    for (int i = 0; i < 8; i++) {
+      digits[i * 10] = (byte) (i + 1);
+    }
+    assertNull(CanonicalForm.of(digits, 3, 3));
+    digits[80] = 9;
+    assertNotNull(CanonicalForm.of(digits, 3, 3));
+  }
+
+  /**
+   * @return the board with its digits relabelled, its bands, stacks,
+   * and the rows and columns within them permuted, and transposed
+   * half of the time if its zones are square
+   */
+  private static byte[] disguise(byte[] digits, int hsize, int wsize, Random random) {
+    int width = hsize * wsize;
+    int[] labels = shuffle(width, random);
+    int[] rows = shuffleLines(hsize, wsize, random);
+    int[] cols = shuffleLines(wsize, hsize, random);
+    boolean transpose = hsize == wsize && random.nextBoolean();
+    byte[] result = new byte[digits.length];
+    for (int row = 0; row < width; row++) {
+      for (int col = 0; col < width; col++) {
+        int digit = digits[rows[row] * width + cols[col]];
+        int cell = transpose ? col * width + row : row * width + col;
+        result[cell] = (byte) ((digit == 0) ? 0 : labels[digit - 1] + 1);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the lines of a board in an order that keeps the groups
+   * of size lines together
+   */
+  private static int[] shuffleLines(int size, int groups, Random random) {
+    int[] result = new int[size * groups];
+    int[] order = shuffle(groups, random);
+    for (int group = 0; group < groups; group++) {
+      int[] lines = shuffle(size, random);
+      for (int i = 0; i < size; i++) {
+        result[group * size + i] = order[group] * size + lines[i];
+      }
+    }
+    return result;
+  }
+
+  private static int[] shuffle(int n, Random random) {
+    int[] result = new int[n];
+    for (int i = 0; i < n; i++) {
+      result[i] = i;
+    }
+    for (int i = n - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int t = result[i];
+      result[i] = result[j];
+      result[j] = t;
+    }
+    return result;
+  }
+
+  private static ColourableGraph<SudokuCellAddress, Integer> read(File file) throws Exception {
+    InputStream in = new FileInputStream(file);
+    try {
+      return new GameBoardReader().read(in).getGraph();
+    } finally {
+      in.close();
+    }
+  }
+
+  private static byte[] digits(ColourableGraph<SudokuCellAddress, Integer> graph) {
+    SudokuTopology topology = (SudokuTopology) graph.getTopology();
+    byte[] result = new byte[topology.getNodeCount()];
+    for (int i = 0; i < result.length; i++) {
+      Integer colour = graph.getColour(topology.node(i));
+      result[i] = (colour == null) ? 0 : colour.byteValue();
+    }
+    return result;
+  }
+
+  private static byte[] bytes(String key) {
+    byte[] result = new byte[key.length()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = (byte) key.charAt(i);
+    }
+    return result;
+  }
+}
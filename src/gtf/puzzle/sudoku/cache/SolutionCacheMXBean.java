@@ -0,0 +1,59 @@
+package gtf.puzzle.sudoku.cache;
+
+
+/**
+ * The management interface of CachingSolver, for monitoring its
+ * cache through JMX.
+ *
+ * @author gtf
+ */
+public interface SolutionCacheMXBean {
+
+  /**
+   * @return the number of puzzles answered from the cache
+   */
+  long getHits();
+
+  /**
+   * @return the number of puzzles passed on to the solver
+   */
+  long getMisses();
+
+  /**
+   * @return the number of puzzles passed on to the solver without
+   * looking in the cache, being too large, or having too few clues,
+   * to put in canonical form
+   */
+  long getBypassed();
+
+  /**
+   * @return the number of entries dropped to make room for others
+   */
+  long getEvictions();
+
+  /**
+   * @return the share of the puzzles looked up that were hits, from
+   * 0 to 1
+   */
+  double getHitRatio();
+
+  /**
+   * @return the number of puzzles in the cache
+   */
+  int getSize();
+
+  /**
+   * @return the most puzzles held in the cache
+   */
+  int getCapacity();
+
+  /**
+   * Empties the cache. The counts are kept.
+   */
+  void clear();
+
+  /**
+   * Sets every count back to zero.
+   */
+  void reset();
+}
@@ -0,0 +1,367 @@
+package gtf.puzzle.sudoku.dlx;
+
+import gtf.math.graph.ColourableGraph;
+import gtf.puzzle.engine.AbstractSolver;
+import gtf.puzzle.engine.SolutionHandler;
+import gtf.puzzle.engine.SolverMetrics;
+import gtf.puzzle.sudoku.graph.SudokuCellAddress;
+import gtf.puzzle.sudoku.graph.SudokuTopology;
+
+
+/**
+ * Solves Sudoku boards as an exact cover problem, with Knuth's
+ * Algorithm X on a Dancing Links matrix.
+ *
+ * Each constraint of the board is a column of the matrix: every
+ * cell holds a digit, and every row, column and zone holds each
+ * digit once. Each candidate (cell, digit) is a row covering four
+ * columns. The givens satisfy their columns up front, so only the
+ * columns left open and the candidates still possible in the empty
+ * cells are put in the matrix. The search always branches on the
+ * column with the fewest rows left.
+ *
+ * The links are kept in int arrays rather than node objects, so
+ * covering and uncovering a column does not touch the heap.
+ *
+ * Boards with two clashing givens have no solution. The puzzle
+ * must use a SudokuTopology, of any zone size.
+ *
+ * The listeners receive the same events as from the graph-colouring
+ * Solver. When there are any, a working copy of the board is kept
+ * in step with the search so that it can be passed to them; it is
+ * only valid for the duration of the callback, except for
+ * solutions.
+ *
+ * @author gtf
+ */
+public class DancingLinksSolver extends AbstractSolver<SudokuCellAddress, Integer> {
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.AbstractSolver#solve(gtf.math.graph.ColourableGraph, int, gtf.puzzle.engine.SolutionHandler)
+   */
+  public int solve(ColourableGraph<SudokuCellAddress, Integer> puzzle, int maxSolutions,
+      SolutionHandler<SudokuCellAddress, Integer> handler) {
+    Search search = new Search(puzzle, maxSolutions, handler);
+    search.run();
+    return search.found;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.puzzle.engine.AbstractSolver#countSolutions(gtf.math.graph.ColourableGraph, int)
+   */
+  public int countSolutions(ColourableGraph<SudokuCellAddress, Integer> puzzle, int limit) {
+    Search search = new Search(puzzle, limit, null);
+    search.run();
+    return search.found;
+  }
+
+  /**
+   * The matrix and state of a single call to solve().
+   */
+  private class Search {
+
+    private final ColourableGraph<SudokuCellAddress, Integer> puzzle;
+
+    private final int limit;
+
+    /**
+     * The handler for the solutions found, or null to only
+     * count them.
+     */
+    private final SolutionHandler<SudokuCellAddress, Integer> handler;
+
+    private final int width;
+
+    private final SudokuCellAddress[] cells;
+
+    /*
+     * The matrix. Index 0 is the root, the column headers follow,
+     * then the four nodes of each candidate row in turn.
+     */
+    private int[] left;
+    private int[] right;
+    private int[] up;
+    private int[] down;
+    private int[] column;
+
+    /**
+     * The candidate of each node, as cell * width + digit - 1.
+     */
+    private int[] candidate;
+
+    /**
+     * The number of rows left in each column.
+     */
+    private int[] size;
+
+    /**
+     * The candidate chosen at each depth of the search.
+     */
+    private int[] chosen;
+
+    /**
+     * The board kept in step with the search for the listeners,
+     * or null if there are none.
+     */
+    private ColourableGraph<SudokuCellAddress, Integer> working;
+
+    private int found;
+
+    private boolean stopped;
+
+    private Search(ColourableGraph<SudokuCellAddress, Integer> puzzle, int limit,
+        SolutionHandler<SudokuCellAddress, Integer> handler) {
+      if (limit < 1) {
+        throw new IllegalArgumentException("bad solution limit " + limit);
+      }
+      if (!(puzzle.getTopology() instanceof SudokuTopology)) {
+        throw new IllegalArgumentException("not a Sudoku board");
+      }
+      this.puzzle = puzzle;
+      this.limit = limit;
+      this.handler = handler;
+      SudokuTopology topology = (SudokuTopology) puzzle.getTopology();
+      width = topology.getWidth();
+      cells = new SudokuCellAddress[width * width];
+      for (int i = 0; i < cells.length; i++) {
+        cells[i] = topology.node(i);
+      }
+      found = 0;
+      stopped = false;
+    }
+
+    /**
+     * @return true once the search is to unwind, because it is done
+     * or because the handler has cancelled it
+     */
+    private boolean isStopped() {
+      if (!stopped && handler != null && handler.isCancelled()) {
+        stopped = true;
+      }
+      return stopped;
+    }
+
+    private void run() {
+      long wall = System.nanoTime();
+      long cpu = SolverMetrics.currentThreadCpuTime();
+      if (buildMatrix()) {
+        chosen = new int[cells.length];
+        working = hasListeners() ? puzzle.copyOf() : null;
+        search(0);
+      } else {
+        countDeadEnd(0);
+        if (hasListeners()) {
+          fireNoSolution(puzzle, 0);
+        }
+      }
+      countSearch(System.nanoTime() - wall, SolverMetrics.currentThreadCpuTime() - cpu);
+    }
+
+    /**
+     * Builds the matrix for the open constraints and the possible
+     * candidates of the empty cells.
+     *
+     * @return false if two givens clash
+     */
+    private boolean buildMatrix() {
+      SudokuTopology topology = (SudokuTopology) puzzle.getTopology();
+      int hsize = topology.getZoneHeight();
+      int wsize = topology.getZoneWidth();
+      int constraints = 4 * cells.length;
+      boolean[] satisfied = new boolean[constraints];
+      int[][] candidateColumns = new int[cells.length * width][];
+      int rows = 0;
+      for (int cell = 0; cell < cells.length; cell++) {
+        Integer value = puzzle.getColour(cells[cell]);
+        if (value != null) {
+          int[] columns = columnsOf(cell, digitOf(value), hsize, wsize);
+          for (int c : columns) {
+            if (satisfied[c]) {
+              return false;
+            }
+            satisfied[c] = true;
+          }
+        }
+      }
+      for (int cell = 0; cell < cells.length; cell++) {
+        if (puzzle.getColour(cells[cell]) == null) {
+          for (Integer value : puzzle.getPossibleColoursForNode(cells[cell])) {
+            int digit = digitOf(value);
+            int[] columns = columnsOf(cell, digit, hsize, wsize);
+            if (!satisfied[columns[1]] && !satisfied[columns[2]] && !satisfied[columns[3]]) {
+              candidateColumns[cell * width + digit - 1] = columns;
+              rows++;
+            }
+          }
+        }
+      }
+
+      int[] header = new int[constraints];
+      int headers = 0;
+      for (int c = 0; c < constraints; c++) {
+        header[c] = satisfied[c] ? 0 : ++headers;
+      }
+      int nodeCount = 1 + headers + 4 * rows;
+      left = new int[nodeCount];
+      right = new int[nodeCount];
+      up = new int[nodeCount];
+      down = new int[nodeCount];
+      column = new int[nodeCount];
+      candidate = new int[nodeCount];
+      size = new int[headers + 1];
+      for (int h = 0; h <= headers; h++) {
+        left[h] = (h == 0) ? headers : h - 1;
+        right[h] = (h == headers) ? 0 : h + 1;
+        up[h] = h;
+        down[h] = h;
+        column[h] = h;
+      }
+      int node = headers + 1;
+      for (int c = 0; c < candidateColumns.length; c++) {
+        int[] columns = candidateColumns[c];
+        if (columns == null) {
+          continue;
+        }
+        int first = node;
+        for (int i = 0; i < columns.length; i++, node++) {
+          int h = header[columns[i]];
+          column[node] = h;
+          candidate[node] = c;
+          up[node] = up[h];
+          down[node] = h;
+          down[up[h]] = node;
+          up[h] = node;
+          size[h]++;
+          left[node] = (i == 0) ? first + columns.length - 1 : node - 1;
+          right[node] = (i == columns.length - 1) ? first : node + 1;
+        }
+      }
+      return true;
+    }
+
+    private int digitOf(Integer value) {
+      int digit = value.intValue();
+      if (digit < 1 || digit > width) {
+        throw new IllegalArgumentException("bad colour " + value);
+      }
+      return digit;
+    }
+
+    /**
+     * @return the constraints covered by a digit in a cell
+     */
+    private int[] columnsOf(int cell, int digit, int hsize, int wsize) {
+      int row = cell / width;
+      int col = cell % width;
+      int zone = (row / hsize) * hsize + col / wsize;
+      int area = cells.length;
+      return new int[] {
+          cell,
+          area + row * width + digit - 1,
+          2 * area + col * width + digit - 1,
+          3 * area + zone * width + digit - 1 };
+    }
+
+    private void cover(int c) {
+      right[left[c]] = right[c];
+      left[right[c]] = left[c];
+      for (int i = down[c]; i != c; i = down[i]) {
+        for (int j = right[i]; j != i; j = right[j]) {
+          down[up[j]] = down[j];
+          up[down[j]] = up[j];
+          size[column[j]]--;
+        }
+      }
+    }
+
+    private void uncover(int c) {
+      for (int i = up[c]; i != c; i = up[i]) {
+        for (int j = left[i]; j != i; j = left[j]) {
+          size[column[j]]++;
+          down[up[j]] = j;
+          up[down[j]] = j;
+        }
+      }
+      right[left[c]] = c;
+      left[right[c]] = c;
+    }
+
+    private void search(int depth) {
+      if (isStopped()) {
+        return;
+      }
+      countNode(depth);
+      if (working != null) {
+        fireInvoked(working, depth);
+      }
+      if (right[0] == 0) {
+        foundSolution(depth);
+        return;
+      }
+      int best = right[0];
+      for (int c = right[best]; c != 0 && size[best] > 1; c = right[c]) {
+        if (size[c] < size[best]) {
+          best = c;
+        }
+      }
+      if (size[best] == 0) {
+        countDeadEnd(depth);
+        if (working != null) {
+          fireNoSolution(working, depth);
+        }
+        return; // no solution
+      }
+      countBranch(depth, size[best]);
+      cover(best);
+      for (int r = down[best]; r != best && !stopped; r = down[r]) {
+        countGuess();
+        int foundBefore = found;
+        chosen[depth] = candidate[r];
+        for (int j = right[r]; j != r; j = right[j]) {
+          cover(column[j]);
+        }
+        if (working != null) {
+          SudokuCellAddress cell = cells[candidate[r] / width];
+          Integer value = Integer.valueOf(candidate[r] % width + 1);
+          working.setColour(cell, value);
+          fireTriedCell(working, depth, cell, value);
+        }
+        search(depth + 1);
+        if (working != null) {
+          working.setColour(cells[candidate[r] / width], null);
+        }
+        for (int j = left[r]; j != r; j = left[j]) {
+          uncover(column[j]);
+        }
+        if (found == foundBefore) {
+          countBacktrack();
+        }
+      }
+      uncover(best);
+      incrementSteps();
+    }
+
+    private void foundSolution(int depth) {
+      found++;
+      countSolution();
+      if (found == limit) {
+        stopped = true;
+      }
+      ColourableGraph<SudokuCellAddress, Integer> solution = working;
+      if (handler != null) {
+        solution = puzzle.copyOf();
+        for (int i = 0; i < depth; i++) {
+          solution.setColour(cells[chosen[i] / width], Integer.valueOf(chosen[i] % width + 1));
+        }
+      }
+      if (solution != null) {
+        fireFoundSolution(solution, depth);
+      }
+      if (handler != null && !handler.handleSolution(solution)) {
+        stopped = true;
+      }
+    }
+  }
+}
@@ -0,0 +1,261 @@
+package gtf.puzzle.sudoku.generate;
+
+import gtf.math.graph.ColourableGraph;
+import gtf.puzzle.engine.AbstractSolver;
+import gtf.puzzle.engine.SolutionHandler;
+import gtf.puzzle.sudoku.dlx.DancingLinksSolver;
+import gtf.puzzle.sudoku.graph.SudokuBoard;
+import gtf.puzzle.sudoku.graph.SudokuCellAddress;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Generates minimal Sudoku puzzles with a unique solution.
+ *
+ * A puzzle is made in two stages:
+ * <ol>
+ * <li>A random full grid: the zones on the diagonal, which share no
+ * row or column, are filled with random permutations of the digits,
+ * and the rest of the grid is completed by the solver. The digits
+ * are then relabelled, and the bands of rows and stacks of columns
+ * shuffled, together with the rows and columns within them.</li>
+ * <li>The clues are removed one at a time in a random order, each
+ * being put back if the puzzle no longer has a unique solution.</li>
+ * </ol>
+ * A single pass of the second stage leaves a minimal puzzle: taking
+ * away any one of its clues would give it several solutions. A clue
+ * that had to be put back cannot become removable later, since taking
+ * away more clues only adds solutions.
+ *
+ * Each puzzle depends only on the seed of the generator and its own
+ * index, so a run can be repeated whatever the number of threads.
+ * The uniqueness checks, which are most of the work, are made with
+ * the Dancing Links solver, stopping at the second solution.
+ *
+ * @author gtf
+ */
+public class PuzzleGenerator {
+
+  private final int hsize;
+
+  private final int wsize;
+
+  private final int width;
+
+  private final long seed;
+
+  /**
+   * @param hsize the height of a zone
+   * @param wsize the width of a zone
+   * @param seed the seed of the puzzles
+   */
+  public PuzzleGenerator(int hsize, int wsize, long seed) {
+    if (hsize < 1 || wsize < 1) {
+      throw new IllegalArgumentException("bad zone size " + hsize + "x" + wsize);
+    }
+    this.hsize = hsize;
+    this.wsize = wsize;
+    this.width = hsize * wsize;
+    this.seed = seed;
+  }
+
+  /**
+   * Generates one puzzle.
+   *
+   * @param index the number of the puzzle
+   * @return the puzzle
+   */
+  public SudokuBoard generate(long index) {
+    return new Worker().generate(index);
+  }
+
+  /**
+   * Generates puzzles on several threads, numbered from 0 on.
+   *
+   * @param count the number of puzzles to generate
+   * @param threads the number of threads
+   * @param handler the handler for the puzzles
+   * @return the number of puzzles passed to the handler
+   * @throws InterruptedException if interrupted while waiting for the
+   * threads, which are then stopped
+   */
+  public long generate(final long count, int threads, final PuzzleHandler handler)
+      throws InterruptedException {
+    if (threads < 1) {
+      throw new IllegalArgumentException("bad number of threads " + threads);
+    }
+    final AtomicLong next = new AtomicLong();
+    final AtomicLong handled = new AtomicLong();
+    final AtomicBoolean stopped = new AtomicBoolean();
+    final RuntimeException[] failure = new RuntimeException[1];
+    List<Thread> workers = new ArrayList<Thread>(threads);
+    for (int i = 0; i < threads; i++) {
+      Thread thread = new Thread("PuzzleGenerator-worker-" + i) {
+        public void run() {
+          Worker worker = new Worker();
+          try {
+            long index = next.getAndIncrement();
+            while (index < count && !stopped.get()) {
+              SudokuBoard puzzle = worker.generate(index);
+              synchronized (handler) {
+                if (stopped.get()) {
+                  break;
+                }
+                handled.incrementAndGet();
+                if (!handler.handlePuzzle(index, puzzle)) {
+                  stopped.set(true);
+                }
+              }
+              index = next.getAndIncrement();
+            }
+          } catch (RuntimeException e) {
+            synchronized (failure) {
+              if (failure[0] == null) {
+                failure[0] = e;
+              }
+            }
+            stopped.set(true);
+          }
+        }
+      };
+      thread.setDaemon(true);
+      workers.add(thread);
+      thread.start();
+    }
+    try {
+      for (Thread thread : workers) {
+        thread.join();
+      }
+    } catch (InterruptedException e) {
+      stopped.set(true);
+      throw e;
+    }
+    synchronized (failure) {
+      if (failure[0] != null) {
+        throw failure[0];
+      }
+    }
+    return handled.get();
+  }
+
+  /**
+   * The solver and working arrays of one thread.
+   */
+  private class Worker {
+
+    private final AbstractSolver<SudokuCellAddress, Integer> solver = new DancingLinksSolver();
+
+    private final SudokuBoard board = new SudokuBoard(hsize, wsize);
+
+    private final SudokuCellAddress[] cells = new SudokuCellAddress[width * width];
+
+    private Worker() {
+      for (int i = 0; i < cells.length; i++) {
+        cells[i] = board.getTopology().node(i);
+      }
+    }
+
+    private SudokuBoard generate(long index) {
+      Random random = new Random(seed ^ (index * 0x9E3779B97F4A7C15L));
+      byte[] digits = shuffle(fullGrid(random), random);
+      int[] order = permutation(digits.length, random);
+      for (int i : order) {
+        byte clue = digits[i];
+        digits[i] = 0;
+        board.setCells(digits);
+        if (solver.countSolutions(board.getGraph(), 2) != 1) {
+          digits[i] = clue;
+        }
+      }
+      SudokuBoard puzzle = new SudokuBoard(hsize, wsize);
+      puzzle.setCells(digits);
+      return puzzle;
+    }
+
+    /**
+     * @return a full grid with random zones on the diagonal. Zones that
+     * cannot be completed, as may happen on small boards, are drawn
+     * again.
+     */
+    private byte[] fullGrid(Random random) {
+      byte[] digits = new byte[width * width];
+      final ColourableGraph<?, ?>[] solution = new ColourableGraph<?, ?>[1];
+      while (solution[0] == null) {
+        for (int zone = 0; zone < Math.min(hsize, wsize); zone++) {
+          int[] values = permutation(width, random);
+          for (int i = 0; i < width; i++) {
+            int row = zone * hsize + i / wsize;
+            int col = zone * wsize + i % wsize;
+            digits[row * width + col] = (byte) (values[i] + 1);
+          }
+        }
+        board.setCells(digits);
+        solver.solve(board.getGraph(), 1, new SolutionHandler<SudokuCellAddress, Integer>() {
+          public boolean handleSolution(ColourableGraph<SudokuCellAddress, Integer> graph) {
+            solution[0] = graph;
+            return false;
+          }
+        });
+      }
+      @SuppressWarnings("unchecked")
+      ColourableGraph<SudokuCellAddress, Integer> grid =
+          (ColourableGraph<SudokuCellAddress, Integer>) solution[0];
+      for (int i = 0; i < digits.length; i++) {
+        digits[i] = grid.getColour(cells[i]).byteValue();
+      }
+      return digits;
+    }
+
+    /**
+     * @return the grid with its digits relabelled, and its bands,
+     * stacks, rows and columns shuffled
+     */
+    private byte[] shuffle(byte[] grid, Random random) {
+      int[] labels = permutation(width, random);
+      int[] rows = lines(wsize, hsize, random);
+      int[] cols = lines(hsize, wsize, random);
+      byte[] result = new byte[grid.length];
+      for (int row = 0; row < width; row++) {
+        for (int col = 0; col < width; col++) {
+          int digit = grid[rows[row] * width + cols[col]];
+          result[row * width + col] = (byte) (labels[digit - 1] + 1);
+        }
+      }
+      return result;
+    }
+
+    /**
+     * @return a random order of lines that keeps each group of lines
+     * together, shuffling the groups and the lines within each group
+     */
+    private int[] lines(int groups, int size, Random random) {
+      int[] groupOrder = permutation(groups, random);
+      int[] result = new int[groups * size];
+      for (int group = 0; group < groups; group++) {
+        int[] lineOrder = permutation(size, random);
+        for (int line = 0; line < size; line++) {
+          result[group * size + line] = groupOrder[group] * size + lineOrder[line];
+        }
+      }
+      return result;
+    }
+  }
+
+  /**
+   * @return a random permutation of 0 to n - 1
+   */
+  private static int[] permutation(int n, Random random) {
+    int[] result = new int[n];
+    for (int i = 0; i < n; i++) {
+      int j = random.nextInt(i + 1);
+      result[i] = result[j];
+      result[j] = i;
+    }
+    return result;
+  }
+}
@@ -0,0 +1,23 @@
+package gtf.puzzle.sudoku.generate;
+
+import gtf.puzzle.sudoku.graph.SudokuBoard;
+
+
+/**
+ * Receives the puzzles made by a PuzzleGenerator.
+ *
+ * @author gtf
+ */
+public interface PuzzleHandler {
+
+  /**
+   * Handles a puzzle. Calls are made one at a time, but from any of
+   * the generator's threads, and not in order of index.
+   *
+   * @param index the number of the puzzle, which together with the
+   * seed of the generator determines it
+   * @param puzzle the puzzle, which the handler may keep
+   * @return true to carry on; false to stop generating
+   */
+  boolean handlePuzzle(long index, SudokuBoard puzzle);
+}
@@ -0,0 +1,451 @@
+package gtf.puzzle.sudoku.graph;
+
+import gtf.math.graph.ColourConstraintViolation;
+import gtf.math.graph.ColourableGraph;
+import gtf.math.graph.GraphTopology;
+import gtf.math.graph.IndexedColourableGraph;
+import gtf.math.graph.NodeIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * A colourable graph specialized for the Sudoku topology.
+ *
+ * Instead of deriving the possible values of a cell from the
+ * colours of its neighbours, it keeps the digits used in each
+ * row, column and zone as a bitmask (bit d-1 set if digit d is
+ * used). The possible values of a cell are then the complement
+ * of the union of three masks, so no hashing or boxing is needed
+ * to answer a candidate query.
+ *
+ * Digits excluded from a cell by excludeColour() are kept as a
+ * further mask per cell.
+ * 
+ * The cells are numbered as by the topology, and digit d is colour
+ * number d - 1.
+ *
+ * The constraint enforced is always that of unalike neighbours.
+ * Boards wider than MAX_WIDTH cannot be represented.
+ *
+ * @author gtf
+ */
+public class BitmaskSudokuGraph implements IndexedColourableGraph<SudokuCellAddress, Integer> {
+
+  /**
+   * The widest board whose digits fit in the bitmasks.
+   */
+  public static final int MAX_WIDTH = 64;
+
+  private final SudokuTopology topology;
+
+  private final NodeIndex<SudokuCellAddress> nodeIndex;
+
+  private final int width;
+
+  private final long allDigits;
+
+  private final List<Integer> colourList;
+
+  private final boolean checkConstraintOnSetColour;
+
+  /**
+   * The value of each cell, indexed by row * width + col.
+   * 0 if the cell is empty.
+   */
+  private final int[] values;
+
+  private final long[] rowDigits;
+
+  private final long[] colDigits;
+
+  private final long[] zoneDigits;
+
+  /**
+   * The digits excluded from each cell, indexed as values.
+   */
+  private final long[] excludedDigits;
+
+  private int filled;
+
+  /**
+   * Constructor for an empty board. The constraint is not checked
+   * when calling setColour().
+   *
+   * @param topology the topology of the board
+   */
+  public BitmaskSudokuGraph(SudokuTopology topology) {
+    this(topology, false);
+  }
+
+  /**
+   * Constructor for an empty board.
+   *
+   * @param topology the topology of the board
+   * @param checkConstraintOnSetColour whether or not to enforce the constraint
+   * when calling setColour(). If false, it is up to the caller to ensure that
+   * the colour is acceptable beforehand.
+   * @throws IllegalArgumentException if the board is wider than MAX_WIDTH
+   */
+  public BitmaskSudokuGraph(SudokuTopology topology, boolean checkConstraintOnSetColour) {
+    if (topology.getWidth() > MAX_WIDTH) {
+      throw new IllegalArgumentException("board too wide " + topology.getWidth());
+    }
+    this.topology = topology;
+    nodeIndex = NodeIndex.of(topology);
+    this.checkConstraintOnSetColour = checkConstraintOnSetColour;
+    width = topology.getWidth();
+    allDigits = (width == 64) ? -1L : (1L << width) - 1;
+    List<Integer> digitList = new ArrayList<Integer>(width);
+    for (int digit = 1; digit <= width; digit++) {
+      digitList.add(Integer.valueOf(digit));
+    }
+    colourList = Collections.unmodifiableList(digitList);
+    values = new int[topology.getNodeCount()];
+    rowDigits = new long[width];
+    colDigits = new long[width];
+    zoneDigits = new long[width];
+    excludedDigits = new long[values.length];
+    filled = 0;
+  }
+
+  /**
+   * Copy constructor. The topology is shared.
+   *
+   * @param other the graph to copy
+   */
+  private BitmaskSudokuGraph(BitmaskSudokuGraph other) {
+    topology = other.topology;
+    nodeIndex = other.nodeIndex;
+    checkConstraintOnSetColour = other.checkConstraintOnSetColour;
+    width = other.width;
+    allDigits = other.allDigits;
+    colourList = other.colourList;
+    values = other.values.clone();
+    rowDigits = other.rowDigits.clone();
+    colDigits = other.colDigits.clone();
+    zoneDigits = other.zoneDigits.clone();
+    excludedDigits = other.excludedDigits.clone();
+    filled = other.filled;
+  }
+
+  private int zoneOf(int row, int col) {
+    int hsize = topology.getZoneHeight();
+    int wsize = topology.getZoneWidth();
+    return (row / hsize) * hsize + col / wsize;
+  }
+
+  /**
+   * Gets the digits used by the neighbours of a cell, as a bitmask.
+   */
+  private long neighbourDigits(int row, int col) {
+    int value = values[row * width + col];
+    if (value == 0) {
+      return rowDigits[row] | colDigits[col] | zoneDigits[zoneOf(row, col)];
+    }
+    // The cell's own digit is in its unit masks, so the
+    // neighbours have to be examined one by one.
+    int hsize = topology.getZoneHeight();
+    int wsize = topology.getZoneWidth();
+    long result = 0;
+    for (int i = 0; i < width; i++) {
+      if (i != col) {
+        result |= digitOf(row, i);
+      }
+      if (i != row) {
+        result |= digitOf(i, col);
+      }
+    }
+    for (int i = (row / hsize) * hsize; i < (1 + row / hsize) * hsize; i++) {
+      for (int j = (col / wsize) * wsize; j < (1 + col / wsize) * wsize; j++) {
+        if (i != row && j != col) {
+          result |= digitOf(i, j);
+        }
+      }
+    }
+    return result;
+  }
+
+  private long digitOf(int row, int col) {
+    int value = values[row * width + col];
+    return (value == 0) ? 0 : 1L << (value - 1);
+  }
+
+  /**
+   * Gets the possible digits of a cell, as a bitmask.
+   */
+  private long possibleDigits(int row, int col) {
+    return ~(neighbourDigits(row, col) | excludedDigits[row * width + col]) & allDigits;
+  }
+
+  private static Collection<Integer> toColours(long digits) {
+    Collection<Integer> result = new ArrayList<Integer>(Long.bitCount(digits));
+    while (digits != 0) {
+      result.add(Integer.valueOf(Long.numberOfTrailingZeros(digits) + 1));
+      digits &= digits - 1;
+    }
+    return result;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.ColourableGraph#getTopology()
+   */
+  public GraphTopology<SudokuCellAddress> getTopology() {
+    return topology;
+  }
+
+  /**
+   * Sets the value of a cell. A null colour empties the cell.
+   *
+   * @param nodeAddress
+   * @param colour
+   * @throws IllegalArgumentException if the colour is out of range
+   * @throws ColourConstraintViolation if checkConstraintOnSetColour is
+   * true and the colour is already used by a neighbour.
+   */
+  public void setColour(SudokuCellAddress nodeAddress, Integer colour) {
+    int value = (colour == null) ? 0 : colour.intValue();
+    if (value < 0 || value > width) {
+      throw new IllegalArgumentException("bad colour " + colour);
+    }
+    setValue(nodeAddress.getRow(), nodeAddress.getColumn(), value);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedColourableGraph#setColourIndex(int, int)
+   */
+  public void setColourIndex(int node, int colour) {
+    if (colour < -1 || colour >= width) {
+      throw new IllegalArgumentException("bad colour " + colour);
+    }
+    setValue(node / width, node % width, colour + 1);
+  }
+
+  private void setValue(int row, int col, int value) {
+    int zone = zoneOf(row, col);
+    int cell = row * width + col;
+    if (checkConstraintOnSetColour && value != 0
+        && (neighbourDigits(row, col) & (1L << (value - 1))) != 0) {
+      throw new ColourConstraintViolation(this, topology.node(cell), Integer.valueOf(value));
+    }
+    int oldValue = values[cell];
+    if (oldValue != 0) {
+      long mask = ~(1L << (oldValue - 1));
+      rowDigits[row] &= mask;
+      colDigits[col] &= mask;
+      zoneDigits[zone] &= mask;
+      filled--;
+    }
+    values[cell] = value;
+    if (value != 0) {
+      long bit = 1L << (value - 1);
+      rowDigits[row] |= bit;
+      colDigits[col] |= bit;
+      zoneDigits[zone] |= bit;
+      filled++;
+    }
+  }
+
+  /**
+   * Sets the values of every cell at once, and clears the excluded
+   * colours. No cell address is created unless a value is rejected.
+   *
+   * @param digits the value of each cell, indexed by row * width + col;
+   * 0 for an empty cell
+   * @throws IllegalArgumentException if there are not as many digits
+   * as cells, or a digit is out of range
+   * @throws ColourConstraintViolation if checkConstraintOnSetColour is
+   * true and two neighbours have the same digit.
+   */
+  public void load(byte[] digits) {
+    if (digits.length != values.length) {
+      throw new IllegalArgumentException("bad number of cells " + digits.length);
+    }
+    Arrays.fill(rowDigits, 0);
+    Arrays.fill(colDigits, 0);
+    Arrays.fill(zoneDigits, 0);
+    Arrays.fill(excludedDigits, 0);
+    filled = 0;
+    for (int cell = 0; cell < values.length; cell++) {
+      int value = digits[cell];
+      if (value < 0 || value > width) {
+        throw new IllegalArgumentException("bad colour " + value);
+      }
+      values[cell] = value;
+      if (value != 0) {
+        int row = cell / width;
+        int col = cell % width;
+        int zone = zoneOf(row, col);
+        long bit = 1L << (value - 1);
+        if (checkConstraintOnSetColour
+            && ((rowDigits[row] | colDigits[col] | zoneDigits[zone]) & bit) != 0) {
+          throw new ColourConstraintViolation(this, topology.cellAt(row, col),
+              Integer.valueOf(value));
+        }
+        rowDigits[row] |= bit;
+        colDigits[col] |= bit;
+        zoneDigits[zone] |= bit;
+        filled++;
+      }
+    }
+  }
+
+  /**
+   * Gets the values of every cell at once.
+   *
+   * @param digits the array to fill with the value of each cell,
+   * indexed by row * width + col; 0 for an empty cell
+   * @throws IllegalArgumentException if there are not as many digits
+   * as cells
+   */
+  public void store(byte[] digits) {
+    if (digits.length != values.length) {
+      throw new IllegalArgumentException("bad number of cells " + digits.length);
+    }
+    for (int cell = 0; cell < values.length; cell++) {
+      digits[cell] = (byte) values[cell];
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.ColourableGraph#getNeighbourColours(java.lang.Object)
+   */
+  public Collection<Integer> getNeighbourColours(SudokuCellAddress nodeAddress) {
+    return toColours(neighbourDigits(nodeAddress.getRow(), nodeAddress.getColumn()));
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.ColourableGraph#getColour(java.lang.Object)
+   */
+  public Integer getColour(SudokuCellAddress nodeAddress) {
+    int value = values[nodeAddress.getRow() * width + nodeAddress.getColumn()];
+    return (value == 0) ? null : Integer.valueOf(value);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedColourableGraph#getColourIndex(int)
+   */
+  public int getColourIndex(int node) {
+    return values[node] - 1;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedColourableGraph#getColours()
+   */
+  public List<Integer> getColours() {
+    return colourList;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedColourableGraph#getNodeIndex()
+   */
+  public NodeIndex<SudokuCellAddress> getNodeIndex() {
+    return nodeIndex;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedColourableGraph#indexOfColour(java.lang.Object)
+   */
+  public int indexOfColour(Integer colour) {
+    int value = colour.intValue();
+    return (value < 1 || value > width) ? -1 : value - 1;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.ColourableGraph#isComplete()
+   */
+  public boolean isComplete() {
+    return filled == values.length;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.ColourableGraph#getPossibleColoursForNode(java.lang.Object)
+   */
+  public Collection<Integer> getPossibleColoursForNode(SudokuCellAddress node) {
+    return toColours(possibleDigits(node.getRow(), node.getColumn()));
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.ColourableGraph#countPossibleColoursForNode(java.lang.Object)
+   */
+  public int countPossibleColoursForNode(SudokuCellAddress node) {
+    return Long.bitCount(possibleDigits(node.getRow(), node.getColumn()));
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedColourableGraph#countPossibleColours(int)
+   */
+  public int countPossibleColours(int node) {
+    return Long.bitCount(possibleDigits(node / width, node % width));
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedColourableGraph#isPossibleColour(int, int)
+   */
+  public boolean isPossibleColour(int node, int colour) {
+    return (possibleDigits(node / width, node % width) & (1L << colour)) != 0;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.IndexedColourableGraph#hasNeighbourColour(int, int)
+   */
+  public boolean hasNeighbourColour(int node, int colour) {
+    return (neighbourDigits(node / width, node % width) & (1L << colour)) != 0;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.ColourableGraph#excludeColour(java.lang.Object, java.lang.Object)
+   */
+  public boolean excludeColour(SudokuCellAddress node, Integer colour) {
+    int cell = node.getRow() * width + node.getColumn();
+    long bit = digitBit(colour);
+    if ((excludedDigits[cell] & bit) != 0) {
+      return false;
+    }
+    excludedDigits[cell] |= bit;
+    return true;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.graph.ColourableGraph#includeColour(java.lang.Object, java.lang.Object)
+   */
+  public void includeColour(SudokuCellAddress node, Integer colour) {
+    excludedDigits[node.getRow() * width + node.getColumn()] &= ~digitBit(colour);
+  }
+
+  private long digitBit(Integer colour) {
+    int value = colour.intValue();
+    if (value < 1 || value > width) {
+      throw new IllegalArgumentException("bad colour " + colour);
+    }
+    return 1L << (value - 1);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see gtf.math.types.Copyable#copyOf()
+   */
+  public ColourableGraph<SudokuCellAddress, Integer> copyOf() {
+    return new BitmaskSudokuGraph(this);
+  }
+}
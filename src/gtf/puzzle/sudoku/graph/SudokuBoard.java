@@ -32,12 +32,30 @@ public class SudokuBoard {
    * @param size
    */
   public SudokuBoard(int hsize, int wsize) {
-    SudokuTopology topology = new SudokuTopology(hsize, wsize);
-    graph = new ColourableGraphImpl<SudokuCellAddress, Integer>(
-        topology,
-        new PaintByNumber(hsize * wsize),
-        new UnalikeNeighboursColourConstraint<SudokuCellAddress, Integer>(),
-        false);
+    this(hsize, wsize, hsize * wsize <= BitmaskSudokuGraph.MAX_WIDTH);
+  }
+
+  /**
+   * Constructor should only be used for the root board.
+   * During solving, the copyOf() method is used to avoid
+   * duplicating the graph topology setup.
+   *
+   * @param hsize the height of a zone
+   * @param wsize the width of a zone
+   * @param useBitmaskGraph if true, the board is backed by a
+   * BitmaskSudokuGraph; otherwise by the generic ColourableGraphImpl.
+   */
+  public SudokuBoard(int hsize, int wsize, boolean useBitmaskGraph) {
+    SudokuTopology topology = SudokuTopology.getInstance(hsize, wsize);
+    if (useBitmaskGraph) {
+      graph = new BitmaskSudokuGraph(topology);
+    } else {
+      graph = new ColourableGraphImpl<SudokuCellAddress, Integer>(
+          topology,
+          new PaintByNumber(hsize * wsize),
+          new UnalikeNeighboursColourConstraint<SudokuCellAddress, Integer>(),
+          false);
+    }
     formatter = new SudokuFormatter(topology);
   }
   
@@ -57,7 +75,32 @@ public class SudokuBoard {
    * @param value
    */
   public void setCell(int row, int col, Integer value) {
-    graph.setColour(new SudokuCellAddress(getTopology().getWidth(), row, col), value);   
+    graph.setColour(getTopology().cellAt(row, col), value);   
+  }
+
+  /**
+   * Sets the values of every cell at once. Any value set before
+   * is replaced, and any colour excluded before is included again.
+   *
+   * @param digits the value of each cell, indexed by row * width + col;
+   * 0 for an empty cell
+   */
+  public void setCells(byte[] digits) {
+    if (graph instanceof BitmaskSudokuGraph) {
+      ((BitmaskSudokuGraph) graph).load(digits);
+      return;
+    }
+    int width = getTopology().getWidth();
+    if (digits.length != width * width) {
+      throw new IllegalArgumentException("bad number of cells " + digits.length);
+    }
+    ((ColourableGraphImpl<SudokuCellAddress, Integer>) graph).clearExcludedColours();
+    for (int row = 0; row < width; row++) {
+      for (int col = 0; col < width; col++) {
+        int value = digits[row * width + col];
+        setCell(row, col, (value == 0) ? null : Integer.valueOf(value));
+      }
+    }
   }
 
   /**
@@ -68,7 +111,7 @@ public class SudokuBoard {
    * @return value
    */
   public Integer getValue(int row, int col) {
-    return graph.getColour(new SudokuCellAddress(getTopology().getWidth(), row, col));   
+    return graph.getColour(getTopology().cellAt(row, col));   
   }
 
   public ColourableGraph<SudokuCellAddress, Integer> getGraph() {
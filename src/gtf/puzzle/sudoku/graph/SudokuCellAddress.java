@@ -27,11 +27,11 @@ public class SudokuCellAddress {
     this.col = col;
   }
 
-  int getRow() {
+  public int getRow() {
     return row;
   }
 
-  int getColumn() {
+  public int getColumn() {
     return col;
   }
 
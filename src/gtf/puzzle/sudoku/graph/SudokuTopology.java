@@ -1,22 +1,47 @@
 package gtf.puzzle.sudoku.graph;
 
-import gtf.math.graph.GraphTopology;
+import gtf.math.graph.IndexedGraphTopology;
+import gtf.math.graph.UnitTopology;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
  * Represents the topology of the Sudoku board. Has no knowledge of
  * node values. One instance of the topology can be shared by all
- * SudokuBoard instances.
+ * SudokuBoard instances, and getInstance() returns the same one for
+ * every board of a given size.
+ * 
+ * Its units are the rows, columns and zones of the board.
+ * 
+ * The cells are numbered 0..n-1 row by row, as row * width + col.
+ * The neighbours of every cell and the cells of every unit are held
+ * by number, in flat int arrays: the neighbours of cell i are at
+ * neighbourCells[neighbourStart[i]] to neighbourCells[neighbourStart[i
+ * + 1] - 1], and unit u is at unitCells[u * width] onwards. This needs
+ * memory in proportion to the number of neighbours rather than the
+ * square of the number of cells. The numbers are those of the
+ * IndexedGraphTopology interface, and the collections of the
+ * GraphTopology interface are fixed views over these arrays, made once.
  * 
  * @author falkgeof
  */
-public class SudokuTopology implements GraphTopology<SudokuCellAddress> {
+public class SudokuTopology
+    implements UnitTopology<SudokuCellAddress>, IndexedGraphTopology<SudokuCellAddress> {
+  
+  /**
+   * The shared topologies, by zone height and width.
+   */
+  private static final ConcurrentMap<Long, SudokuTopology> instances =
+      new ConcurrentHashMap<Long, SudokuTopology>();
   
   /**
    * The "size" of the zones, which defines the size of the board.
@@ -28,11 +53,21 @@ public class SudokuTopology implements GraphTopology<SudokuCellAddress> {
    */
   private final int hsize, wsize;
   
-  private final SudokuCellAddress[][] cells;
+  private final int width;
+  
+  private final SudokuCellAddress[] cells;
+  
+  private final int[] neighbourStart;
+  
+  private final int[] neighbourCells;
+  
+  private final int[] unitCells;
   
   private final Collection<SudokuCellAddress> allNodes;
   
-  private final Map<SudokuCellAddress, Collection<SudokuCellAddress>> neighbours;
+  private final List<Collection<SudokuCellAddress>> neighbours;
+  
+  private final Collection<List<SudokuCellAddress>> units;
   
   /**
    * Constructor for square zones (standard).
@@ -44,7 +79,8 @@ public class SudokuTopology implements GraphTopology<SudokuCellAddress> {
   }
   
   /**
-   * Constructor for square or rectangular zones.
+   * Constructor for square or rectangular zones. Boards should
+   * rather share the topology from getInstance().
    * 
    * @param hsize the height of a zone
    * @param wsize the width of a zone
@@ -58,45 +94,118 @@ public class SudokuTopology implements GraphTopology<SudokuCellAddress> {
     }
     this.hsize = hsize;
     this.wsize = wsize;
-    cells = new SudokuCellAddress[getWidth()][getWidth()];
-    allNodes = new ArrayList<SudokuCellAddress>(getNodeCount());
-    neighbours = new HashMap<SudokuCellAddress, Collection<SudokuCellAddress>>(getNodeCount());
-    for (int row = 0; row < getWidth(); row++) {
-      for (int col = 0; col < getWidth(); col++) {
-        SudokuCellAddress addr = new SudokuCellAddress(getWidth(), row, col);
-        cells[row][col] = addr;
-        allNodes.add(addr);
-        neighbours.put(addr, new ArrayList<SudokuCellAddress>(getNodeCount()));
-      }
+    width = hsize * wsize;
+    int count = getNodeCount();
+    cells = new SudokuCellAddress[count];
+    for (int i = 0; i < count; i++) {
+      cells[i] = new SudokuCellAddress(width, i / width, i % width);
     }
-    for (int row = 0; row < getWidth(); row++) {
-      for (int col = 0; col < getWidth(); col++) {
-        SudokuCellAddress node = cells[row][col];
-        // add this cell as a neighbour to others in its column
-        for (int i = 0; i < getWidth(); i++) {
-          if (i != row) {
-            neighbours.get(cells[i][col]).add(node);
+    allNodes = Collections.unmodifiableList(Arrays.asList(cells));
+
+    // every cell has the same number of neighbours: the rest of its
+    // row and column, and the cells of its zone in neither
+    int degree = 2 * (width - 1) + (hsize - 1) * (wsize - 1);
+    neighbourStart = new int[count + 1];
+    neighbourCells = new int[count * degree];
+    neighbours = new ArrayList<Collection<SudokuCellAddress>>(count);
+    int k = 0;
+    for (int i = 0; i < count; i++) {
+      neighbourStart[i] = k;
+      int row = i / width;
+      int col = i % width;
+      // the neighbours in row-major order: the whole of its own row,
+      // the columns of its zone in the other rows of its band, and
+      // its own column elsewhere
+      int stack = col / wsize * wsize;
+      for (int r = 0; r < width; r++) {
+        if (r == row) {
+          for (int c = 0; c < width; c++) {
+            if (c != col) {
+              neighbourCells[k++] = r * width + c;
+            }
           }
-        }
-        // add this cell as a neighbour to others in its row
-        for (int j = 0; j < getWidth(); j++) {
-          if (j != col) {
-            neighbours.get(cells[row][j]).add(node);
+        } else if (r / hsize == row / hsize) {
+          for (int c = stack; c < stack + wsize; c++) {
+            neighbourCells[k++] = r * width + c;
           }
+        } else {
+          neighbourCells[k++] = r * width + col;
         }
-        // add this cell as a neighbour to others in its zone
-        // (except those in the same row or column were already added)
-        for (int i = (row / hsize) * hsize; i < (1 + row / hsize) * hsize; i++) {
-          if (i != row) {
-            for (int j = (col / wsize) * wsize; j < (1 + col / wsize) * wsize; j++) {
-              if (j != col) {
-                neighbours.get(cells[i][j]).add(node);
-              }
-            }
+      }
+      neighbours.add(new CellList(neighbourCells, neighbourStart[i], k - neighbourStart[i]));
+    }
+    neighbourStart[count] = k;
+
+    unitCells = new int[3 * width * width];
+    k = 0;
+    for (int row = 0; row < width; row++) {
+      for (int col = 0; col < width; col++) {
+        unitCells[k++] = row * width + col;
+      }
+    }
+    for (int col = 0; col < width; col++) {
+      for (int row = 0; row < width; row++) {
+        unitCells[k++] = row * width + col;
+      }
+    }
+    for (int zoneRow = 0; zoneRow < width; zoneRow += hsize) {
+      for (int zoneCol = 0; zoneCol < width; zoneCol += wsize) {
+        for (int row = zoneRow; row < zoneRow + hsize; row++) {
+          for (int col = zoneCol; col < zoneCol + wsize; col++) {
+            unitCells[k++] = row * width + col;
           }
         }
       }
     }
+    List<List<SudokuCellAddress>> unitList = new ArrayList<List<SudokuCellAddress>>(3 * width);
+    for (int unit = 0; unit < 3 * width; unit++) {
+      unitList.add(new CellList(unitCells, unit * width, width));
+    }
+    units = Collections.unmodifiableList(unitList);
+  }
+  
+  /**
+   * Gets the topology shared by all boards with zones of the
+   * given size, making it on first use.
+   * 
+   * @param hsize the height of a zone
+   * @param wsize the width of a zone
+   * @return the shared topology
+   */
+  public static SudokuTopology getInstance(int hsize, int wsize) {
+    Long key = Long.valueOf(((long) hsize << 32) | (wsize & 0xFFFFFFFFL));
+    SudokuTopology result = instances.get(key);
+    if (result == null) {
+      result = new SudokuTopology(hsize, wsize);
+      SudokuTopology other = instances.putIfAbsent(key, result);
+      if (other != null) {
+        result = other;
+      }
+    }
+    return result;
+  }
+  
+  /**
+   * A fixed list of the cells at a range of one of the int arrays.
+   */
+  private class CellList extends AbstractList<SudokuCellAddress> implements RandomAccess {
+    private final int[] indices;
+    private final int start;
+    private final int size;
+    private CellList(int[] indices, int start, int size) {
+      this.indices = indices;
+      this.start = start;
+      this.size = size;
+    }
+    public SudokuCellAddress get(int i) {
+      if (i < 0 || i >= size) {
+        throw new IndexOutOfBoundsException(Integer.toString(i));
+      }
+      return cells[indices[start + i]];
+    }
+    public int size() {
+      return size;
+    }
   }
   
   public int getZoneHeight() {
@@ -108,19 +217,93 @@ public class SudokuTopology implements GraphTopology<SudokuCellAddress> {
   }
   
   public int getWidth() {
-    return hsize * wsize;
+    return width;
   }
   
   public int getNodeCount() {
     return hsize * hsize * wsize * wsize;
   }
   
+  /**
+   * @param node the address of a cell of this board
+   * @return the number of the cell, row * width + col
+   */
+  public int nodeIndex(SudokuCellAddress node) {
+    int row = node.getRow();
+    int col = node.getColumn();
+    if (row >= width || col >= width || !cells[row * width + col].equals(node)) {
+      throw new IllegalArgumentException("not a cell of this board " + node);
+    }
+    return row * width + col;
+  }
+  
+  /**
+   * @param index the number of a cell, from 0 to getNodeCount() - 1
+   * @return the shared address of the cell
+   */
+  public SudokuCellAddress node(int index) {
+    return cells[index];
+  }
+  
+  /**
+   * Gets the address of a cell, without making a new one.
+   * 
+   * @param row the row of the cell
+   * @param col the column of the cell
+   * @return the shared address of the cell
+   */
+  public SudokuCellAddress cellAt(int row, int col) {
+    if (row < 0 || col < 0 || row >= width || col >= width) {
+      throw new IllegalArgumentException("[width=" + width + ",row=" + row + ",col=" + col + "]");
+    }
+    return cells[row * width + col];
+  }
+  
+  /**
+   * @param index the number of a cell
+   * @return the number of neighbours of the cell
+   */
+  public int neighbourCount(int index) {
+    return neighbourStart[index + 1] - neighbourStart[index];
+  }
+  
+  /**
+   * @param index the number of a cell
+   * @param i the position of a neighbour, from 0 to
+   * neighbourCount(index) - 1
+   * @return the number of the neighbour, in row-major order
+   */
+  public int neighbour(int index, int i) {
+    return neighbourCells[neighbourStart[index] + i];
+  }
+  
+  /**
+   * @return the number of units: the rows, then the columns, then
+   * the zones
+   */
+  public int unitCount() {
+    return 3 * width;
+  }
+  
+  /**
+   * @param unit the number of a unit
+   * @param i the position of a cell within the unit, from 0 to
+   * getWidth() - 1
+   * @return the number of the cell
+   */
+  public int unitCell(int unit, int i) {
+    return unitCells[unit * width + i];
+  }
+  
   public Collection<SudokuCellAddress> getAllNodes() {
-    return Collections.unmodifiableCollection(allNodes);
+    return allNodes;
   } 
   
   public Collection<SudokuCellAddress> getNeighbours(SudokuCellAddress nodeAddr) {
-    return Collections.unmodifiableCollection(neighbours.get(nodeAddr));
+    return neighbours.get(nodeIndex(nodeAddr));
+  }
+  
+  public Collection<List<SudokuCellAddress>> getUnits() {
+    return units;
   }
 }
-
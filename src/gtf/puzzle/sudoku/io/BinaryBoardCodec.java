@@ -0,0 +1,129 @@
+package gtf.puzzle.sudoku.io;
+
+import gtf.math.graph.ColourableGraph;
+import gtf.puzzle.sudoku.graph.BitmaskSudokuGraph;
+import gtf.puzzle.sudoku.graph.SudokuCellAddress;
+import gtf.puzzle.sudoku.graph.SudokuTopology;
+
+
+/**
+ * The binary form of a board, as read by GameBoardReader.readBinary()
+ * and written by GameBoardWriter.writeBinary().
+ *
+ * A board is a header of two bytes, the height and the width of a
+ * zone, followed by the value of each cell row by row, 0 for an
+ * empty cell. Each value takes as many bits as the widest value of
+ * the board needs: 4 bits for a standard 9x9 board, 6 bits for a
+ * 36x36 board. The values are packed most significant bit first,
+ * and the last byte is padded with zero bits. A 9x9 board takes 43
+ * bytes in all.
+ *
+ * @author gtf
+ */
+class BinaryBoardCodec {
+
+  /**
+   * The widest board that can be written.
+   */
+  static final int MAX_WIDTH = Byte.MAX_VALUE;
+
+  static final int HEADER_LENGTH = 2;
+
+  private BinaryBoardCodec() {
+  }
+
+  /**
+   * @return the number of bits taken by each cell of a board
+   */
+  static int bitsPerCell(int width) {
+    return 32 - Integer.numberOfLeadingZeros(width);
+  }
+
+  /**
+   * @return the number of bytes taken by the cells of a board,
+   * not counting the header
+   */
+  static int bodyLength(int width) {
+    return (width * width * bitsPerCell(width) + 7) / 8;
+  }
+
+  /**
+   * Gets the value of each cell of a board.
+   *
+   * @param graph the board
+   * @param digits the array to fill, indexed by row * width + col
+   */
+  static void getDigits(ColourableGraph<SudokuCellAddress, Integer> graph, byte[] digits) {
+    if (graph instanceof BitmaskSudokuGraph) {
+      ((BitmaskSudokuGraph) graph).store(digits);
+      return;
+    }
+    SudokuTopology topology = (SudokuTopology) graph.getTopology();
+    int width = topology.getWidth();
+    for (int row = 0; row < width; row++) {
+      for (int col = 0; col < width; col++) {
+        Integer value = graph.getColour(topology.cellAt(row, col));
+        digits[row * width + col] = (value == null) ? 0 : value.byteValue();
+      }
+    }
+  }
+
+  /**
+   * Packs the values of the cells.
+   *
+   * @param digits the value of each cell
+   * @param width the width of the board
+   * @param body the array to fill with bodyLength(width) bytes
+   * @param offset the index in the array of the first byte to fill
+   */
+  static void pack(byte[] digits, int width, byte[] body, int offset) {
+    int bits = bitsPerCell(width);
+    int pending = 0;
+    int pendingBits = 0;
+    int out = offset;
+    for (int i = 0; i < digits.length; i++) {
+      pending = (pending << bits) | digits[i];
+      pendingBits += bits;
+      while (pendingBits >= 8) {
+        pendingBits -= 8;
+        body[out++] = (byte) (pending >>> pendingBits);
+      }
+      pending &= (1 << pendingBits) - 1;
+    }
+    if (pendingBits > 0) {
+      body[out] = (byte) (pending << (8 - pendingBits));
+    }
+  }
+
+  /**
+   * Unpacks the values of the cells.
+   *
+   * @param body the packed values, of bodyLength(width) bytes
+   * @param width the width of the board
+   * @param digits the array to fill, of width * width values
+   * @return the index of the first value greater than the width,
+   * or -1 if there is none
+   */
+  static int unpack(byte[] body, int width, byte[] digits) {
+    int bits = bitsPerCell(width);
+    int mask = (1 << bits) - 1;
+    int pending = 0;
+    int pendingBits = 0;
+    int in = 0;
+    int bad = -1;
+    for (int i = 0; i < digits.length; i++) {
+      while (pendingBits < bits) {
+        pending = (pending << 8) | (body[in++] & 0xff);
+        pendingBits += 8;
+      }
+      pendingBits -= bits;
+      int value = (pending >>> pendingBits) & mask;
+      pending &= (1 << pendingBits) - 1;
+      if (value > width && bad < 0) {
+        bad = i;
+      }
+      digits[i] = (byte) value;
+    }
+    return bad;
+  }
+}
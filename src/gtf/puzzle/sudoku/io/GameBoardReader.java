@@ -12,43 +12,96 @@ import gtf.puzzle.sudoku.graph.SudokuBoard;
 public class GameBoardReader {
 
   public SudokuBoard read(InputStream in) throws GameBoardReaderException, IOException {
-    SudokuBoard board;
     BufferedReader reader = new BufferedReader(new InputStreamReader(in));
     try {
-      String line = reader.readLine();
-      board = createBoardByDimensionSpec(line);
-      int width = board.getTopology().getWidth();
-      int row = 0;
-      line = reader.readLine();
-      while (row < width && line != null) {
-        StringTokenizer tokenizer = new StringTokenizer(line);
-        int col = 0;
-        while (col < width && tokenizer.hasMoreTokens()) {
-          String token = tokenizer.nextToken();
-          try {
-            int value = Integer.parseInt(token);
-            if (value > 0) {
-              board.setCell(row, col, value);
-            }
-          } catch (NumberFormatException e) {
-            throw new GameBoardReaderException("Bad token", row, col, token);
-          } catch (IllegalArgumentException e) {
-            throw new GameBoardReaderException(e.getMessage(), row, col, token);
+      return read(reader.readLine(), reader);
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Reads the rows of a board, given its dimension spec. The reader
+   * is left positioned after the last row, so that further boards
+   * may be read from it.
+   *
+   * @param dimensionLine the first line of the board, or null if
+   * there is none
+   * @param reader the reader for the rows of the board
+   */
+  SudokuBoard read(String dimensionLine, BufferedReader reader)
+      throws GameBoardReaderException, IOException {
+    SudokuBoard board = createBoardByDimensionSpec(dimensionLine);
+    int width = board.getTopology().getWidth();
+    int row = 0;
+    String line = reader.readLine();
+    while (row < width && line != null) {
+      StringTokenizer tokenizer = new StringTokenizer(line);
+      int col = 0;
+      while (col < width && tokenizer.hasMoreTokens()) {
+        String token = tokenizer.nextToken();
+        try {
+          int value = Integer.parseInt(token);
+          if (value > 0) {
+            board.setCell(row, col, value);
           }
-          col++;
-        }
-        if (col < width) {
-          throw new GameBoardReaderException("Not enough columns in row", row);
+        } catch (NumberFormatException e) {
+          throw new GameBoardReaderException("Bad token", row, col, token);
+        } catch (IllegalArgumentException e) {
+          throw new GameBoardReaderException(e.getMessage(), row, col, token);
         }
-        row++;
-        line = reader.readLine();
+        col++;
       }
-      if (row < width) {
-        throw new GameBoardReaderException("Not enough rows", row);
+      if (col < width) {
+        throw new GameBoardReaderException("Not enough columns in row", row);
       }
-    } finally {
-      reader.close();
+      row++;
+      line = (row < width) ? reader.readLine() : null;
+    }
+    if (row < width) {
+      throw new GameBoardReaderException("Not enough rows", row);
+    }
+    return board;
+  }
+
+  /**
+   * Reads a board in the binary form described by BinaryBoardCodec.
+   * Boards written one after the other may be read in turn. The
+   * stream is not closed.
+   *
+   * @param in the stream
+   * @return the board, or null at the end of the stream
+   * @throws GameBoardReaderException if the board is in error, or is
+   * cut short by the end of the stream
+   * @throws IOException
+   */
+  public SudokuBoard readBinary(InputStream in) throws GameBoardReaderException, IOException {
+    int hsize = in.read();
+    if (hsize < 0) {
+      return null;
+    }
+    int wsize = in.read();
+    if (hsize == 0 || wsize <= 0 || hsize * wsize > BinaryBoardCodec.MAX_WIDTH) {
+      throw new GameBoardReaderException("Bad dimensions in binary board");
+    }
+    int width = hsize * wsize;
+    byte[] body = new byte[BinaryBoardCodec.bodyLength(width)];
+    int length = 0;
+    while (length < body.length) {
+      int count = in.read(body, length, body.length - length);
+      if (count < 0) {
+        throw new GameBoardReaderException("Binary board cut short");
+      }
+      length += count;
+    }
+    byte[] digits = new byte[width * width];
+    int bad = BinaryBoardCodec.unpack(body, width, digits);
+    if (bad >= 0) {
+      throw new GameBoardReaderException("Bad value", bad / width, bad % width,
+          Integer.toString(digits[bad]));
     }
+    SudokuBoard board = new SudokuBoard(hsize, wsize);
+    board.setCells(digits);
     return board;
   }
 
@@ -69,10 +122,11 @@ public class GameBoardReader {
         int wsize = Integer.parseInt(tokenizer.nextToken());
         board = new SudokuBoard(hsize, wsize);
       } else {
-        throw new GameBoardReaderException("Illegal number of values in dimension spec");
+        throw new GameBoardReaderException("Illegal number of values in dimension spec",
+            line.trim());
       }
     } catch (NumberFormatException e) {
-      throw new GameBoardReaderException("Bad number in dimension spec");
+      throw new GameBoardReaderException("Bad number in dimension spec", line.trim());
     } catch (IllegalArgumentException e) {
       // dimension out of range (thrown by SudokuGraph)
       throw new GameBoardReaderException(e.getMessage());
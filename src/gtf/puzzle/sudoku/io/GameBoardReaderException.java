@@ -12,6 +12,11 @@ public class GameBoardReaderException extends Exception {
     super(message);
   }
 
+  public GameBoardReaderException(String message, String token) {
+    this(message);
+    this.token = token;
+  }
+
   public GameBoardReaderException(String message, int row) {
     this(message);
     this.row = row;
@@ -1,7 +1,11 @@
 package gtf.puzzle.sudoku.io;
 
+import gtf.math.graph.ColourableGraph;
 import gtf.puzzle.sudoku.graph.SudokuBoard;
+import gtf.puzzle.sudoku.graph.SudokuCellAddress;
+import gtf.puzzle.sudoku.graph.SudokuTopology;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 
@@ -10,28 +14,92 @@ public class GameBoardWriter {
 
   private PrintWriter out;
 
+  private final OutputStream stream;
+
   public GameBoardWriter(OutputStream out) {
     this.out = new PrintWriter(out);
+    this.stream = out;
   }
 
   public void write(SudokuBoard board) {
+    try {
+      append(board);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Writes a board, leaving the stream open so that more boards may
+   * follow; PuzzleStreamReader reads them back one at a time. The
+   * stream is flushed.
+   *
+   * @param board the board
+   */
+  public void append(SudokuBoard board) {
     int hsize = board.getTopology().getZoneHeight();
     int wsize = board.getTopology().getZoneWidth();
     int width = board.getTopology().getWidth();
-    try {
-      out.println(hsize + " " + wsize);
-      for (int row = 0; row < width; row++) {
-        for (int col = 0; col < width; col++) {
-          out.print(getPrintableValue(board, row, col));
-          if (col < width - 1) {
-            out.print(" ");
-          }
+    out.println(hsize + " " + wsize);
+    for (int row = 0; row < width; row++) {
+      for (int col = 0; col < width; col++) {
+        out.print(getPrintableValue(board, row, col));
+        if (col < width - 1) {
+          out.print(" ");
         }
-        out.println();
       }
-    } finally {
-      out.close();
+      out.println();
+    }
+    out.flush();
+  }
+
+  /**
+   * Flushes the stream, and tells whether writing a board with
+   * write() or append() has failed, as they report no exceptions.
+   *
+   * @return true if an error has occurred
+   */
+  public boolean checkError() {
+    return out.checkError();
+  }
+
+  /**
+   * Writes a board in the binary form described by BinaryBoardCodec.
+   * Any number of boards may be written one after the other. The
+   * stream is flushed, but not closed.
+   *
+   * @param board the board
+   * @throws IOException
+   */
+  public void writeBinary(SudokuBoard board) throws IOException {
+    writeBinary(board.getGraph());
+  }
+
+  /**
+   * Writes a board, typically a solution, in the binary form described
+   * by BinaryBoardCodec. The stream is flushed, but not closed.
+   *
+   * @param graph the board
+   * @throws IOException
+   * @throws IllegalArgumentException if the board is too wide for the
+   * binary form
+   */
+  public void writeBinary(ColourableGraph<SudokuCellAddress, Integer> graph)
+      throws IOException {
+    SudokuTopology topology = (SudokuTopology) graph.getTopology();
+    int width = topology.getWidth();
+    if (width > BinaryBoardCodec.MAX_WIDTH || topology.getZoneHeight() > 255
+        || topology.getZoneWidth() > 255) {
+      throw new IllegalArgumentException("board too wide " + width);
     }
+    byte[] digits = new byte[width * width];
+    BinaryBoardCodec.getDigits(graph, digits);
+    byte[] record = new byte[BinaryBoardCodec.HEADER_LENGTH + BinaryBoardCodec.bodyLength(width)];
+    record[0] = (byte) topology.getZoneHeight();
+    record[1] = (byte) topology.getZoneWidth();
+    BinaryBoardCodec.pack(digits, width, record, BinaryBoardCodec.HEADER_LENGTH);
+    stream.write(record);
+    stream.flush();
   }
 
   private String getPrintableValue(SudokuBoard board, int row, int col) {
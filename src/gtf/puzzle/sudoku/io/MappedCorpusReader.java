@@ -0,0 +1,279 @@
+package gtf.puzzle.sudoku.io;
+
+import gtf.puzzle.sudoku.graph.SudokuBoard;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Reads a corpus of puzzles in the compact form of SudokuLineFormat,
+ * one per line, by mapping the file into memory.
+ *
+ * All the puzzles of a corpus have the same size, given when the
+ * reader is opened. The bytes of each line are decoded straight
+ * into an array of digits, which can be loaded into a board with
+ * SudokuBoard.setCells(); nothing is allocated per puzzle or per
+ * cell. Blank lines are skipped, as are carriage returns and
+ * trailing white space.
+ *
+ * The file can be split into chunks that each start at the start
+ * of a line, to be read by separate threads. A chunk is mapped a
+ * window at a time, so chunks and files may be larger than can
+ * be mapped at once.
+ *
+ * @author gtf
+ */
+public class MappedCorpusReader {
+
+  /**
+   * The most bytes of a chunk mapped at once.
+   */
+  private static final int WINDOW = 64 * 1024 * 1024;
+
+  /**
+   * The digit of each byte, 0 for an empty cell, -1 if the byte
+   * is not a digit, or -2 if it is white space.
+   */
+  private static final byte[] DIGITS = new byte[256];
+
+  static {
+    for (int i = 0; i < DIGITS.length; i++) {
+      int digit = Character.digit((char) i, 36);
+      DIGITS[i] = (byte) ((i < 128 && digit >= 0) ? digit : -1);
+    }
+    DIGITS['.'] = 0;
+    DIGITS[' '] = -2;
+    DIGITS['\t'] = -2;
+    DIGITS['\r'] = -2;
+  }
+
+  private final RandomAccessFile file;
+
+  private final FileChannel channel;
+
+  private final int size;
+
+  private final int cells;
+
+  /**
+   * Opens a corpus of 9x9 puzzles.
+   *
+   * @param file the corpus
+   * @throws IOException
+   */
+  public MappedCorpusReader(File file) throws IOException {
+    this(file, 3);
+  }
+
+  /**
+   * Opens a corpus of puzzles of a given size.
+   *
+   * @param file the corpus
+   * @param size the height and width of a zone
+   * @throws IOException
+   */
+  public MappedCorpusReader(File file, int size) throws IOException {
+    if (size < 1 || size * size > SudokuLineFormat.MAX_WIDTH) {
+      throw new IllegalArgumentException("bad size " + size);
+    }
+    this.size = size;
+    this.cells = size * size * size * size;
+    this.file = new RandomAccessFile(file, "r");
+    this.channel = this.file.getChannel();
+  }
+
+  /**
+   * @return the height and width of a zone of the puzzles
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * @return the number of cells of the puzzles, which is the length
+   * of the array of digits to read them into
+   */
+  public int getCellCount() {
+    return cells;
+  }
+
+  /**
+   * Creates an empty board of the size of the puzzles, to load them into.
+   */
+  public SudokuBoard createBoard() {
+    return new SudokuBoard(size);
+  }
+
+  /**
+   * @return a single chunk for the whole file
+   */
+  public Chunk open() throws IOException {
+    return new Chunk(0, channel.size());
+  }
+
+  /**
+   * Splits the file into chunks of about the same length, each
+   * starting at the start of a line. There may be fewer chunks
+   * than asked for if the file is short.
+   *
+   * @param count the number of chunks wanted
+   * @return the chunks, in file order
+   */
+  public List<Chunk> split(int count) throws IOException {
+    if (count < 1) {
+      throw new IllegalArgumentException("bad number of chunks " + count);
+    }
+    long length = channel.size();
+    List<Chunk> result = new ArrayList<Chunk>(count);
+    long start = 0;
+    for (int i = 1; i <= count && start < length; i++) {
+      long end = (i == count) ? length : lineStartAfter(length * i / count);
+      if (end > start) {
+        result.add(new Chunk(start, end));
+        start = end;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the position just after the first newline at or after
+   * a position, or the length of the file if there is none
+   */
+  private long lineStartAfter(long position) throws IOException {
+    long length = channel.size();
+    while (position < length) {
+      int span = (int) Math.min(WINDOW, length - position);
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, span);
+      for (int i = 0; i < span; i++) {
+        if (buffer.get(i) == '\n') {
+          return position + i + 1;
+        }
+      }
+      position += span;
+    }
+    return length;
+  }
+
+  public void close() throws IOException {
+    file.close();
+  }
+
+  /**
+   * A range of lines of the file. Not safe for use by several
+   * threads at once.
+   */
+  public class Chunk {
+
+    private final long end;
+
+    /**
+     * The position of the start of the next line.
+     */
+    private long position;
+
+    private MappedByteBuffer buffer = null;
+
+    /**
+     * The position in the file of the start of the mapped window.
+     */
+    private long bufferStart = 0;
+
+    private Chunk(long start, long end) {
+      this.position = start;
+      this.end = end;
+    }
+
+    /**
+     * @return the position in the file of the first byte not yet read
+     */
+    public long getPosition() {
+      return position;
+    }
+
+    /**
+     * Reads the next puzzle into an array of digits.
+     *
+     * @param digits the array to fill, of getCellCount() elements: the
+     * value of each cell, indexed by row * width + col; 0 for an empty
+     * cell
+     * @return false if there are no more puzzles in the chunk
+     * @throws GameBoardReaderException if the line is not a puzzle. The
+     * line is skipped, so reading can carry on with the next one.
+     */
+    public boolean next(byte[] digits) throws GameBoardReaderException, IOException {
+      if (digits.length != cells) {
+        throw new IllegalArgumentException("bad number of cells " + digits.length);
+      }
+      while (position < end) {
+        int count = 0;
+        int bad = -1;
+        long p = position;
+        long lineStart = position;
+        while (p < end) {
+          byte b = byteAt(p++);
+          if (b == '\n') {
+            break;
+          }
+          int digit = DIGITS[b & 0xff];
+          if (digit == -2) {
+            continue;
+          }
+          if (count < cells && digit >= 0 && digit <= size * size) {
+            digits[count] = (byte) digit;
+          } else if (bad < 0) {
+            bad = count;
+          }
+          count++;
+        }
+        position = p;
+        if (count == 0) {
+          continue; // blank line
+        }
+        if (count != cells) {
+          throw new GameBoardReaderException("Bad length " + count
+              + " of board line at byte " + lineStart);
+        }
+        if (bad >= 0) {
+          int width = size * size;
+          throw new GameBoardReaderException("Bad token in board line at byte " + lineStart,
+              bad / width, bad % width);
+        }
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Reads the next puzzle into a board, replacing its contents.
+     *
+     * @param board a board of the size of the puzzles
+     * @param digits an array of getCellCount() elements, to decode into
+     * @return false if there are no more puzzles in the chunk
+     * @throws GameBoardReaderException if the line is not a puzzle
+     */
+    public boolean next(SudokuBoard board, byte[] digits)
+        throws GameBoardReaderException, IOException {
+      if (!next(digits)) {
+        return false;
+      }
+      board.setCells(digits);
+      return true;
+    }
+
+    private byte byteAt(long p) throws IOException {
+      if (buffer == null || p >= bufferStart + buffer.limit()) {
+        bufferStart = p;
+        int span = (int) Math.min(WINDOW, end - p);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, bufferStart, span);
+      }
+      return buffer.get((int) (p - bufferStart));
+    }
+  }
+}
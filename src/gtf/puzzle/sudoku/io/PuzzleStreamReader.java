@@ -0,0 +1,75 @@
+package gtf.puzzle.sudoku.io;
+
+import gtf.puzzle.sudoku.graph.SudokuBoard;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+
+/**
+ * Reads a stream of boards, each either in the compact form of
+ * SudokuLineFormat or in the long form of GameBoardReader. The
+ * two may be mixed, and blank lines between boards are skipped.
+ * So are the lines after a board in the long form that do not
+ * start with a digit, such as a "Difficulty: NNNNN" line: they are
+ * taken as notes on the board.
+ *
+ * A board in error is reported by a GameBoardReaderException,
+ * after which reading may carry on with the next board. For a
+ * board in the long form, the next board is taken to start on
+ * the line after the one in error.
+ *
+ * @author gtf
+ */
+public class PuzzleStreamReader {
+
+  private final BufferedReader reader;
+
+  private final GameBoardReader boardReader = new GameBoardReader();
+
+  private final SudokuLineFormat lineFormat = new SudokuLineFormat();
+
+  /**
+   * True if the last board read was in the long form.
+   */
+  private boolean afterLongForm = false;
+
+  public PuzzleStreamReader(Reader in) {
+    reader = (in instanceof BufferedReader) ? (BufferedReader) in : new BufferedReader(in);
+  }
+
+  /**
+   * Reads the next board.
+   *
+   * @return the board, or null at the end of the stream
+   * @throws GameBoardReaderException if the board is in error
+   * @throws IOException
+   */
+  public SudokuBoard next() throws GameBoardReaderException, IOException {
+    String line = reader.readLine();
+    while (line != null && (line.trim().length() == 0 || (afterLongForm && isNote(line)))) {
+      line = reader.readLine();
+    }
+    if (line == null) {
+      return null;
+    }
+    afterLongForm = !SudokuLineFormat.isBoardLine(line);
+    if (!afterLongForm) {
+      return lineFormat.parse(line);
+    }
+    return boardReader.read(line, reader);
+  }
+
+  /**
+   * @return true if the line is neither a board in the compact form
+   * nor the dimension spec of one in the long form
+   */
+  private static boolean isNote(String line) {
+    return !SudokuLineFormat.isBoardLine(line) && !Character.isDigit(line.trim().charAt(0));
+  }
+
+  public void close() throws IOException {
+    reader.close();
+  }
+}
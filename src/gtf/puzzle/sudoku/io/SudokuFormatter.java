@@ -40,7 +40,7 @@ public class SudokuFormatter implements ColourableGraphFormatter<SudokuCellAddre
     StringBuffer sb = new StringBuffer();
     for (int row = 0; row < width; row++) {
       for (int col = 0; col < width; col++) {
-        Integer value = graph.getColour(new SudokuCellAddress(width, row, col));
+        Integer value = graph.getColour(topology.cellAt(row, col));
         sb.append(value == null ? " " : Integer.toString(value));
         if (col < width - 1) {
           sb.append((((col + 1) % wsize) == 0) ? "|" : " ");
@@ -0,0 +1,113 @@
+package gtf.puzzle.sudoku.io;
+
+import gtf.math.graph.ColourableGraph;
+import gtf.puzzle.sudoku.graph.SudokuBoard;
+import gtf.puzzle.sudoku.graph.SudokuCellAddress;
+import gtf.puzzle.sudoku.graph.SudokuTopology;
+
+
+/**
+ * The compact form of a board: every cell on a single line, row
+ * by row, one character per cell. Digits 1 to 9 are written as
+ * such, and 10 to 35 as the letters A to Z. An empty cell is
+ * '0' or '.'.
+ *
+ * The size of the board is inferred from the length of the line,
+ * so only boards with square zones can be written this way, up
+ * to zones of 5x5 (a line of 625 characters).
+ *
+ * @author gtf
+ */
+public class SudokuLineFormat {
+
+  /**
+   * The widest board whose digits can each be written as one
+   * character.
+   */
+  public static final int MAX_WIDTH = 35;
+
+  /**
+   * Checks whether a line looks like a board in the compact form
+   * rather than the start of a board in the long form.
+   *
+   * @param line a line of text
+   * @return true if the line is a single word longer than a
+   * dimension spec
+   */
+  public static boolean isBoardLine(String line) {
+    String trimmed = line.trim();
+    if (trimmed.length() <= 2) {
+      return false;
+    }
+    for (int i = 0; i < trimmed.length(); i++) {
+      if (Character.isWhitespace(trimmed.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reads a board from its compact form.
+   *
+   * @param line the board, one character per cell
+   * @return the board
+   * @throws GameBoardReaderException if the length of the line is not
+   * that of a board, or a character is not a digit of the board
+   */
+  public SudokuBoard parse(String line) throws GameBoardReaderException {
+    String trimmed = line.trim();
+    int width = (int) Math.round(Math.sqrt(trimmed.length()));
+    int size = (int) Math.round(Math.sqrt(width));
+    if (width * width != trimmed.length() || size * size != width || width > MAX_WIDTH) {
+      throw new GameBoardReaderException("Bad length of board line " + trimmed.length());
+    }
+    SudokuBoard board = new SudokuBoard(size);
+    for (int row = 0; row < width; row++) {
+      for (int col = 0; col < width; col++) {
+        char c = trimmed.charAt(row * width + col);
+        int value = digitOf(c);
+        if (value < 0 || value > width) {
+          throw new GameBoardReaderException("Bad token", row, col, String.valueOf(c));
+        }
+        if (value > 0) {
+          board.setCell(row, col, Integer.valueOf(value));
+        }
+      }
+    }
+    return board;
+  }
+
+  /**
+   * Writes a board in its compact form.
+   *
+   * @param graph the board
+   * @return the board, one character per cell
+   * @throws IllegalArgumentException if the board is wider than MAX_WIDTH
+   */
+  public String format(ColourableGraph<SudokuCellAddress, Integer> graph) {
+    SudokuTopology topology = (SudokuTopology) graph.getTopology();
+    int width = topology.getWidth();
+    if (width > MAX_WIDTH) {
+      throw new IllegalArgumentException("board too wide " + width);
+    }
+    StringBuffer sb = new StringBuffer(width * width);
+    for (int row = 0; row < width; row++) {
+      for (int col = 0; col < width; col++) {
+        Integer value = graph.getColour(topology.cellAt(row, col));
+        sb.append(value == null ? '.' : Character.toUpperCase(Character.forDigit(value.intValue(), 36)));
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return the digit of a character, 0 for an empty cell, or -1
+   */
+  private static int digitOf(char c) {
+    if (c == '.') {
+      return 0;
+    }
+    return Character.digit(c, 36);
+  }
+}